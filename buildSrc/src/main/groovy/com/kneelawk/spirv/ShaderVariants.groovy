@@ -0,0 +1,72 @@
+package com.kneelawk.spirv
+
+import org.gradle.api.GradleException
+
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+/**
+ * Feature toggles a shader declares with <code>// @variant NAME</code> lines, and the naming of the modules compiled
+ * for each combination of them.
+ * <p>
+ * Every subset of a shader's toggles is compiled with those toggles passed as defines. The variant with no toggles
+ * keeps the shader's plain name, other variants append their sorted toggles, like <code>simple.vert+TINT.spv</code>.
+ */
+class ShaderVariants {
+    static final Pattern VARIANT = ~/^\s*\/\/\s*@variant\s+([A-Za-z_][A-Za-z0-9_]*)\s*$/
+
+    /**
+     * More toggles than this are almost certainly a mistake, as each one doubles the number of modules compiled.
+     */
+    static final int MAX_TOGGLES = 6
+
+    static final String MANIFEST_NAME = 'shader-variants.txt'
+
+    static List<String> parseToggles(File shader) {
+        SortedSet<String> toggles = new TreeSet<>()
+        shader.eachLine { line ->
+            Matcher matcher = VARIANT.matcher(line)
+            if (matcher.matches()) {
+                toggles << matcher.group(1)
+            }
+        }
+
+        if (toggles.size() > MAX_TOGGLES) {
+            throw new GradleException("${shader.name} declares ${toggles.size()} variant toggles, at most $MAX_TOGGLES are allowed")
+        }
+
+        return toggles as List<String>
+    }
+
+    /**
+     * @return every subset of the toggles, each in sorted order, starting with the empty one.
+     */
+    static List<List<String>> permutations(List<String> toggles) {
+        List<String> sorted = toggles.toSorted()
+        return (0..<(1 << sorted.size())).collect { mask ->
+            (0..<sorted.size()).findAll { (mask & (1 << it)) != 0 }.collect { sorted[it] }
+        }
+    }
+
+    /**
+     * @param shaderPath the shader's path relative to its source directory, without the .glsl extension.
+     */
+    static String modulePath(String shaderPath, List<String> defines) {
+        return defines.isEmpty() ? "${shaderPath}.spv" : "${shaderPath}+${defines.join('+')}.spv"
+    }
+
+    /**
+     * Writes one line per variant: the shader path, its comma separated defines and the module path, separated by
+     * tabs.
+     */
+    static void writeManifest(File manifest, Map<String, List<String>> togglesByShader) {
+        manifest.withWriter('UTF-8') { writer ->
+            writer.writeLine('# shader\tdefines\tmodule, generated by SpirvCompile')
+            togglesByShader.sort().each { shaderPath, toggles ->
+                permutations(toggles).each { defines ->
+                    writer.writeLine("$shaderPath\t${defines.join(',')}\t${modulePath(shaderPath, defines)}")
+                }
+            }
+        }
+    }
+}
@@ -1,88 +1,183 @@
 package com.kneelawk.spirv
 
-import org.apache.tools.ant.util.TeeOutputStream
 import org.gradle.api.DefaultTask
-import org.gradle.api.GradleException
-import org.gradle.api.file.Directory
 import org.gradle.api.file.DirectoryProperty
 import org.gradle.api.file.FileCollection
+import org.gradle.api.file.FileType
 import org.gradle.api.model.ObjectFactory
-import org.gradle.api.provider.Property
 import org.gradle.api.tasks.*
-import org.gradle.process.ExecResult
-import org.gradle.process.internal.ExecAction
-import org.gradle.process.internal.ExecActionFactory
+import org.gradle.work.ChangeType
+import org.gradle.work.InputChanges
+import org.gradle.workers.WorkerExecutor
 
 import javax.inject.Inject
-
-class SpirvCompile extends DefaultTask {
-    private ExecAction execAction = execActionFactory.newExecAction()
-
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+/**
+ * Compiles every shader in a source set to its own .spv file, mirroring the source layout in the output directory.
+ * Shaders that declare {@link ShaderVariants variant toggles} get one module per combination of them, and a manifest
+ * of every module is written to the root of the output directory.
+ * <p>
+ * Only shaders that changed, or that include a header that changed, are recompiled. Each shader is compiled by a
+ * separate worker so large source sets compile on every core.
+ */
+abstract class SpirvCompile extends DefaultTask {
+    /**
+     * Shaders are named like <code>name.stage.glsl</code>. Any other .glsl file is a header that is only compiled as
+     * part of the shaders that include it.
+     */
+    static final Pattern SHADER_NAME = ~/.+\.(vert|tesc|tese|geom|frag|comp)\.glsl/
+
+    static final Pattern INCLUDE = ~/^\s*#\s*include\s+([<"])([^>"]+)[>"]/
+
+    // @SkipWhenEmpty inputs are incremental too
     @SkipWhenEmpty
     @PathSensitive(PathSensitivity.RELATIVE)
     @InputFiles
     FileCollection inputFiles
 
-    @Input
-    Property<String> moduleName = objectFactory.property(String)
-
-    @Input
-    Property<String> modulePackage = objectFactory.property(String)
+    /**
+     * The directories shader paths are relative to, which are also searched for includes.
+     */
+    @Internal
+    Set<File> sourceDirs
 
     @OutputDirectory
     DirectoryProperty outputDir = objectFactory.directoryProperty()
 
     @Inject
-    protected ExecActionFactory getExecActionFactory() {
-        throw new UnsupportedOperationException()
-    }
+    protected abstract ObjectFactory getObjectFactory()
 
     @Inject
-    protected ObjectFactory getObjectFactory() {
-        throw new UnsupportedOperationException()
-    }
+    protected abstract WorkerExecutor getWorkerExecutor()
 
     @TaskAction
-    void execute() {
-        Directory outputPackageDir = outputDir.dir(modulePackage.map { pac ->
-            pac.replace('.', '/')
-        }).get()
+    void execute(InputChanges inputChanges) {
+        Set<File> shaders = inputFiles.files.collect { it.canonicalFile }.findAll { isShader(it) } as Set
+
+        Set<File> toCompile
+        if (inputChanges.incremental) {
+            Set<File> changed = []
+            inputChanges.getFileChanges(inputFiles).each { change ->
+                if (change.fileType == FileType.DIRECTORY) {
+                    return
+                }
+
+                if (change.changeType == ChangeType.REMOVED && isShader(change.file)) {
+                    deleteOutputs(change.file)
+                }
+                changed << change.file.canonicalFile
+            }
 
-        if (!outputPackageDir.asFile.exists()) {
-            outputPackageDir.asFile.mkdirs()
+            // includes are rescanned every run, which is far cheaper than compiling and never goes stale
+            toCompile = shaders.findAll { shader ->
+                changed.contains(shader) || findIncludes(shader).any { changed.contains(it) }
+            }
+        } else {
+            project.delete(outputDir.get().asFile.listFiles())
+            toCompile = shaders
         }
 
-        execAction.executable('glslangValidator')
-        execAction.workingDir(project.rootDir)
+        // the manifest is cheap to write, so it is always rewritten from every shader's toggles
+        Map<String, List<String>> togglesByShader = shaders.collectEntries { shader ->
+            [shaderPath(shader), ShaderVariants.parseToggles(shader)]
+        }
+        ShaderVariants.writeManifest(outputDir.file(ShaderVariants.MANIFEST_NAME).get().asFile, togglesByShader)
+
+        List<String> includeDirs = sourceDirs.collect { it.absolutePath }
+        int moduleCount = 0
+        toCompile.each { shader ->
+            // the shader's toggles may have changed, so none of its old variants can be kept
+            deleteOutputs(shader)
+
+            String shaderPath = shaderPath(shader)
+            ShaderVariants.permutations(togglesByShader[shaderPath]).each { defines ->
+                File output = outputDir.file(ShaderVariants.modulePath(shaderPath, defines)).get().asFile
+                output.parentFile.mkdirs()
+
+                workerExecutor.noIsolation().submit(SpirvCompileAction) { parameters ->
+                    parameters.sourceFile.set(shader)
+                    parameters.outputFile.set(output)
+                    parameters.includeDirs.set(includeDirs)
+                    parameters.defines.set(defines)
+                }
+                moduleCount++
+            }
+        }
 
-        execAction.args('-V')
-        execAction.args(inputFiles.files)
-        execAction.args('-o', outputPackageDir.file(moduleName).get())
+        logger.info("Compiling ${moduleCount} modules for ${toCompile.size()} of ${shaders.size()} shaders")
+    }
 
-        ByteArrayOutputStream standardOutputBuf = new ByteArrayOutputStream()
-        execAction.standardOutput = new TeeOutputStream(execAction.standardOutput, standardOutputBuf)
+    static boolean isShader(File file) {
+        return SHADER_NAME.matcher(file.name).matches()
+    }
 
-        ByteArrayOutputStream errorOutputBuf = new ByteArrayOutputStream()
-        execAction.errorOutput = new TeeOutputStream(execAction.errorOutput, errorOutputBuf)
+    /**
+     * @return the shader's path relative to its source directory, without the .glsl extension.
+     */
+    String shaderPath(File shader) {
+        String relativePath = relativePath(shader)
+        return relativePath.substring(0, relativePath.length() - '.glsl'.length())
+    }
 
-        ExecResult result = execAction.execute()
-        String standardOutput = standardOutputBuf.toString()
-        String errorOutput = errorOutputBuf.toString()
+    /**
+     * Deletes every variant compiled from a shader.
+     */
+    void deleteOutputs(File shader) {
+        File plainOutput = outputDir.file(ShaderVariants.modulePath(shaderPath(shader), [])).get().asFile
+        String variantPrefix = plainOutput.name - '.spv' + '+'
+        plainOutput.parentFile.listFiles()?.findAll { file ->
+            file.name == plainOutput.name || (file.name.startsWith(variantPrefix) && file.name.endsWith('.spv'))
+        }?.each { it.delete() }
+    }
 
-        if (result.exitValue != 0) {
-            throw new GradleException('SPIR-V compiler returned non-zero status')
+    String relativePath(File file) {
+        File sourceDir = sourceDirs.collect { it.canonicalFile }.find { file.canonicalFile.toPath().startsWith(it.toPath()) }
+        if (sourceDir == null) {
+            return file.name
         }
+        return sourceDir.toPath().relativize(file.canonicalFile.toPath()).toString().replace(File.separatorChar, '/' as char)
+    }
 
-        errorOutput.lines().forEach { line ->
-            if (line.contains('ERROR')) {
-                throw new GradleException(line)
+    /**
+     * @return every file a shader includes, directly or through other headers. Includes that cannot be found are
+     * still returned, resolved against the including file, so creating them later triggers a recompile.
+     */
+    Set<File> findIncludes(File shader) {
+        Set<File> includes = new LinkedHashSet<>()
+        Deque<File> pending = new ArrayDeque<>([shader])
+
+        while (!pending.isEmpty()) {
+            File file = pending.removeFirst()
+            if (!file.isFile()) {
+                continue
             }
-        }
 
-        standardOutput.lines().forEach { line ->
-            if (line.contains('ERROR')) {
-                throw new GradleException(line)
+            file.eachLine { line ->
+                Matcher matcher = INCLUDE.matcher(line)
+                if (matcher.find()) {
+                    File include = resolveInclude(file, matcher.group(2), matcher.group(1) == '"')
+                    if (includes.add(include)) {
+                        pending.addLast(include)
+                    }
+                }
             }
         }
+
+        return includes
+    }
+
+    /**
+     * Resolves includes the same way glslangValidator does with the source directories on its include path.
+     */
+    File resolveInclude(File includer, String path, boolean quoted) {
+        File relative = new File(includer.parentFile, path)
+        if (quoted && relative.isFile()) {
+            return relative.canonicalFile
+        }
+
+        File fromSourceDir = sourceDirs.collect { new File(it, path) }.find { it.isFile() }
+        return (fromSourceDir ?: relative).canonicalFile
     }
 }
@@ -0,0 +1,29 @@
+package com.kneelawk.spirv
+
+import org.gradle.api.GradleException
+import org.gradle.workers.WorkAction
+
+/**
+ * Compiles a single shader variant with glslangValidator.
+ */
+abstract class SpirvCompileAction implements WorkAction<SpirvCompileParameters> {
+    @Override
+    void execute() {
+        File sourceFile = parameters.sourceFile.get().asFile
+        File outputFile = parameters.outputFile.get().asFile
+
+        List<String> command = ['glslangValidator', '-V']
+        parameters.includeDirs.get().each { command << "-I$it".toString() }
+        parameters.defines.get().each { command << "-D$it".toString() }
+        command.addAll([sourceFile.absolutePath, '-o', outputFile.absolutePath])
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start()
+        String output = process.inputStream.text
+        int exitValue = process.waitFor()
+
+        if (exitValue != 0 || output.readLines().any { it.contains('ERROR') }) {
+            outputFile.delete()
+            throw new GradleException("Failed to compile ${outputFile.name} from ${sourceFile.name}:\n$output")
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.kneelawk.spirv
+
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.ListProperty
+import org.gradle.workers.WorkParameters
+
+interface SpirvCompileParameters extends WorkParameters {
+    RegularFileProperty getSourceFile()
+
+    RegularFileProperty getOutputFile()
+
+    ListProperty<String> getIncludeDirs()
+
+    ListProperty<String> getDefines()
+}
@@ -0,0 +1,129 @@
+package com.kneelawk.hellovulkan;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways {@link BufferUtils} loads large shader and asset blobs: mapping a file, reading a stream of known
+ * length into one allocation and reading a stream of unknown length into growing chunks.
+ * <p>
+ * Every blob is read all the way through after loading, since a mapping is only read from disk as it is touched. The
+ * peak native memory each load allocated is printed when a benchmark finishes. Mappings live in the page cache and
+ * allocate none.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlobLoadBenchmark {
+	private static final CountingAllocator ALLOCATOR = CountingAllocator.install();
+
+	@Param({"10", "100"})
+	public int megabytes;
+
+	private Path blob;
+	private long peakNativeBytes;
+
+	@Setup
+	public void setUp() throws IOException {
+		blob = Files.createTempFile("blob", ".bin");
+		byte[] chunk = new byte[1024 * 1024];
+		Random random = new Random(megabytes);
+		try (OutputStream out = Files.newOutputStream(blob)) {
+			for (int i = 0; i < megabytes; i++) {
+				random.nextBytes(chunk);
+				out.write(chunk);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		System.out.printf("%nPeak native memory per load: %.1f MB for a %d MB blob%n",
+				peakNativeBytes / (1024.0 * 1024.0), megabytes);
+		Files.deleteIfExists(blob);
+	}
+
+	@Benchmark
+	public long mapFile() throws IOException {
+		long start = ALLOCATOR.resetPeak();
+		try (ResourceBuffer resource = BufferUtils.load(blob.toUri().toURL())) {
+			return finish(resource.getBuffer(), start);
+		}
+	}
+
+	/**
+	 * How resources inside a jar are loaded, since their length is known up front.
+	 */
+	@Benchmark
+	public long readKnownLengthStream() throws IOException {
+		long start = ALLOCATOR.resetPeak();
+		try (InputStream in = Files.newInputStream(blob); ReadableByteChannel channel = Channels.newChannel(in)) {
+			ByteBuffer buffer = BufferUtils.toByteBuffer(channel, (int) Files.size(blob));
+			try (ResourceBuffer resource = ResourceBuffer.allocated(buffer)) {
+				return finish(resource.getBuffer(), start);
+			}
+		}
+	}
+
+	@Benchmark
+	public long readKnownLengthFileChannel() throws IOException {
+		long start = ALLOCATOR.resetPeak();
+		try (FileChannel channel = FileChannel.open(blob, StandardOpenOption.READ)) {
+			ByteBuffer buffer = BufferUtils.toByteBuffer(channel, (int) channel.size());
+			try (ResourceBuffer resource = ResourceBuffer.allocated(buffer)) {
+				return finish(resource.getBuffer(), start);
+			}
+		}
+	}
+
+	/**
+	 * The fallback for streams that do not know their length, which was the only path before.
+	 */
+	@Benchmark
+	public long readUnknownLengthStream() throws IOException {
+		long start = ALLOCATOR.resetPeak();
+		try (InputStream in = Files.newInputStream(blob); ReadableByteChannel channel = Channels.newChannel(in)) {
+			ByteBuffer buffer = BufferUtils.toByteBuffer(channel);
+			try (ResourceBuffer resource = ResourceBuffer.allocated(buffer)) {
+				return finish(resource.getBuffer(), start);
+			}
+		}
+	}
+
+	private long finish(ByteBuffer buffer, long start) {
+		if (buffer.remaining() != megabytes * 1024 * 1024) {
+			throw new IllegalStateException("Loaded " + buffer.remaining() + " bytes of a " + megabytes + " MB blob");
+		}
+
+		peakNativeBytes = Math.max(peakNativeBytes, ALLOCATOR.getPeakBytes() - start);
+		return checksum(buffer);
+	}
+
+	private static long checksum(ByteBuffer buffer) {
+		ByteBuffer data = buffer.duplicate().order(ByteOrder.nativeOrder());
+		long checksum = 0;
+		while (data.remaining() >= 8) {
+			checksum ^= data.getLong();
+		}
+		while (data.hasRemaining()) {
+			checksum ^= data.get();
+		}
+		return checksum;
+	}
+}
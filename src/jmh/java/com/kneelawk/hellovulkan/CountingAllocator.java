@@ -0,0 +1,130 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.system.Configuration;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.libc.LibCStdlib;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MemoryUtil.MemoryAllocator} that forwards to the C standard library and keeps track of how much native
+ * memory is allocated, so benchmarks can report peak native memory use.
+ * <p>
+ * It has to be installed with {@link #install()} before anything uses {@link MemoryUtil}.
+ */
+class CountingAllocator implements MemoryUtil.MemoryAllocator {
+	private static final CountingAllocator INSTANCE = new CountingAllocator();
+
+	// address -> size
+	private final Map<Long, Long> sizes = new ConcurrentHashMap<>();
+	private final AtomicLong allocatedBytes = new AtomicLong();
+	private final AtomicLong peakBytes = new AtomicLong();
+
+	private CountingAllocator() {
+	}
+
+	static CountingAllocator install() {
+		Configuration.MEMORY_ALLOCATOR.set(INSTANCE);
+		return INSTANCE;
+	}
+
+	/**
+	 * Starts measuring a new peak from the current allocation level.
+	 *
+	 * @return the current allocation level, to subtract from {@link #getPeakBytes()}.
+	 */
+	long resetPeak() {
+		long current = allocatedBytes.get();
+		peakBytes.set(current);
+		return current;
+	}
+
+	long getPeakBytes() {
+		return peakBytes.get();
+	}
+
+	@Override
+	public long getMalloc() {
+		// only native code calls these, and the benchmarks never hand the allocator to native code
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long getCalloc() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long getRealloc() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long getFree() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long getAlignedAlloc() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long getAlignedFree() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long malloc(long size) {
+		return track(LibCStdlib.nmalloc(size), size);
+	}
+
+	@Override
+	public long calloc(long num, long size) {
+		return track(LibCStdlib.ncalloc(num, size), num * size);
+	}
+
+	@Override
+	public long realloc(long ptr, long size) {
+		long newPtr = LibCStdlib.nrealloc(ptr, size);
+		if (newPtr != MemoryUtil.NULL) {
+			untrack(ptr);
+			track(newPtr, size);
+		}
+		return newPtr;
+	}
+
+	@Override
+	public void free(long ptr) {
+		untrack(ptr);
+		LibCStdlib.nfree(ptr);
+	}
+
+	@Override
+	public long aligned_alloc(long alignment, long size) {
+		return track(LibCStdlib.naligned_alloc(alignment, size), size);
+	}
+
+	@Override
+	public void aligned_free(long ptr) {
+		untrack(ptr);
+		LibCStdlib.naligned_free(ptr);
+	}
+
+	private long track(long ptr, long size) {
+		if (ptr != MemoryUtil.NULL) {
+			sizes.put(ptr, size);
+			peakBytes.accumulateAndGet(allocatedBytes.addAndGet(size), Math::max);
+		}
+		return ptr;
+	}
+
+	private void untrack(long ptr) {
+		Long size = sizes.remove(ptr);
+		if (size != null) {
+			allocatedBytes.addAndGet(-size);
+		}
+	}
+}
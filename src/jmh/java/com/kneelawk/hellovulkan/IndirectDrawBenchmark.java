@@ -0,0 +1,151 @@
+package com.kneelawk.hellovulkan;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Compares the CPU side of recording indexed draws one by one with packing them through an
+ * {@link IndirectCommandPacker} and recording one indirect draw per run of draws that share bindings.
+ * <p>
+ * No device is needed: commands are recorded into a {@link FakeCommandBuffer} that appends them to native memory the
+ * way a driver's command stream would. The numbers leave out the driver's own per-call cost, which only makes the
+ * indirect path look better on real hardware.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IndirectDrawBenchmark {
+	static final int OP_BIND_VERTEX_BUFFER = 1;
+	static final int OP_BIND_INDEX_BUFFER = 2;
+	static final int OP_DRAW_INDEXED = 3;
+	static final int OP_DRAW_INDEXED_INDIRECT = 4;
+
+	@Param({"100000"})
+	public int drawCount;
+
+	/**
+	 * How many consecutive draws share a vertex and index buffer, and so can be merged into one indirect draw.
+	 */
+	@Param({"1", "16", "1000"})
+	public int runLength;
+
+	private DrawList drawList;
+	private FakeCommandBuffer commandBuffer;
+	private final IndirectCommandPacker packer = new IndirectCommandPacker();
+	// stands in for the mapped indirect ring
+	private long indirectAddress;
+
+	@Setup
+	public void setUp() {
+		drawList = new DrawList(drawCount);
+		for (int i = 0; i < drawCount; i++) {
+			long buffer = 1 + i / runLength;
+			drawList.addIndexed(buffer, buffer, (i % runLength) * 36, 36, 0);
+		}
+
+		// the worst case is a bind pair and a draw per draw
+		commandBuffer = new FakeCommandBuffer(drawCount * 3);
+		indirectAddress = nmemAllocChecked((long) drawCount * IndirectCommandPacker.COMMAND_SIZE);
+	}
+
+	@TearDown
+	public void tearDown() {
+		commandBuffer.free();
+		nmemFree(indirectAddress);
+	}
+
+	@Benchmark
+	public FakeCommandBuffer explicitDraws() {
+		commandBuffer.reset();
+		long boundVertexBuffer = 0;
+		long boundIndexBuffer = 0;
+		for (int i = 0; i < drawList.size(); i++) {
+			if (drawList.getVertexBuffer(i) != boundVertexBuffer) {
+				boundVertexBuffer = drawList.getVertexBuffer(i);
+				commandBuffer.record(OP_BIND_VERTEX_BUFFER, boundVertexBuffer, 0, 0, 0, 0);
+			}
+			if (drawList.getIndexBuffer(i) != boundIndexBuffer) {
+				boundIndexBuffer = drawList.getIndexBuffer(i);
+				commandBuffer.record(OP_BIND_INDEX_BUFFER, boundIndexBuffer, 0, 0, 0, 0);
+			}
+
+			commandBuffer.record(OP_DRAW_INDEXED, drawList.getIndexCount(i), drawList.getInstanceCount(i),
+					drawList.getFirstIndex(i), drawList.getFirstVertex(i), 0);
+		}
+		return commandBuffer;
+	}
+
+	@Benchmark
+	public FakeCommandBuffer packedIndirectDraws() {
+		commandBuffer.reset();
+		packer.at(indirectAddress).putAll(drawList);
+
+		long boundVertexBuffer = 0;
+		long boundIndexBuffer = 0;
+		for (int i = 0; i < drawList.size(); i++) {
+			if (drawList.getVertexBuffer(i) != boundVertexBuffer) {
+				boundVertexBuffer = drawList.getVertexBuffer(i);
+				commandBuffer.record(OP_BIND_VERTEX_BUFFER, boundVertexBuffer, 0, 0, 0, 0);
+			}
+			if (drawList.getIndexBuffer(i) != boundIndexBuffer) {
+				boundIndexBuffer = drawList.getIndexBuffer(i);
+				commandBuffer.record(OP_BIND_INDEX_BUFFER, boundIndexBuffer, 0, 0, 0, 0);
+			}
+
+			int runEnd = i + 1;
+			while (runEnd < drawList.size() && drawList.getVertexBuffer(runEnd) == boundVertexBuffer
+					&& drawList.getIndexBuffer(runEnd) == boundIndexBuffer) {
+				runEnd++;
+			}
+
+			commandBuffer.record(OP_DRAW_INDEXED_INDIRECT, 1,
+					(long) i * IndirectCommandPacker.COMMAND_SIZE, runEnd - i, IndirectCommandPacker.COMMAND_SIZE, 0);
+			i = runEnd - 1;
+		}
+		return commandBuffer;
+	}
+
+	/**
+	 * Appends fixed-size commands of an opcode and five arguments to native memory.
+	 */
+	public static class FakeCommandBuffer {
+		private static final int COMMAND_SIZE = 6 * 8;
+
+		private final long address;
+		private final int capacity;
+		private int commandCount;
+
+		FakeCommandBuffer(int capacity) {
+			this.capacity = capacity;
+			address = nmemAllocChecked((long) capacity * COMMAND_SIZE);
+		}
+
+		void record(int op, long a, long b, long c, long d, long e) {
+			if (commandCount == capacity) {
+				throw new IllegalStateException("Fake command buffer is full");
+			}
+
+			long command = address + (long) commandCount++ * COMMAND_SIZE;
+			memPutLong(command, op);
+			memPutLong(command + 8, a);
+			memPutLong(command + 16, b);
+			memPutLong(command + 24, c);
+			memPutLong(command + 32, d);
+			memPutLong(command + 40, e);
+		}
+
+		void reset() {
+			commandCount = 0;
+		}
+
+		void free() {
+			nmemFree(address);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.kneelawk.hellovulkan;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times each {@link MeshOptimizer} pass on a square grid whose triangles are shuffled, so every pass starts from the
+ * worst case a real non-indexed mesh is likely to give it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MeshOptimizerBenchmark {
+	@Param({"100", "300"})
+	public int gridSize;
+
+	private VertexStore triangleList;
+	private MeshOptimizer.IndexedMesh deduplicated;
+
+	@Setup
+	public void setUp() {
+		triangleList = shuffledGrid(gridSize, new Random(1));
+		deduplicated = MeshOptimizer.deduplicate(triangleList);
+	}
+
+	@TearDown
+	public void tearDown() {
+		int[] optimized = deduplicated.getIndices().clone();
+		MeshOptimizer.optimizeVertexCache(optimized, deduplicated.getVertices().size(), MeshOptimizer.DEFAULT_CACHE_SIZE);
+		System.out.printf("%nACMR for a %dx%d grid: %.2f shuffled, %.2f optimized%n", gridSize, gridSize,
+				MeshOptimizer.averageCacheMissRatio(deduplicated.getIndices(), deduplicated.getVertices().size(),
+						MeshOptimizer.DEFAULT_CACHE_SIZE),
+				MeshOptimizer.averageCacheMissRatio(optimized, deduplicated.getVertices().size(),
+						MeshOptimizer.DEFAULT_CACHE_SIZE));
+
+		deduplicated.free();
+		triangleList.free();
+	}
+
+	@Benchmark
+	public MeshOptimizer.IndexedMesh deduplicate() {
+		MeshOptimizer.IndexedMesh mesh = MeshOptimizer.deduplicate(triangleList);
+		mesh.free();
+		return mesh;
+	}
+
+	/**
+	 * Includes copying the shuffled indices, which is small next to the reordering itself.
+	 */
+	@Benchmark
+	public int[] optimizeVertexCache() {
+		int[] indices = Arrays.copyOf(deduplicated.getIndices(), deduplicated.getIndices().length);
+		MeshOptimizer.optimizeVertexCache(indices, deduplicated.getVertices().size(), MeshOptimizer.DEFAULT_CACHE_SIZE);
+		return indices;
+	}
+
+	@Benchmark
+	public VertexStore optimizeVertexFetch() {
+		int[] indices = Arrays.copyOf(deduplicated.getIndices(), deduplicated.getIndices().length);
+		VertexStore ordered = MeshOptimizer.optimizeVertexFetch(deduplicated.getVertices(), indices);
+		ordered.free();
+		return ordered;
+	}
+
+	@Benchmark
+	public MeshOptimizer.IndexedMesh optimize() {
+		MeshOptimizer.IndexedMesh mesh = MeshOptimizer.optimize(triangleList);
+		mesh.free();
+		return mesh;
+	}
+
+	/**
+	 * Builds the non-indexed triangle list of a grid of quads, two triangles each, in random triangle order.
+	 */
+	static VertexStore shuffledGrid(int size, Random random) {
+		int[] triangles = new int[size * size * 2];
+		for (int i = 0; i < triangles.length; i++) {
+			triangles[i] = i;
+		}
+		for (int i = triangles.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = triangles[i];
+			triangles[i] = triangles[j];
+			triangles[j] = swap;
+		}
+
+		VertexStore store = new VertexStore(triangles.length * 3);
+		for (int triangle : triangles) {
+			int quad = triangle / 2;
+			int x = quad % size;
+			int y = quad / size;
+			if (triangle % 2 == 0) {
+				appendCorner(store, x, y, size);
+				appendCorner(store, x + 1, y, size);
+				appendCorner(store, x, y + 1, size);
+			} else {
+				appendCorner(store, x + 1, y, size);
+				appendCorner(store, x + 1, y + 1, size);
+				appendCorner(store, x, y + 1, size);
+			}
+		}
+		return store;
+	}
+
+	private static void appendCorner(VertexStore store, int x, int y, int size) {
+		float u = (float) x / size;
+		float v = (float) y / size;
+		store.append(u * 2 - 1, v * 2 - 1, u, v, 1 - u);
+	}
+}
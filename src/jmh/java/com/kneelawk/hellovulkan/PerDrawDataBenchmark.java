@@ -0,0 +1,117 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Compares the CPU side of handing each draw its transform through push constants with writing it into a dynamic
+ * uniform buffer and recording its offset.
+ * <p>
+ * No device is needed. A push copies the writer's block into a stand-in command stream, the way a driver records
+ * vkCmdPushConstants, and the uniform path writes into plain memory standing in for the mapped ring and records the
+ * 32 bit dynamic offset a vkCmdBindDescriptorSets would carry.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PerDrawDataBenchmark {
+	private static final PushConstantLayout DRAW_CONSTANTS = PushConstantLayout.builder()
+			.member("transform", PushConstantLayout.Type.VEC4)
+			.member("offset", PushConstantLayout.Type.VEC2)
+			.build(0);
+	private static final PushConstantLayout.Member DRAW_TRANSFORM = DRAW_CONSTANTS.getMember("transform");
+	private static final PushConstantLayout.Member DRAW_OFFSET = DRAW_CONSTANTS.getMember("offset");
+
+	// a vec4 and a vec2, padded as std140 pads them
+	private static final int UNIFORM_SIZE = 32;
+
+	@Param({"100000"})
+	public int drawCount;
+
+	/**
+	 * The device's minUniformBufferOffsetAlignment. 256 is the largest Vulkan allows and common on desktop GPUs.
+	 */
+	@Param({"64", "256"})
+	public int uniformAlignment;
+
+	private DrawList drawList;
+	private UniformRingAllocator uniformRing;
+	private long uniformAddress;
+	private long commandAddress;
+	private long frame;
+
+	@Setup
+	public void setUp() {
+		drawList = new DrawList(drawCount);
+		for (int i = 0; i < drawCount; i++) {
+			int draw = drawList.add(1, i * 3, 3);
+			float angle = i * 0.001f;
+			drawList.setTransform(draw, (float) Math.cos(angle), (float) Math.sin(angle), (float) -Math.sin(angle),
+					(float) Math.cos(angle), i % 100 * 0.01f, i / 100 * 0.01f);
+		}
+
+		// the ring holds one frame of draws plus the range the last offset must leave after it
+		long ringSize = (long) drawCount * uniformAlignment + UNIFORM_SIZE;
+		uniformRing = new UniformRingAllocator(Math.max(ringSize, 2 * UNIFORM_SIZE), UNIFORM_SIZE, uniformAlignment);
+		uniformAddress = nmemAllocChecked(uniformRing.getBufferSize());
+		commandAddress = nmemAllocChecked((long) drawCount * DRAW_CONSTANTS.getSize());
+	}
+
+	@TearDown
+	public void tearDown() {
+		nmemFree(uniformAddress);
+		nmemFree(commandAddress);
+	}
+
+	@Benchmark
+	public long pushConstants() {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			PushConstantWriter writer = new PushConstantWriter(DRAW_CONSTANTS, stack);
+			long scratchAddress = memAddress(writer.getScratch());
+			long command = commandAddress;
+			for (int i = 0; i < drawList.size(); i++) {
+				writer.putVec4(DRAW_TRANSFORM, drawList.getTransform(i, 0), drawList.getTransform(i, 1),
+						drawList.getTransform(i, 2), drawList.getTransform(i, 3));
+				writer.putVec2(DRAW_OFFSET, drawList.getTransform(i, 4), drawList.getTransform(i, 5));
+
+				memCopy(scratchAddress, command, DRAW_CONSTANTS.getSize());
+				command += DRAW_CONSTANTS.getSize();
+			}
+			return command;
+		}
+	}
+
+	@Benchmark
+	public long dynamicUniformOffsets() {
+		long command = commandAddress;
+		for (int i = 0; i < drawList.size(); i++) {
+			int offset = uniformRing.allocate(UNIFORM_SIZE);
+			if (offset < 0) {
+				throw new IllegalStateException("Uniform ring is full");
+			}
+
+			long block = uniformAddress + offset;
+			memPutFloat(block, drawList.getTransform(i, 0));
+			memPutFloat(block + 4, drawList.getTransform(i, 1));
+			memPutFloat(block + 8, drawList.getTransform(i, 2));
+			memPutFloat(block + 12, drawList.getTransform(i, 3));
+			memPutFloat(block + 16, drawList.getTransform(i, 4));
+			memPutFloat(block + 20, drawList.getTransform(i, 5));
+
+			memPutInt(command, offset);
+			command += 4;
+		}
+
+		// the frame is done with as soon as it is recorded, as nothing reads it
+		uniformRing.endFrame(frame);
+		uniformRing.frameCompleted(frame++);
+		return command;
+	}
+}
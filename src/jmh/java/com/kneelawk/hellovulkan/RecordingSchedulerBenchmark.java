@@ -0,0 +1,90 @@
+package com.kneelawk.hellovulkan;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what splitting a frame's draws over a {@link RecordingScheduler} costs and gains compared with recording
+ * them on one thread.
+ * <p>
+ * No device is needed: each slot records into its own {@link IndirectDrawBenchmark.FakeCommandBuffer}, the way each
+ * slot owns a secondary command buffer in the application. A fake command is far cheaper than a driver's, so the
+ * benchmark shows the scheduling overhead and the least parallel recording can gain rather than the full speedup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordingSchedulerBenchmark {
+	// the application's MIN_DRAWS_PER_RECORDING_SLICE
+	private static final int MIN_SLICE_SIZE = 256;
+
+	@Param({"1000", "10000", "100000"})
+	public int drawCount;
+
+	@Param({"1", "2", "4"})
+	public int slotCount;
+
+	private DrawList drawList;
+	private RecordingScheduler scheduler;
+	private IndirectDrawBenchmark.FakeCommandBuffer[] commandBuffers;
+	private RecordingScheduler.SliceRecorder recorder;
+
+	@Setup
+	public void setUp() {
+		drawList = new DrawList(drawCount);
+		for (int i = 0; i < drawCount; i++) {
+			long buffer = 1 + i / 16;
+			drawList.addIndexed(buffer, buffer, (i % 16) * 36, 36, 0);
+		}
+
+		scheduler = new RecordingScheduler(slotCount, MIN_SLICE_SIZE);
+		commandBuffers = new IndirectDrawBenchmark.FakeCommandBuffer[slotCount];
+		for (int slot = 0; slot < slotCount; slot++) {
+			// the worst case is a bind pair and a draw per draw, plus the rebinds at the start of a slice
+			commandBuffers[slot] = new IndirectDrawBenchmark.FakeCommandBuffer(drawCount * 3 + 2);
+		}
+
+		recorder = this::recordSlice;
+	}
+
+	@TearDown
+	public void tearDown() {
+		scheduler.shutdown();
+		for (IndirectDrawBenchmark.FakeCommandBuffer commandBuffer : commandBuffers) {
+			commandBuffer.free();
+		}
+	}
+
+	@Benchmark
+	public int record() {
+		return scheduler.record(drawList.size(), recorder);
+	}
+
+	/**
+	 * Records like the application's recordDraws: every slice starts with nothing bound.
+	 */
+	private void recordSlice(int slot, int first, int count) {
+		IndirectDrawBenchmark.FakeCommandBuffer commandBuffer = commandBuffers[slot];
+		commandBuffer.reset();
+
+		long boundVertexBuffer = 0;
+		long boundIndexBuffer = 0;
+		for (int i = first; i < first + count; i++) {
+			if (drawList.getVertexBuffer(i) != boundVertexBuffer) {
+				boundVertexBuffer = drawList.getVertexBuffer(i);
+				commandBuffer.record(IndirectDrawBenchmark.OP_BIND_VERTEX_BUFFER, boundVertexBuffer, 0, 0, 0, 0);
+			}
+			if (drawList.getIndexBuffer(i) != boundIndexBuffer) {
+				boundIndexBuffer = drawList.getIndexBuffer(i);
+				commandBuffer.record(IndirectDrawBenchmark.OP_BIND_INDEX_BUFFER, boundIndexBuffer, 0, 0, 0, 0);
+			}
+
+			commandBuffer.record(IndirectDrawBenchmark.OP_DRAW_INDEXED, drawList.getIndexCount(i),
+					drawList.getInstanceCount(i), drawList.getFirstIndex(i), drawList.getFirstVertex(i), 0);
+		}
+	}
+}
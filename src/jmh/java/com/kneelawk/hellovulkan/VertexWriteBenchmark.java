@@ -0,0 +1,85 @@
+package com.kneelawk.hellovulkan;
+
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Compares filling a staging buffer from an array of {@link Vertex} objects with copying a {@link VertexStore} that is
+ * already packed in the same layout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VertexWriteBenchmark {
+	@Param({"1000", "100000", "1000000"})
+	public int vertexCount;
+
+	private Vertex[] vertices;
+	private VertexStore store;
+	private float[] interleaved;
+	// stands in for a mapped staging buffer
+	private ByteBuffer staging;
+
+	@Setup
+	public void setUp() {
+		vertices = new Vertex[vertexCount];
+		interleaved = new float[vertexCount * 5];
+		store = new VertexStore(vertexCount);
+		for (int i = 0; i < vertexCount; i++) {
+			float x = (i % 1000) / 1000.0f;
+			float y = (i / 1000) / 1000.0f;
+			vertices[i] = new Vertex(new Vector2f(x, y), new Vector3f(x, y, 1.0f - x));
+			store.append(x, y, x, y, 1.0f - x);
+			interleaved[i * 5] = x;
+			interleaved[i * 5 + 1] = y;
+			interleaved[i * 5 + 2] = x;
+			interleaved[i * 5 + 3] = y;
+			interleaved[i * 5 + 4] = 1.0f - x;
+		}
+
+		staging = memAlloc(vertexCount * Vertex.SIZEOF);
+	}
+
+	@TearDown
+	public void tearDown() {
+		store.free();
+		memFree(staging);
+	}
+
+	/**
+	 * The old path: every vertex serialized field by field from its JOML vectors.
+	 */
+	@Benchmark
+	public ByteBuffer writeVertexObjects() {
+		for (int i = 0; i < vertices.length; i++) {
+			vertices[i].writeTo(i * Vertex.SIZEOF, staging);
+		}
+		return staging;
+	}
+
+	@Benchmark
+	public ByteBuffer copyVertexStore() {
+		store.copyTo(memAddress(staging));
+		return staging;
+	}
+
+	/**
+	 * Building a store from interleaved floats and copying it, for data that does not start out in a store.
+	 */
+	@Benchmark
+	public ByteBuffer appendAndCopyVertexStore() {
+		store.clear();
+		store.appendAll(interleaved, 0, vertexCount);
+		store.copyTo(memAddress(staging));
+		return staging;
+	}
+}
@@ -0,0 +1,78 @@
+package com.kneelawk.hellovulkan;
+
+/**
+ * Snapshot of the state of a {@link DeviceMemoryAllocator}.
+ */
+public class AllocatorStatistics {
+	private final int blockCount;
+	private final int allocationCount;
+	private final long blockBytes;
+	private final long usedBytes;
+	private final int freeRegionCount;
+	private final long largestFreeRegion;
+	private final long reclaimableBytes;
+
+	public AllocatorStatistics(int blockCount, int allocationCount, long blockBytes, long usedBytes, int freeRegionCount,
+							   long largestFreeRegion, long reclaimableBytes) {
+		this.blockCount = blockCount;
+		this.allocationCount = allocationCount;
+		this.blockBytes = blockBytes;
+		this.usedBytes = usedBytes;
+		this.freeRegionCount = freeRegionCount;
+		this.largestFreeRegion = largestFreeRegion;
+		this.reclaimableBytes = reclaimableBytes;
+	}
+
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	public int getAllocationCount() {
+		return allocationCount;
+	}
+
+	public long getBlockBytes() {
+		return blockBytes;
+	}
+
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public long getFreeBytes() {
+		return blockBytes - usedBytes;
+	}
+
+	public int getFreeRegionCount() {
+		return freeRegionCount;
+	}
+
+	public long getLargestFreeRegion() {
+		return largestFreeRegion;
+	}
+
+	/**
+	 * @return how many bytes could be given back to the driver if every block were compacted.
+	 */
+	public long getReclaimableBytes() {
+		return reclaimableBytes;
+	}
+
+	/**
+	 * @return 0 when all free memory is one contiguous region, approaching 1 as it is split into smaller pieces.
+	 */
+	public double getFragmentation() {
+		long freeBytes = getFreeBytes();
+		if (freeBytes == 0) {
+			return 0;
+		}
+		return 1.0 - (double) largestFreeRegion / freeBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d blocks, %d allocations, %d/%d bytes used, %d free regions, largest free region %d, " +
+						"fragmentation %.3f, %d bytes reclaimable by defragmentation", blockCount, allocationCount, usedBytes,
+				blockBytes, freeRegionCount, largestFreeRegion, getFragmentation(), reclaimableBytes);
+	}
+}
@@ -0,0 +1,169 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Free-list bookkeeping for a single block of device memory. This class never talks to Vulkan, it only hands out
+ * offsets.
+ * <p>
+ * Linear resources (buffers, linear images) and non-linear resources (optimal images) must not share a
+ * bufferImageGranularity page, so neighbours of a different kind push an allocation onto its own page.
+ */
+public class BlockSubAllocator {
+	private final long size;
+	private final long bufferImageGranularity;
+
+	// offset -> size
+	private final TreeMap<Long, Long> freeRegions = new TreeMap<>();
+	private final TreeMap<Long, UsedRegion> usedRegions = new TreeMap<>();
+
+	private long usedBytes = 0;
+
+	public BlockSubAllocator(long size, long bufferImageGranularity) {
+		this.size = size;
+		this.bufferImageGranularity = Math.max(bufferImageGranularity, 1);
+
+		freeRegions.put(0L, size);
+	}
+
+	/**
+	 * @return the offset of the new allocation or -1 if there is no region that can hold it.
+	 */
+	public long allocate(long allocationSize, long alignment, boolean linear) {
+		if (allocationSize <= 0) {
+			throw new IllegalArgumentException("Allocation size must be positive");
+		}
+
+		long regionStart = -1;
+		long regionEnd = -1;
+		long offset = -1;
+		for (Map.Entry<Long, Long> entry : freeRegions.entrySet()) {
+			long start = entry.getKey();
+			long end = start + entry.getValue();
+			long candidate = alignUp(start, alignment);
+
+			if (bufferImageGranularity > 1) {
+				Map.Entry<Long, UsedRegion> prev = usedRegions.lowerEntry(start);
+				if (prev != null && prev.getValue().linear != linear
+						&& onSamePage(prev.getKey() + prev.getValue().size - 1, candidate)) {
+					candidate = alignUp(candidate, bufferImageGranularity);
+				}
+			}
+
+			long candidateEnd = candidate + allocationSize;
+			if (candidateEnd > end) {
+				continue;
+			}
+
+			if (bufferImageGranularity > 1) {
+				Map.Entry<Long, UsedRegion> next = usedRegions.ceilingEntry(candidateEnd);
+				if (next != null && next.getValue().linear != linear && onSamePage(candidateEnd - 1, next.getKey())) {
+					continue;
+				}
+			}
+
+			regionStart = start;
+			regionEnd = end;
+			offset = candidate;
+			break;
+		}
+
+		if (offset < 0) {
+			return -1;
+		}
+
+		long allocationEnd = offset + allocationSize;
+		freeRegions.remove(regionStart);
+		if (offset > regionStart) {
+			freeRegions.put(regionStart, offset - regionStart);
+		}
+		if (allocationEnd < regionEnd) {
+			freeRegions.put(allocationEnd, regionEnd - allocationEnd);
+		}
+
+		usedRegions.put(offset, new UsedRegion(allocationSize, linear));
+		usedBytes += allocationSize;
+
+		return offset;
+	}
+
+	public void free(long offset) {
+		UsedRegion region = usedRegions.remove(offset);
+		if (region == null) {
+			throw new IllegalArgumentException("No allocation at offset " + offset);
+		}
+
+		usedBytes -= region.size;
+
+		long start = offset;
+		long end = offset + region.size;
+
+		Map.Entry<Long, Long> prev = freeRegions.lowerEntry(start);
+		if (prev != null && prev.getKey() + prev.getValue() == start) {
+			start = prev.getKey();
+			freeRegions.remove(start);
+		}
+
+		Long nextSize = freeRegions.remove(end);
+		if (nextSize != null) {
+			end += nextSize;
+		}
+
+		freeRegions.put(start, end - start);
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public long getFreeBytes() {
+		return size - usedBytes;
+	}
+
+	public int getAllocationCount() {
+		return usedRegions.size();
+	}
+
+	public int getFreeRegionCount() {
+		return freeRegions.size();
+	}
+
+	public long getLargestFreeRegion() {
+		long largest = 0;
+		for (long regionSize : freeRegions.values()) {
+			largest = Math.max(largest, regionSize);
+		}
+		return largest;
+	}
+
+	public boolean isEmpty() {
+		return usedRegions.isEmpty();
+	}
+
+	private boolean onSamePage(long a, long b) {
+		long mask = ~(bufferImageGranularity - 1);
+		return (a & mask) == (b & mask);
+	}
+
+	static long alignUp(long value, long alignment) {
+		if (alignment <= 1) {
+			return value;
+		}
+		return (value + alignment - 1) & ~(alignment - 1);
+	}
+
+	private static class UsedRegion {
+		private final long size;
+		private final boolean linear;
+
+		private UsedRegion(long size, boolean linear) {
+			this.size = size;
+			this.linear = linear;
+		}
+	}
+}
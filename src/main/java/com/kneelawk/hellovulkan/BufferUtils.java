@@ -4,8 +4,17 @@ import com.google.common.math.IntMath;
 import org.lwjgl.system.MemoryStack;
 
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
 import java.util.Deque;
 
@@ -16,10 +25,66 @@ public class BufferUtils {
 	 * Portions of this were taken from Google Guava's com.google.common.io.ByteStreams.
 	 */
 
+	/**
+	 * Loads a resource with as few copies as possible: files are memory-mapped, streams with a known length are read
+	 * into a single allocation and anything else falls back to growing buffers.
+	 */
+	public static ResourceBuffer load(URL url) throws IOException {
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return ResourceBuffer.mapped(map(Paths.get(url.toURI())));
+			} catch (URISyntaxException e) {
+				throw new IOException("Invalid file URL: " + url, e);
+			}
+		}
+
+		URLConnection connection = url.openConnection();
+		long length = connection.getContentLengthLong();
+		try (ReadableByteChannel channel = Channels.newChannel(connection.getInputStream())) {
+			if (length >= 0 && length < MAX_BUFFER_SIZE) {
+				return ResourceBuffer.allocated(toByteBuffer(channel, (int) length));
+			} else {
+				return ResourceBuffer.allocated(toByteBuffer(channel));
+			}
+		}
+	}
+
+	public static MappedByteBuffer map(Path path) throws IOException {
+		// the mapping stays valid after the channel is closed
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > MAX_BUFFER_SIZE) {
+				throw new IOException("File is too large to map into a byte buffer: " + path);
+			}
+
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
 	public static ByteBuffer toByteBuffer(ReadableByteChannel channel) throws IOException {
 		return toByteBufferInternal(channel, new ArrayDeque<>(TO_BYTE_BUFFER_QUEUE_SIZE), 0);
 	}
 
+	/**
+	 * Reads a channel whose length is known ahead of time into a single allocation. If the channel turns out to be
+	 * longer than expected, this falls back to reading the rest into growing buffers.
+	 */
+	public static ByteBuffer toByteBuffer(ReadableByteChannel channel, int expectedLength) throws IOException {
+		// one extra byte tells us whether the expected length was wrong without a second read
+		ByteBuffer buf = memAlloc(expectedLength + 1);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf) == -1) {
+				buf.flip();
+				return buf;
+			}
+		}
+		buf.flip();
+
+		Deque<ByteBuffer> bufs = new ArrayDeque<>(TO_BYTE_BUFFER_QUEUE_SIZE);
+		bufs.add(buf);
+		return toByteBufferInternal(channel, bufs, buf.remaining());
+	}
+
 	private static final int BUFFER_SIZE = 8192;
 
 	private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
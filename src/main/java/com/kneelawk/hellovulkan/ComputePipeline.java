@@ -0,0 +1,118 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * A compute pipeline whose shader reads and writes storage buffers bound to consecutive bindings of descriptor set 0,
+ * with an optional push constant block.
+ * <p>
+ * The shader module is not owned by the pipeline and can be destroyed or released once the pipeline is created.
+ */
+public class ComputePipeline {
+	private final VkDevice device;
+	private final int storageBufferCount;
+	private final long descriptorSetLayout;
+	private final long pipelineLayout;
+	private final long pipeline;
+
+	/**
+	 * @param pushConstantSize the size of the shader's push constant block in bytes, or 0 if it has none.
+	 */
+	public ComputePipeline(VkDevice device, long pipelineCache, long shaderModule, SpecializationConstants specialization,
+						   int storageBufferCount, int pushConstantSize) {
+		this.device = device;
+		this.storageBufferCount = storageBufferCount;
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkDescriptorSetLayoutBinding.Buffer bindings = VkDescriptorSetLayoutBinding.callocStack(storageBufferCount, stack);
+			for (int i = 0; i < storageBufferCount; i++) {
+				bindings.get(i)
+						.binding(i)
+						.descriptorType(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER)
+						.descriptorCount(1)
+						.stageFlags(VK_SHADER_STAGE_COMPUTE_BIT);
+			}
+
+			VkDescriptorSetLayoutCreateInfo setLayoutCreateInfo = VkDescriptorSetLayoutCreateInfo.callocStack(stack);
+			setLayoutCreateInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_LAYOUT_CREATE_INFO);
+			setLayoutCreateInfo.pBindings(bindings);
+
+			LongBuffer handleBuffer = stack.mallocLong(1);
+			if (vkCreateDescriptorSetLayout(device, setLayoutCreateInfo, null, handleBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create compute descriptor set layout");
+			}
+			descriptorSetLayout = handleBuffer.get(0);
+
+			VkPipelineLayoutCreateInfo pipelineLayoutCreateInfo = VkPipelineLayoutCreateInfo.callocStack(stack);
+			pipelineLayoutCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_LAYOUT_CREATE_INFO);
+			pipelineLayoutCreateInfo.pSetLayouts(stack.longs(descriptorSetLayout));
+			if (pushConstantSize > 0) {
+				VkPushConstantRange.Buffer pushConstantRange = VkPushConstantRange.callocStack(1, stack);
+				pushConstantRange.stageFlags(VK_SHADER_STAGE_COMPUTE_BIT);
+				pushConstantRange.offset(0);
+				pushConstantRange.size(pushConstantSize);
+				pipelineLayoutCreateInfo.pPushConstantRanges(pushConstantRange);
+			}
+
+			if (vkCreatePipelineLayout(device, pipelineLayoutCreateInfo, null, handleBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create compute pipeline layout");
+			}
+			pipelineLayout = handleBuffer.get(0);
+
+			VkComputePipelineCreateInfo.Buffer pipelineCreateInfoBuffer = VkComputePipelineCreateInfo.callocStack(1, stack);
+			pipelineCreateInfoBuffer.sType(VK_STRUCTURE_TYPE_COMPUTE_PIPELINE_CREATE_INFO);
+			pipelineCreateInfoBuffer.stage()
+					.sType(VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO)
+					.stage(VK_SHADER_STAGE_COMPUTE_BIT)
+					.module(shaderModule)
+					.pName(stack.ASCII("main"))
+					.pSpecializationInfo(specialization.toSpecializationInfo(stack));
+			pipelineCreateInfoBuffer.layout(pipelineLayout);
+			pipelineCreateInfoBuffer.basePipelineHandle(VK_NULL_HANDLE);
+			pipelineCreateInfoBuffer.basePipelineIndex(-1);
+
+			if (vkCreateComputePipelines(device, pipelineCache, pipelineCreateInfoBuffer, null, handleBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create compute pipeline");
+			}
+			pipeline = handleBuffer.get(0);
+		}
+	}
+
+	/**
+	 * Binds the pipeline and a descriptor set allocated with this pipeline's layout.
+	 */
+	public void bind(VkCommandBuffer commandBuffer, long descriptorSet) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_COMPUTE, pipeline);
+			vkCmdBindDescriptorSets(commandBuffer, VK_PIPELINE_BIND_POINT_COMPUTE, pipelineLayout, 0,
+					stack.longs(descriptorSet), null);
+		}
+	}
+
+	public int getStorageBufferCount() {
+		return storageBufferCount;
+	}
+
+	public long getDescriptorSetLayout() {
+		return descriptorSetLayout;
+	}
+
+	public long getPipelineLayout() {
+		return pipelineLayout;
+	}
+
+	public long getPipeline() {
+		return pipeline;
+	}
+
+	public void destroy() {
+		vkDestroyPipeline(device, pipeline, null);
+		vkDestroyPipelineLayout(device, pipelineLayout, null);
+		vkDestroyDescriptorSetLayout(device, descriptorSetLayout, null);
+	}
+}
@@ -0,0 +1,68 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Destroys resources once the last frame that used them has retired, instead of idling the device to destroy them
+ * right away.
+ * <p>
+ * Resources are queued in the order they are retired from use and destroyed in batches whenever {@link #collect()} is
+ * called. A resource queued with an older frame than the one before it waits for that one, so resources are only ever
+ * destroyed late, never early.
+ */
+public class DeferredDeletionQueue {
+	private final FenceClock clock;
+	private final Deque<Entry> entries = new ArrayDeque<>();
+
+	public DeferredDeletionQueue(FenceClock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * @param lastUsedFrame the number of the newest frame that may still use the resource.
+	 * @param destroyer     destroys the resource, called on the thread that calls {@link #collect()}.
+	 */
+	public void defer(long lastUsedFrame, Runnable destroyer) {
+		entries.addLast(new Entry(lastUsedFrame, destroyer));
+	}
+
+	/**
+	 * Destroys every queued resource whose last frame has retired.
+	 *
+	 * @return the number of resources destroyed.
+	 */
+	public int collect() {
+		long retiredFrame = clock.getRetiredFrameNumber();
+
+		int destroyed = 0;
+		while (!entries.isEmpty() && entries.peekFirst().lastUsedFrame <= retiredFrame) {
+			entries.removeFirst().destroyer.run();
+			destroyed++;
+		}
+		return destroyed;
+	}
+
+	/**
+	 * Destroys every queued resource regardless of the clock. The device must be idle.
+	 */
+	public void flush() {
+		while (!entries.isEmpty()) {
+			entries.removeFirst().destroyer.run();
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private static class Entry {
+		private final long lastUsedFrame;
+		private final Runnable destroyer;
+
+		private Entry(long lastUsedFrame, Runnable destroyer) {
+			this.lastUsedFrame = lastUsedFrame;
+			this.destroyer = destroyer;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDescriptorPoolCreateInfo;
+import org.lwjgl.vulkan.VkDescriptorPoolSize;
+import org.lwjgl.vulkan.VkDescriptorSetAllocateInfo;
+import org.lwjgl.vulkan.VkDevice;
+
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.lwjgl.vulkan.KHRMaintenance1.VK_ERROR_OUT_OF_POOL_MEMORY_KHR;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Hands out descriptor sets that live for a single frame. Each frame in flight allocates from its own pools, which
+ * are all reset at once when the frame's fence has signaled instead of freeing sets one by one.
+ * <p>
+ * Another pool is taken before a set would exceed the current pool's set or descriptor limits, so the allocator grows
+ * to whatever the busiest frame needs and then stops creating pools. Reset pools are shared between frames.
+ * <p>
+ * Allocating past a pool's limits is invalid usage without VK_KHR_maintenance1, which is not enabled, so the limits
+ * are tracked here rather than relying on VK_ERROR_OUT_OF_POOL_MEMORY_KHR. That error and
+ * VK_ERROR_FRAGMENTED_POOL still move on to a fresh pool when a driver reports them.
+ */
+public class DescriptorAllocator {
+	// descriptors of each type per set a pool is sized for, which covers the small sets frames allocate
+	private static final int[] POOL_DESCRIPTOR_TYPES = {
+			VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER,
+			VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC,
+			VK_DESCRIPTOR_TYPE_STORAGE_BUFFER,
+			VK_DESCRIPTOR_TYPE_STORAGE_BUFFER_DYNAMIC,
+			VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER
+	};
+	private static final int DESCRIPTORS_PER_SET = 2;
+
+	private final VkDevice device;
+	private final int setsPerPool;
+
+	private final long[] currentPools;
+	// sets and descriptors of each POOL_DESCRIPTOR_TYPES entry allocated from each frame's current pool
+	private final int[] currentPoolSets;
+	private final int[][] currentPoolDescriptors;
+	private final List<List<Long>> usedPools = new ArrayList<>();
+	private final Deque<Long> freePools = new ArrayDeque<>();
+	private int poolCount = 0;
+
+	public DescriptorAllocator(VkDevice device, int framesInFlight, int setsPerPool) {
+		this.device = device;
+		this.setsPerPool = setsPerPool;
+
+		currentPools = new long[framesInFlight];
+		currentPoolSets = new int[framesInFlight];
+		currentPoolDescriptors = new int[framesInFlight][POOL_DESCRIPTOR_TYPES.length];
+		for (int i = 0; i < framesInFlight; i++) {
+			currentPools[i] = VK_NULL_HANDLE;
+			usedPools.add(new ArrayList<>());
+		}
+	}
+
+	/**
+	 * Allocates a set that stays valid until the frame is {@link #resetFrame(int) reset}.
+	 */
+	public long allocate(int frame, DescriptorSetLayout layout) {
+		checkLayoutFitsPool(layout);
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkDescriptorSetAllocateInfo allocateInfo = VkDescriptorSetAllocateInfo.callocStack(stack);
+			allocateInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO);
+			allocateInfo.pSetLayouts(stack.longs(layout.getLayout()));
+
+			LongBuffer setBuffer = stack.mallocLong(1);
+			if (currentPools[frame] != VK_NULL_HANDLE && fitsInCurrentPool(frame, layout)) {
+				allocateInfo.descriptorPool(currentPools[frame]);
+				int result = vkAllocateDescriptorSets(device, allocateInfo, setBuffer);
+				if (result == VK_SUCCESS) {
+					countAllocation(frame, layout);
+					return setBuffer.get(0);
+				} else if (result != VK_ERROR_OUT_OF_POOL_MEMORY_KHR && result != VK_ERROR_FRAGMENTED_POOL) {
+					throw new RuntimeException("Failed to allocate descriptor set");
+				}
+			}
+
+			// the current pool is full, a fresh one always has room
+			currentPools[frame] = takePool();
+			usedPools.get(frame).add(currentPools[frame]);
+			currentPoolSets[frame] = 0;
+			Arrays.fill(currentPoolDescriptors[frame], 0);
+
+			allocateInfo.descriptorPool(currentPools[frame]);
+			if (vkAllocateDescriptorSets(device, allocateInfo, setBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to allocate descriptor set from a new pool");
+			}
+			countAllocation(frame, layout);
+			return setBuffer.get(0);
+		}
+	}
+
+	/**
+	 * Frees every set allocated for a frame. The frame's command buffers must no longer be in use.
+	 */
+	public void resetFrame(int frame) {
+		for (long pool : usedPools.get(frame)) {
+			vkResetDescriptorPool(device, pool, 0);
+			freePools.addLast(pool);
+		}
+		usedPools.get(frame).clear();
+		currentPools[frame] = VK_NULL_HANDLE;
+		currentPoolSets[frame] = 0;
+		Arrays.fill(currentPoolDescriptors[frame], 0);
+	}
+
+	/**
+	 * @return the number of pools created, which stops growing once the busiest frame's sets fit.
+	 */
+	public int getPoolCount() {
+		return poolCount;
+	}
+
+	public void destroy() {
+		for (List<Long> framePools : usedPools) {
+			for (long pool : framePools) {
+				vkDestroyDescriptorPool(device, pool, null);
+			}
+			framePools.clear();
+		}
+		for (long pool : freePools) {
+			vkDestroyDescriptorPool(device, pool, null);
+		}
+		freePools.clear();
+	}
+
+	private void checkLayoutFitsPool(DescriptorSetLayout layout) {
+		int pooledDescriptors = 0;
+		for (int type : POOL_DESCRIPTOR_TYPES) {
+			int count = layout.getDescriptorCount(type);
+			if (count > DESCRIPTORS_PER_SET * setsPerPool) {
+				throw new IllegalArgumentException("Descriptor set layout needs " + count + " descriptors of type " + type
+						+ ", more than a whole pool holds");
+			}
+			pooledDescriptors += count;
+		}
+
+		if (pooledDescriptors != layout.getBindingCount()) {
+			throw new IllegalArgumentException("Descriptor set layout uses descriptor types the pools are not sized for");
+		}
+	}
+
+	private boolean fitsInCurrentPool(int frame, DescriptorSetLayout layout) {
+		if (currentPoolSets[frame] >= setsPerPool) {
+			return false;
+		}
+
+		for (int i = 0; i < POOL_DESCRIPTOR_TYPES.length; i++) {
+			if (currentPoolDescriptors[frame][i] + layout.getDescriptorCount(POOL_DESCRIPTOR_TYPES[i])
+					> DESCRIPTORS_PER_SET * setsPerPool) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void countAllocation(int frame, DescriptorSetLayout layout) {
+		currentPoolSets[frame]++;
+		for (int i = 0; i < POOL_DESCRIPTOR_TYPES.length; i++) {
+			currentPoolDescriptors[frame][i] += layout.getDescriptorCount(POOL_DESCRIPTOR_TYPES[i]);
+		}
+	}
+
+	private long takePool() {
+		if (!freePools.isEmpty()) {
+			return freePools.removeFirst();
+		}
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkDescriptorPoolSize.Buffer poolSizes = VkDescriptorPoolSize.callocStack(POOL_DESCRIPTOR_TYPES.length, stack);
+			for (int i = 0; i < POOL_DESCRIPTOR_TYPES.length; i++) {
+				poolSizes.get(i)
+						.type(POOL_DESCRIPTOR_TYPES[i])
+						.descriptorCount(setsPerPool * DESCRIPTORS_PER_SET);
+			}
+
+			VkDescriptorPoolCreateInfo poolCreateInfo = VkDescriptorPoolCreateInfo.callocStack(stack);
+			poolCreateInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_POOL_CREATE_INFO);
+			poolCreateInfo.maxSets(setsPerPool);
+			poolCreateInfo.pPoolSizes(poolSizes);
+
+			LongBuffer poolBuffer = stack.mallocLong(1);
+			if (vkCreateDescriptorPool(device, poolCreateInfo, null, poolBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create descriptor pool");
+			}
+
+			poolCount++;
+			return poolBuffer.get(0);
+		}
+	}
+}
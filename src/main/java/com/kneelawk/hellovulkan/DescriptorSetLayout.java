@@ -0,0 +1,118 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutBinding;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutCreateInfo;
+import org.lwjgl.vulkan.VkDevice;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * A descriptor set layout of single descriptor bindings, built like
+ * <code>DescriptorSetLayout.builder().binding(0, type, stages).build(device)</code>.
+ */
+public class DescriptorSetLayout {
+	private final VkDevice device;
+	private final long layout;
+	// the type of each binding, for working out what a set takes from a pool
+	private final int[] descriptorTypes;
+
+	private DescriptorSetLayout(VkDevice device, long layout, int[] descriptorTypes) {
+		this.device = device;
+		this.layout = layout;
+		this.descriptorTypes = descriptorTypes;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public long getLayout() {
+		return layout;
+	}
+
+	public int getBindingCount() {
+		return descriptorTypes.length;
+	}
+
+	/**
+	 * @return how many descriptors of a type each set with this layout holds.
+	 */
+	public int getDescriptorCount(int descriptorType) {
+		int count = 0;
+		for (int type : descriptorTypes) {
+			if (type == descriptorType) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public void destroy() {
+		vkDestroyDescriptorSetLayout(device, layout, null);
+	}
+
+	public static class Builder {
+		private final List<PendingBinding> bindings = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * @param stageFlags the VK_SHADER_STAGE_*_BITs that read the binding.
+		 */
+		public Builder binding(int binding, int descriptorType, int stageFlags) {
+			for (PendingBinding existing : bindings) {
+				if (existing.binding == binding) {
+					throw new IllegalArgumentException("Binding " + binding + " is already declared");
+				}
+			}
+
+			bindings.add(new PendingBinding(binding, descriptorType, stageFlags));
+			return this;
+		}
+
+		public DescriptorSetLayout build(VkDevice device) {
+			try (MemoryStack stack = MemoryStack.stackPush()) {
+				VkDescriptorSetLayoutBinding.Buffer layoutBindings = VkDescriptorSetLayoutBinding.callocStack(bindings.size(), stack);
+				int[] descriptorTypes = new int[bindings.size()];
+				for (int i = 0; i < bindings.size(); i++) {
+					PendingBinding binding = bindings.get(i);
+					descriptorTypes[i] = binding.descriptorType;
+					layoutBindings.get(i)
+							.binding(binding.binding)
+							.descriptorType(binding.descriptorType)
+							.descriptorCount(1)
+							.stageFlags(binding.stageFlags);
+				}
+
+				VkDescriptorSetLayoutCreateInfo createInfo = VkDescriptorSetLayoutCreateInfo.callocStack(stack);
+				createInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_LAYOUT_CREATE_INFO);
+				createInfo.pBindings(layoutBindings);
+
+				LongBuffer layoutBuffer = stack.mallocLong(1);
+				if (vkCreateDescriptorSetLayout(device, createInfo, null, layoutBuffer) != VK_SUCCESS) {
+					throw new RuntimeException("Failed to create descriptor set layout");
+				}
+
+				return new DescriptorSetLayout(device, layoutBuffer.get(0), descriptorTypes);
+			}
+		}
+
+		private static class PendingBinding {
+			private final int binding;
+			private final int descriptorType;
+			private final int stageFlags;
+
+			private PendingBinding(int binding, int descriptorType, int stageFlags) {
+				this.binding = binding;
+				this.descriptorType = descriptorType;
+				this.stageFlags = stageFlags;
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.Iterables;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkBufferCreateInfo;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkMemoryRequirements;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Set;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * A VkBuffer together with the sub-allocation it is bound to.
+ */
+public class DeviceBuffer {
+	private final VkDevice device;
+	private final DeviceMemoryAllocator allocator;
+	private final long buffer;
+	private final long size;
+	private final MemoryAllocation allocation;
+
+	private DeviceBuffer(VkDevice device, DeviceMemoryAllocator allocator, long buffer, long size, MemoryAllocation allocation) {
+		this.device = device;
+		this.allocator = allocator;
+		this.buffer = buffer;
+		this.size = size;
+		this.allocation = allocation;
+	}
+
+	public static DeviceBuffer create(VkDevice device, DeviceMemoryAllocator allocator, long size, int usage, int properties,
+									  Set<Integer> queueFamilyIndices) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkBufferCreateInfo bufferCreateInfo = VkBufferCreateInfo.callocStack(stack);
+			bufferCreateInfo.sType(VK_STRUCTURE_TYPE_BUFFER_CREATE_INFO);
+			bufferCreateInfo.size(size);
+			bufferCreateInfo.usage(usage);
+
+			if (queueFamilyIndices.size() > 1) {
+				bufferCreateInfo.sharingMode(VK_SHARING_MODE_CONCURRENT);
+
+				IntBuffer indexBuffer = stack.mallocInt(queueFamilyIndices.size());
+				for (int index : queueFamilyIndices) {
+					indexBuffer.put(index);
+				}
+				indexBuffer.flip();
+
+				bufferCreateInfo.pQueueFamilyIndices(indexBuffer);
+			} else {
+				bufferCreateInfo.sharingMode(VK_SHARING_MODE_EXCLUSIVE);
+				bufferCreateInfo.pQueueFamilyIndices(stack.ints(Iterables.getOnlyElement(queueFamilyIndices)));
+			}
+
+			LongBuffer bufferBuffer = stack.mallocLong(1);
+			if (vkCreateBuffer(device, bufferCreateInfo, null, bufferBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create buffer");
+			}
+			long buffer = bufferBuffer.get(0);
+
+			VkMemoryRequirements memoryRequirements = VkMemoryRequirements.callocStack(stack);
+			vkGetBufferMemoryRequirements(device, buffer, memoryRequirements);
+
+			MemoryAllocation allocation = allocator.allocate(memoryRequirements.size(), memoryRequirements.alignment(),
+					memoryRequirements.memoryTypeBits(), properties, true);
+
+			if (vkBindBufferMemory(device, buffer, allocation.getMemory(), allocation.getOffset()) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to bind buffer memory");
+			}
+
+			return new DeviceBuffer(device, allocator, buffer, size, allocation);
+		}
+	}
+
+	public long getBuffer() {
+		return buffer;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public MemoryAllocation getAllocation() {
+		return allocation;
+	}
+
+	/**
+	 * @return the host address of the start of this buffer. Only valid for host visible buffers.
+	 */
+	public long getMappedAddress() {
+		if (!allocation.isMapped()) {
+			throw new IllegalStateException("Buffer is not host visible");
+		}
+		return allocation.getMappedAddress();
+	}
+
+	public void destroy() {
+		vkDestroyBuffer(device, buffer, null);
+		allocator.free(allocation);
+	}
+}
@@ -0,0 +1,95 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkImageCreateInfo;
+import org.lwjgl.vulkan.VkMemoryRequirements;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * A 2D optimal-tiling VkImage together with the sub-allocation it is bound to.
+ */
+public class DeviceImage {
+	private final VkDevice device;
+	private final DeviceMemoryAllocator allocator;
+	private final long image;
+	private final int format;
+	private final int width;
+	private final int height;
+	private final MemoryAllocation allocation;
+
+	private DeviceImage(VkDevice device, DeviceMemoryAllocator allocator, long image, int format, int width, int height,
+						MemoryAllocation allocation) {
+		this.device = device;
+		this.allocator = allocator;
+		this.image = image;
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.allocation = allocation;
+	}
+
+	public static DeviceImage create(VkDevice device, DeviceMemoryAllocator allocator, int width, int height, int format,
+									 int usage, int properties) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkImageCreateInfo imageCreateInfo = VkImageCreateInfo.callocStack(stack);
+			imageCreateInfo.sType(VK_STRUCTURE_TYPE_IMAGE_CREATE_INFO);
+			imageCreateInfo.imageType(VK_IMAGE_TYPE_2D);
+			imageCreateInfo.format(format);
+			imageCreateInfo.extent().set(width, height, 1);
+			imageCreateInfo.mipLevels(1);
+			imageCreateInfo.arrayLayers(1);
+			imageCreateInfo.samples(VK_SAMPLE_COUNT_1_BIT);
+			imageCreateInfo.tiling(VK_IMAGE_TILING_OPTIMAL);
+			imageCreateInfo.usage(usage);
+			imageCreateInfo.sharingMode(VK_SHARING_MODE_EXCLUSIVE);
+			imageCreateInfo.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+
+			LongBuffer imageBuffer = stack.mallocLong(1);
+			if (vkCreateImage(device, imageCreateInfo, null, imageBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create image");
+			}
+			long image = imageBuffer.get(0);
+
+			VkMemoryRequirements memoryRequirements = VkMemoryRequirements.callocStack(stack);
+			vkGetImageMemoryRequirements(device, image, memoryRequirements);
+
+			MemoryAllocation allocation = allocator.allocate(memoryRequirements.size(), memoryRequirements.alignment(),
+					memoryRequirements.memoryTypeBits(), properties, false);
+
+			if (vkBindImageMemory(device, image, allocation.getMemory(), allocation.getOffset()) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to bind image memory");
+			}
+
+			return new DeviceImage(device, allocator, image, format, width, height, allocation);
+		}
+	}
+
+	public long getImage() {
+		return image;
+	}
+
+	public int getFormat() {
+		return format;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public MemoryAllocation getAllocation() {
+		return allocation;
+	}
+
+	public void destroy() {
+		vkDestroyImage(device, image, null);
+		allocator.free(allocation);
+	}
+}
@@ -0,0 +1,227 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT;
+
+/**
+ * Allocates large blocks of device memory per memory type and sub-allocates resources out of them, so the number of
+ * vkAllocateMemory calls stays far below maxMemoryAllocationCount.
+ * <p>
+ * All Vulkan calls go through the {@link BlockSource}, which lets this class run against a fake memory table.
+ */
+public class DeviceMemoryAllocator {
+	public static final long DEFAULT_BLOCK_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * Heaps this small or smaller get blocks of an eighth of their size instead of the default block size.
+	 */
+	private static final long SMALL_HEAP_SIZE = 1024L * 1024 * 1024;
+
+	public interface BlockSource {
+		/**
+		 * @return the VkDeviceMemory handle of the new block.
+		 */
+		long allocateBlock(int memoryTypeIndex, long size);
+
+		/**
+		 * Persistently maps a whole block.
+		 *
+		 * @return the host address of the start of the block.
+		 */
+		long mapBlock(long memory, long size);
+
+		void freeBlock(long memory);
+	}
+
+	private final MemoryTypeTable memoryTypes;
+	private final BlockSource blockSource;
+	private final long blockSize;
+	private final long bufferImageGranularity;
+	private final List<List<Block>> blocksByType;
+
+	public DeviceMemoryAllocator(MemoryTypeTable memoryTypes, BlockSource blockSource, long blockSize,
+								 long bufferImageGranularity) {
+		this.memoryTypes = memoryTypes;
+		this.blockSource = blockSource;
+		this.blockSize = blockSize;
+		this.bufferImageGranularity = bufferImageGranularity;
+
+		blocksByType = new ArrayList<>(memoryTypes.getMemoryTypeCount());
+		for (int i = 0; i < memoryTypes.getMemoryTypeCount(); i++) {
+			blocksByType.add(new ArrayList<>());
+		}
+	}
+
+	/**
+	 * @param memoryTypeBits the memoryTypeBits of the resource's VkMemoryRequirements.
+	 * @param properties     the memory property flags the allocation must have.
+	 * @param linear         true for buffers and linear images, false for optimal-tiling images.
+	 */
+	public synchronized MemoryAllocation allocate(long size, long alignment, int memoryTypeBits, int properties,
+												  boolean linear) {
+		int memoryTypeIndex = memoryTypes.findMemoryType(memoryTypeBits, properties);
+		List<Block> blocks = blocksByType.get(memoryTypeIndex);
+		long preferredBlockSize = getPreferredBlockSize(memoryTypeIndex);
+
+		// allocations that would take up most of a block get a block of their own
+		if (size > preferredBlockSize / 2) {
+			Block block = createBlock(memoryTypeIndex, size, true);
+			blocks.add(block);
+			return new MemoryAllocation(block, block.subAllocator.allocate(size, alignment, linear), size);
+		}
+
+		for (Block block : blocks) {
+			if (block.dedicated || block.subAllocator.getFreeBytes() < size) {
+				continue;
+			}
+
+			long offset = block.subAllocator.allocate(size, alignment, linear);
+			if (offset >= 0) {
+				return new MemoryAllocation(block, offset, size);
+			}
+		}
+
+		Block block = createBlock(memoryTypeIndex, preferredBlockSize, false);
+		blocks.add(block);
+
+		long offset = block.subAllocator.allocate(size, alignment, linear);
+		if (offset < 0) {
+			throw new RuntimeException("Failed to sub-allocate " + size + " bytes from a fresh memory block");
+		}
+
+		return new MemoryAllocation(block, offset, size);
+	}
+
+	/**
+	 * @return whether any memory type has all of the given property flags.
+	 */
+	public boolean supportsProperties(int properties) {
+		return memoryTypes.hasMemoryType(properties);
+	}
+
+	public synchronized void free(MemoryAllocation allocation) {
+		Block block = allocation.getBlock();
+		block.subAllocator.free(allocation.getOffset());
+
+		if (!block.subAllocator.isEmpty()) {
+			return;
+		}
+
+		List<Block> blocks = blocksByType.get(block.memoryTypeIndex);
+
+		// keep one empty shared block around per memory type so a free/allocate pattern does not thrash the driver
+		boolean keep = !block.dedicated;
+		if (keep) {
+			for (Block other : blocks) {
+				if (other != block && !other.dedicated && other.subAllocator.isEmpty()) {
+					keep = false;
+					break;
+				}
+			}
+		}
+
+		if (!keep) {
+			blocks.remove(block);
+			blockSource.freeBlock(block.memory);
+		}
+	}
+
+	public synchronized AllocatorStatistics getStatistics() {
+		int blockCount = 0;
+		int allocationCount = 0;
+		long blockBytes = 0;
+		long usedBytes = 0;
+		int freeRegionCount = 0;
+		long largestFreeRegion = 0;
+		long reclaimableBytes = 0;
+
+		for (int i = 0; i < blocksByType.size(); i++) {
+			long sharedBlockBytes = 0;
+			long sharedUsedBytes = 0;
+			long preferredBlockSize = getPreferredBlockSize(i);
+
+			for (Block block : blocksByType.get(i)) {
+				BlockSubAllocator subAllocator = block.subAllocator;
+				blockCount++;
+				allocationCount += subAllocator.getAllocationCount();
+				blockBytes += subAllocator.getSize();
+				usedBytes += subAllocator.getUsedBytes();
+				freeRegionCount += subAllocator.getFreeRegionCount();
+				largestFreeRegion = Math.max(largestFreeRegion, subAllocator.getLargestFreeRegion());
+
+				if (!block.dedicated) {
+					sharedBlockBytes += subAllocator.getSize();
+					sharedUsedBytes += subAllocator.getUsedBytes();
+				}
+			}
+
+			long compactedBlocks = (sharedUsedBytes + preferredBlockSize - 1) / preferredBlockSize;
+			reclaimableBytes += sharedBlockBytes - compactedBlocks * preferredBlockSize;
+		}
+
+		return new AllocatorStatistics(blockCount, allocationCount, blockBytes, usedBytes, freeRegionCount,
+				largestFreeRegion, reclaimableBytes);
+	}
+
+	/**
+	 * Frees every block, whether or not it still has allocations in it.
+	 */
+	public synchronized void destroy() {
+		for (List<Block> blocks : blocksByType) {
+			for (Iterator<Block> it = blocks.iterator(); it.hasNext(); ) {
+				blockSource.freeBlock(it.next().memory);
+				it.remove();
+			}
+		}
+	}
+
+	private long getPreferredBlockSize(int memoryTypeIndex) {
+		long heapSize = memoryTypes.getHeapSize(memoryTypeIndex);
+		return heapSize <= SMALL_HEAP_SIZE ? Math.min(blockSize, heapSize / 8) : blockSize;
+	}
+
+	private Block createBlock(int memoryTypeIndex, long size, boolean dedicated) {
+		long memory = blockSource.allocateBlock(memoryTypeIndex, size);
+
+		long mappedAddress = NULL;
+		if ((memoryTypes.getPropertyFlags(memoryTypeIndex) & VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT) != 0) {
+			mappedAddress = blockSource.mapBlock(memory, size);
+		}
+
+		return new Block(memory, mappedAddress, memoryTypeIndex, dedicated,
+				new BlockSubAllocator(size, bufferImageGranularity));
+	}
+
+	static class Block {
+		private final long memory;
+		private final long mappedAddress;
+		private final int memoryTypeIndex;
+		private final boolean dedicated;
+		private final BlockSubAllocator subAllocator;
+
+		private Block(long memory, long mappedAddress, int memoryTypeIndex, boolean dedicated,
+					  BlockSubAllocator subAllocator) {
+			this.memory = memory;
+			this.mappedAddress = mappedAddress;
+			this.memoryTypeIndex = memoryTypeIndex;
+			this.dedicated = dedicated;
+			this.subAllocator = subAllocator;
+		}
+
+		long getMemory() {
+			return memory;
+		}
+
+		long getMappedAddress() {
+			return mappedAddress;
+		}
+
+		int getMemoryTypeIndex() {
+			return memoryTypeIndex;
+		}
+	}
+}
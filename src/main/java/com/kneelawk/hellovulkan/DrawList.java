@@ -0,0 +1,196 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.Arrays;
+
+import static org.lwjgl.vulkan.VK10.VK_NULL_HANDLE;
+
+/**
+ * The draws to record for one frame, kept in parallel primitive arrays so rebuilding it every frame does not allocate.
+ */
+public class DrawList {
+	public static final int TRANSFORM_SIZE = 6;
+
+	private long[] vertexBuffers;
+	private int[] firstVertices;
+	private int[] vertexCounts;
+	// VK_NULL_HANDLE for non-indexed draws
+	private long[] indexBuffers;
+	private int[] firstIndices;
+	private int[] indexCounts;
+	// VK_NULL_HANDLE when the draw's instance data is not bound from this list
+	private long[] instanceBuffers;
+	private long[] instanceOffsets;
+	private int[] instanceCounts;
+	// a 2x2 matrix in column order followed by an offset, pushed as constants before the draw
+	private float[] transforms;
+	private int size = 0;
+
+	public DrawList() {
+		this(16);
+	}
+
+	public DrawList(int initialCapacity) {
+		int capacity = Math.max(initialCapacity, 1);
+		vertexBuffers = new long[capacity];
+		firstVertices = new int[capacity];
+		vertexCounts = new int[capacity];
+		indexBuffers = new long[capacity];
+		firstIndices = new int[capacity];
+		indexCounts = new int[capacity];
+		instanceBuffers = new long[capacity];
+		instanceOffsets = new long[capacity];
+		instanceCounts = new int[capacity];
+		transforms = new float[capacity * TRANSFORM_SIZE];
+	}
+
+	public int add(long vertexBuffer, int firstVertex, int vertexCount) {
+		if (size == vertexBuffers.length) {
+			grow();
+		}
+
+		vertexBuffers[size] = vertexBuffer;
+		firstVertices[size] = firstVertex;
+		vertexCounts[size] = vertexCount;
+		indexBuffers[size] = VK_NULL_HANDLE;
+		firstIndices[size] = 0;
+		indexCounts[size] = 0;
+		clearInstances(size);
+		setTransform(size, 1.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f);
+
+		return size++;
+	}
+
+	/**
+	 * Adds a draw of 32-bit indices.
+	 *
+	 * @param vertexOffset added to every index before the vertex is fetched.
+	 */
+	public int addIndexed(long vertexBuffer, long indexBuffer, int firstIndex, int indexCount, int vertexOffset) {
+		if (size == vertexBuffers.length) {
+			grow();
+		}
+
+		vertexBuffers[size] = vertexBuffer;
+		firstVertices[size] = vertexOffset;
+		vertexCounts[size] = 0;
+		indexBuffers[size] = indexBuffer;
+		firstIndices[size] = firstIndex;
+		indexCounts[size] = indexCount;
+		clearInstances(size);
+		setTransform(size, 1.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f);
+
+		return size++;
+	}
+
+	/**
+	 * Draws instances of an added draw, reading their attributes from the given buffer and byte offset.
+	 */
+	public void setInstances(int draw, long instanceBuffer, long instanceOffset, int instanceCount) {
+		instanceBuffers[draw] = instanceBuffer;
+		instanceOffsets[draw] = instanceOffset;
+		instanceCounts[draw] = instanceCount;
+	}
+
+	/**
+	 * Transforms every vertex of a draw, after the instance transform. Draws start out untransformed. The transform is
+	 * given as the columns of a 2x2 matrix, in the same order as {@link Instance#put}.
+	 */
+	public void setTransform(int draw, float m00, float m10, float m01, float m11, float offsetX, float offsetY) {
+		int base = draw * TRANSFORM_SIZE;
+		transforms[base] = m00;
+		transforms[base + 1] = m10;
+		transforms[base + 2] = m01;
+		transforms[base + 3] = m11;
+		transforms[base + 4] = offsetX;
+		transforms[base + 5] = offsetY;
+	}
+
+	/**
+	 * @param component 0 to 3 for the matrix in column order, 4 and 5 for the offset.
+	 */
+	public float getTransform(int draw, int component) {
+		return transforms[draw * TRANSFORM_SIZE + component];
+	}
+
+	public boolean hasSameTransform(int draw, int other) {
+		int base = draw * TRANSFORM_SIZE;
+		int otherBase = other * TRANSFORM_SIZE;
+		for (int i = 0; i < TRANSFORM_SIZE; i++) {
+			if (transforms[base + i] != transforms[otherBase + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void clearInstances(int draw) {
+		instanceBuffers[draw] = VK_NULL_HANDLE;
+		instanceOffsets[draw] = 0;
+		instanceCounts[draw] = 1;
+	}
+
+	public long getVertexBuffer(int draw) {
+		return vertexBuffers[draw];
+	}
+
+	/**
+	 * @return the first vertex of a non-indexed draw, or the vertex offset of an indexed one.
+	 */
+	public int getFirstVertex(int draw) {
+		return firstVertices[draw];
+	}
+
+	public int getVertexCount(int draw) {
+		return vertexCounts[draw];
+	}
+
+	public boolean isIndexed(int draw) {
+		return indexBuffers[draw] != VK_NULL_HANDLE;
+	}
+
+	public long getIndexBuffer(int draw) {
+		return indexBuffers[draw];
+	}
+
+	public int getFirstIndex(int draw) {
+		return firstIndices[draw];
+	}
+
+	public int getIndexCount(int draw) {
+		return indexCounts[draw];
+	}
+
+	public long getInstanceBuffer(int draw) {
+		return instanceBuffers[draw];
+	}
+
+	public long getInstanceOffset(int draw) {
+		return instanceOffsets[draw];
+	}
+
+	public int getInstanceCount(int draw) {
+		return instanceCounts[draw];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	private void grow() {
+		int newCapacity = vertexBuffers.length * 2;
+		vertexBuffers = Arrays.copyOf(vertexBuffers, newCapacity);
+		firstVertices = Arrays.copyOf(firstVertices, newCapacity);
+		vertexCounts = Arrays.copyOf(vertexCounts, newCapacity);
+		indexBuffers = Arrays.copyOf(indexBuffers, newCapacity);
+		firstIndices = Arrays.copyOf(firstIndices, newCapacity);
+		indexCounts = Arrays.copyOf(indexCounts, newCapacity);
+		instanceBuffers = Arrays.copyOf(instanceBuffers, newCapacity);
+		instanceOffsets = Arrays.copyOf(instanceOffsets, newCapacity);
+		instanceCounts = Arrays.copyOf(instanceCounts, newCapacity);
+		transforms = Arrays.copyOf(transforms, newCapacity * TRANSFORM_SIZE);
+	}
+}
@@ -0,0 +1,11 @@
+package com.kneelawk.hellovulkan;
+
+/**
+ * Reports how far the GPU has progressed through the submitted frames, as observed through their fences.
+ */
+public interface FenceClock {
+	/**
+	 * @return the number of the newest frame the GPU is known to have finished, or -1 if none has. Never decreases.
+	 */
+	long getRetiredFrameNumber();
+}
@@ -0,0 +1,230 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableSet;
+import org.lwjgl.vulkan.VkDevice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Writes rendered RGBA8 frames to disk without stalling the render loop.
+ * <p>
+ * Frames are copied into a ring of persistently mapped readback buffers. Once a frame's fence has signaled its buffer
+ * is handed to a pool of encoder threads, which write straight from the mapped memory and then return the buffer to
+ * the ring. When every buffer is still being encoded the frame is dropped instead of waiting.
+ */
+public class FrameCapture {
+	public enum Format {
+		RAW("raw"),
+		PNG("png");
+
+		private final String extension;
+
+		Format(String extension) {
+			this.extension = extension;
+		}
+	}
+
+	private static final int NO_SLOT = -1;
+
+	private final int width;
+	private final int height;
+	private final Path outputDirectory;
+	private final Format format;
+
+	private final DeviceBuffer[] readbackBuffers;
+	private final BlockingQueue<Integer> freeSlots;
+	private final ExecutorService encoders;
+
+	// the readback slot and frame number each frame in flight is copying into
+	private final int[] pendingSlots;
+	private final long[] pendingFrameNumbers;
+
+	private final AtomicLong capturedFrames = new AtomicLong();
+	private final AtomicLong failedFrames = new AtomicLong();
+	private long droppedFrames;
+	private long firstSubmitTime = -1;
+	private volatile long lastEncodeTime;
+
+	/**
+	 * @param encoderThreads the number of frames that can be encoded at once. The ring has one readback buffer for each
+	 *                       frame in flight plus one per encoder thread.
+	 */
+	public FrameCapture(VkDevice device, DeviceMemoryAllocator allocator, int queueFamily, int width, int height,
+						int framesInFlight, Path outputDirectory, Format format, int encoderThreads) throws IOException {
+		this.width = width;
+		this.height = height;
+		this.outputDirectory = outputDirectory;
+		this.format = format;
+
+		Files.createDirectories(outputDirectory);
+
+		// the CPU reads these back, which is far faster from cached memory when the device has it
+		int properties = VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT;
+		if (allocator.supportsProperties(properties | VK_MEMORY_PROPERTY_HOST_CACHED_BIT)) {
+			properties |= VK_MEMORY_PROPERTY_HOST_CACHED_BIT;
+		}
+
+		int slotCount = framesInFlight + encoderThreads;
+		long frameSize = (long) width * height * 4;
+		readbackBuffers = new DeviceBuffer[slotCount];
+		freeSlots = new ArrayBlockingQueue<>(slotCount);
+		for (int i = 0; i < slotCount; i++) {
+			readbackBuffers[i] = DeviceBuffer.create(device, allocator, frameSize, VK_BUFFER_USAGE_TRANSFER_DST_BIT,
+					properties, ImmutableSet.of(queueFamily));
+			freeSlots.add(i);
+		}
+
+		AtomicInteger threadIndex = new AtomicInteger();
+		encoders = Executors.newFixedThreadPool(encoderThreads, runnable -> {
+			Thread thread = new Thread(runnable, "Frame Encoder " + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		pendingSlots = new int[framesInFlight];
+		pendingFrameNumbers = new long[framesInFlight];
+		for (int i = 0; i < framesInFlight; i++) {
+			pendingSlots[i] = NO_SLOT;
+		}
+	}
+
+	/**
+	 * Picks the readback buffer a frame in flight copies its image into.
+	 *
+	 * @return the buffer to copy into, or VK_NULL_HANDLE if every buffer is busy and this frame is dropped.
+	 */
+	public long beginFrame(int frame, long frameNumber) {
+		Integer slot = freeSlots.poll();
+		if (slot == null) {
+			droppedFrames++;
+			return VK_NULL_HANDLE;
+		}
+
+		pendingSlots[frame] = slot;
+		pendingFrameNumbers[frame] = frameNumber;
+		return readbackBuffers[slot].getBuffer();
+	}
+
+	/**
+	 * Hands a frame's readback to the encoders. Must only be called once that frame's fence has signaled.
+	 */
+	public void frameCompleted(int frame) {
+		int slot = pendingSlots[frame];
+		if (slot == NO_SLOT) {
+			return;
+		}
+		pendingSlots[frame] = NO_SLOT;
+
+		if (firstSubmitTime < 0) {
+			firstSubmitTime = System.nanoTime();
+		}
+
+		long frameNumber = pendingFrameNumbers[frame];
+		encoders.execute(() -> encode(slot, frameNumber));
+	}
+
+	private void encode(int slot, long frameNumber) {
+		DeviceBuffer readbackBuffer = readbackBuffers[slot];
+		ByteBuffer pixels = memByteBuffer(readbackBuffer.getMappedAddress(), (int) readbackBuffer.getSize());
+		Path path = outputDirectory.resolve(String.format("frame-%06d.%s", frameNumber, format.extension));
+
+		try {
+			switch (format) {
+				case RAW:
+					try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+							StandardOpenOption.TRUNCATE_EXISTING)) {
+						while (pixels.hasRemaining()) {
+							channel.write(pixels);
+						}
+					}
+					break;
+				case PNG:
+					if (!stbi_write_png(path.toString(), width, height, 4, pixels, width * 4)) {
+						throw new IOException("stb_image_write failed");
+					}
+					break;
+			}
+
+			capturedFrames.incrementAndGet();
+		} catch (IOException e) {
+			failedFrames.incrementAndGet();
+			System.err.println("Failed to write " + path + ": " + e);
+		} finally {
+			lastEncodeTime = System.nanoTime();
+			freeSlots.add(slot);
+		}
+	}
+
+	/**
+	 * Hands every outstanding readback to the encoders and waits for them to finish. The device must be idle.
+	 */
+	public void finish() {
+		for (int frame = 0; frame < pendingSlots.length; frame++) {
+			frameCompleted(frame);
+		}
+
+		encoders.shutdown();
+		try {
+			encoders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for frame encoding", e);
+		}
+	}
+
+	public long getCapturedFrames() {
+		return capturedFrames.get();
+	}
+
+	public long getFailedFrames() {
+		return failedFrames.get();
+	}
+
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * @return the rate frames were written at, from the first frame handed to the encoders to the last one finished.
+	 */
+	public double getCaptureFramesPerSecond() {
+		long captured = capturedFrames.get();
+		if (captured == 0 || firstSubmitTime < 0) {
+			return 0;
+		}
+
+		return captured / ((lastEncodeTime - firstSubmitTime) / 1e9);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public void destroy() {
+		encoders.shutdownNow();
+
+		for (DeviceBuffer readbackBuffer : readbackBuffers) {
+			readbackBuffer.destroy();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Holds the render loop to a target frame time on the CPU. Waiting happens before input is polled, so a paced frame
+ * samples input as late as it can instead of sitting on it while blocked on the GPU.
+ * <p>
+ * Frames that run late move the schedule instead of being followed by a burst of short frames to catch up.
+ */
+public class FramePacer {
+	// sleeps overshoot, so the last stretch before the deadline is spent yielding instead
+	private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+	private final long targetFrameNanos;
+	private long nextFrame = -1;
+
+	/**
+	 * @param targetFrameRate frames per second, or 0 to not pace at all.
+	 */
+	public FramePacer(int targetFrameRate) {
+		targetFrameNanos = targetFrameRate > 0 ? TimeUnit.SECONDS.toNanos(1) / targetFrameRate : 0;
+	}
+
+	/**
+	 * Waits until the next frame is due.
+	 *
+	 * @return how long was spent waiting in nanoseconds.
+	 */
+	public long waitForNextFrame() {
+		if (targetFrameNanos == 0) {
+			return 0;
+		}
+
+		long start = System.nanoTime();
+		if (nextFrame < 0 || start - nextFrame > targetFrameNanos) {
+			// the first frame, or one that ran more than a whole frame late
+			nextFrame = start + targetFrameNanos;
+			return 0;
+		}
+
+		long now = start;
+		while (nextFrame - now > SPIN_NANOS) {
+			LockSupport.parkNanos(nextFrame - now - SPIN_NANOS);
+			now = System.nanoTime();
+		}
+		while (nextFrame - now > 0) {
+			Thread.yield();
+			now = System.nanoTime();
+		}
+
+		nextFrame += targetFrameNanos;
+		return now - start;
+	}
+
+	public boolean isPacing() {
+		return targetFrameNanos > 0;
+	}
+
+	public long getTargetFrameNanos() {
+		return targetFrameNanos;
+	}
+}
@@ -0,0 +1,36 @@
+package com.kneelawk.hellovulkan;
+
+/**
+ * The parts of a frame the {@link FrameProfiler} keeps timings for.
+ */
+public enum FramePhase {
+	/**
+	 * Time from the start of one frame to the start of the next.
+	 */
+	FRAME,
+	/**
+	 * Waiting for the frame's in-flight fence.
+	 */
+	FENCE_WAIT,
+	ACQUIRE,
+	RECORD,
+	SUBMIT,
+	PRESENT,
+	/**
+	 * Fence wait plus acquire, the time the CPU spent blocked on the GPU or the presentation engine.
+	 */
+	STALL,
+	/**
+	 * GPU execution time of the frame's command buffer, measured with timestamp queries.
+	 */
+	GPU,
+	/**
+	 * Time the frame pacer held the CPU back to keep to the target frame rate.
+	 */
+	PACE,
+	/**
+	 * Time from polling input to the frame that reflects it being handed to the presentation engine. Time spent queued
+	 * for display after that is not visible to the application and is not included.
+	 */
+	INPUT_TO_PRESENT
+}
@@ -0,0 +1,124 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Collects per-phase frame timings in nanoseconds. Recording happens on the render thread and never allocates;
+ * statistics can be polled from any thread.
+ */
+public class FrameProfiler {
+	private final LatencyHistogram[] histograms = new LatencyHistogram[FramePhase.values().length];
+	private final long dumpIntervalNanos;
+	private final Consumer<String> dumpSink;
+	private long lastDump;
+
+	/**
+	 * @param dumpIntervalNanos how often {@link #maybeDump(long)} prints and resets the statistics, or 0 to never dump.
+	 */
+	public FrameProfiler(long dumpIntervalNanos) {
+		this(dumpIntervalNanos, System.out::println);
+	}
+
+	/**
+	 * @param dumpSink receives the text of each dump instead of it being printed to standard output.
+	 */
+	public FrameProfiler(long dumpIntervalNanos, Consumer<String> dumpSink) {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+
+		this.dumpIntervalNanos = dumpIntervalNanos;
+		this.dumpSink = dumpSink;
+		lastDump = System.nanoTime();
+	}
+
+	public void record(FramePhase phase, long nanos) {
+		histograms[phase.ordinal()].record(nanos);
+	}
+
+	public PhaseStatistics getStatistics(FramePhase phase) {
+		LatencyHistogram histogram = histograms[phase.ordinal()];
+		return new PhaseStatistics(histogram.getCount(), histogram.getMean(), histogram.getValueAtPercentile(50),
+				histogram.getValueAtPercentile(99), histogram.getMax());
+	}
+
+	public Map<FramePhase, PhaseStatistics> getAllStatistics() {
+		Map<FramePhase, PhaseStatistics> statistics = new EnumMap<>(FramePhase.class);
+		for (FramePhase phase : FramePhase.values()) {
+			statistics.put(phase, getStatistics(phase));
+		}
+		return statistics;
+	}
+
+	public void reset() {
+		for (LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Dumps and resets the statistics if the dump interval has passed since the last dump.
+	 */
+	public void maybeDump(long now) {
+		if (dumpIntervalNanos <= 0 || now - lastDump < dumpIntervalNanos) {
+			return;
+		}
+
+		lastDump = now;
+
+		StringBuilder sb = new StringBuilder("Frame timings (ms):");
+		for (FramePhase phase : FramePhase.values()) {
+			PhaseStatistics statistics = getStatistics(phase);
+			if (statistics.getCount() > 0) {
+				sb.append("\n\t").append(phase).append(": ").append(statistics);
+			}
+		}
+		dumpSink.accept(sb.toString());
+
+		reset();
+	}
+
+	public static class PhaseStatistics {
+		private final long count;
+		private final double mean;
+		private final long p50;
+		private final long p99;
+		private final long max;
+
+		public PhaseStatistics(long count, double mean, long p50, long p99, long max) {
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("n=%d mean=%.3f p50=%.3f p99=%.3f max=%.3f", count, mean / 1e6, p50 / 1e6, p99 / 1e6,
+					max / 1e6);
+		}
+	}
+}
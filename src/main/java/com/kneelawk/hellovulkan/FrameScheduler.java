@@ -0,0 +1,227 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.LongBuffer;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Paces frames over a configurable number of frames in flight and tracks which frames the GPU has finished with a
+ * single counter, so resources can be released with "once frame N retires" instead of by frame slot.
+ * <p>
+ * Frames are numbered in submission order and retire in the same order, as they are all submitted to one queue. The
+ * counter is kept with one fence per frame slot. It has the shape of a timeline semaphore value, but the Vulkan
+ * bindings in use do not expose VK_KHR_timeline_semaphore.
+ */
+public class FrameScheduler implements FenceClock {
+	private final VkDevice device;
+	private final int framesInFlight;
+
+	private final long[] imageAvailableSemaphores;
+	private final long[] renderFinishedSemaphores;
+	private final long[] fences;
+	// the frame number each slot last submitted, or -1
+	private final long[] slotFrameNumbers;
+
+	private int currentFrame = 0;
+	private long frameNumber = 0;
+	private long retiredFrameNumber = -1;
+
+	private final PriorityQueue<Retirement> retirements = new PriorityQueue<>(
+			Comparator.comparingLong((Retirement r) -> r.frameNumber).thenComparingLong(r -> r.sequence));
+	private long retirementSequence = 0;
+
+	/**
+	 * @param framesInFlight how many frames the CPU may record ahead of the GPU. 1 gives the lowest latency, 3 or more
+	 *                       keep the GPU busy when frame times vary.
+	 */
+	public FrameScheduler(VkDevice device, int framesInFlight) {
+		if (framesInFlight < 1) {
+			throw new IllegalArgumentException("At least one frame must be in flight");
+		}
+
+		this.device = device;
+		this.framesInFlight = framesInFlight;
+
+		imageAvailableSemaphores = new long[framesInFlight];
+		renderFinishedSemaphores = new long[framesInFlight];
+		fences = new long[framesInFlight];
+		slotFrameNumbers = new long[framesInFlight];
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkSemaphoreCreateInfo semaphoreCreateInfo = VkSemaphoreCreateInfo.callocStack(stack);
+			semaphoreCreateInfo.sType(VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO);
+
+			VkFenceCreateInfo fenceCreateInfo = VkFenceCreateInfo.callocStack(stack);
+			fenceCreateInfo.sType(VK_STRUCTURE_TYPE_FENCE_CREATE_INFO);
+			fenceCreateInfo.flags(VK_FENCE_CREATE_SIGNALED_BIT);
+
+			LongBuffer syncObjectBuffer = stack.mallocLong(3);
+
+			for (int i = 0; i < framesInFlight; i++) {
+				if (vkCreateSemaphore(device, semaphoreCreateInfo, null, syncObjectBuffer.position(0)) != VK_SUCCESS
+						|| vkCreateSemaphore(device, semaphoreCreateInfo, null, syncObjectBuffer.position(1)) != VK_SUCCESS
+						|| vkCreateFence(device, fenceCreateInfo, null, syncObjectBuffer.position(2)) != VK_SUCCESS) {
+					throw new RuntimeException("Failed to create sync objects for a frame");
+				}
+
+				imageAvailableSemaphores[i] = syncObjectBuffer.get(0);
+				renderFinishedSemaphores[i] = syncObjectBuffer.get(1);
+				fences[i] = syncObjectBuffer.get(2);
+				// nothing has been submitted yet
+				slotFrameNumbers[i] = -1;
+			}
+		}
+	}
+
+	/**
+	 * Waits until the current slot's previous frame has retired, which frees everything that frame used.
+	 *
+	 * @return the current frame slot, for indexing per-slot resources.
+	 */
+	public int beginFrame() {
+		vkWaitForFences(device, fences[currentFrame], true, -1L);
+		retire(slotFrameNumbers[currentFrame]);
+		return currentFrame;
+	}
+
+	/**
+	 * Submits the frame's work, signaling the slot's fence when it completes. Must be called at most once per frame.
+	 */
+	public void submit(VkQueue queue, VkSubmitInfo submitInfo) {
+		vkResetFences(device, fences[currentFrame]);
+
+		if (vkQueueSubmit(queue, submitInfo, fences[currentFrame]) != VK_SUCCESS) {
+			throw new RuntimeException("Failed to submit draw command buffer");
+		}
+
+		slotFrameNumbers[currentFrame] = frameNumber;
+	}
+
+	/**
+	 * Moves on to the next frame. A frame that ends without a submit, like one whose swap chain image could not be
+	 * acquired, keeps its slot and number for the next attempt.
+	 */
+	public void endFrame() {
+		if (slotFrameNumbers[currentFrame] != frameNumber) {
+			return;
+		}
+
+		frameNumber++;
+		currentFrame = (currentFrame + 1) % framesInFlight;
+	}
+
+	/**
+	 * Runs an action once a frame has retired, or right away if it already has. Actions run on the thread that calls
+	 * {@link #beginFrame()}, in frame order.
+	 */
+	public void onRetire(long frameNumber, Runnable action) {
+		if (frameNumber <= retiredFrameNumber) {
+			action.run();
+			return;
+		}
+
+		retirements.add(new Retirement(frameNumber, retirementSequence++, action));
+	}
+
+	/**
+	 * Runs an action once the frame currently being recorded has retired.
+	 */
+	public void onRetire(Runnable action) {
+		onRetire(frameNumber, action);
+	}
+
+	/**
+	 * Checks the fences of the frames in flight without waiting, retiring every frame that has completed.
+	 *
+	 * @return the number of the newest retired frame.
+	 */
+	public long poll() {
+		for (long frame = retiredFrameNumber + 1; frame < frameNumber; frame++) {
+			int slot = (int) (frame % framesInFlight);
+			if (slotFrameNumbers[slot] != frame || vkGetFenceStatus(device, fences[slot]) != VK_SUCCESS) {
+				break;
+			}
+			retire(frame);
+		}
+
+		return retiredFrameNumber;
+	}
+
+	/**
+	 * Waits for every submitted frame to retire.
+	 */
+	public void waitIdle() {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			vkWaitForFences(device, stack.longs(fences), true, -1L);
+		}
+		retire(frameNumber - 1);
+	}
+
+	public int getCurrentFrame() {
+		return currentFrame;
+	}
+
+	/**
+	 * @return the number of the frame currently being recorded.
+	 */
+	public long getFrameNumber() {
+		return frameNumber;
+	}
+
+	@Override
+	public long getRetiredFrameNumber() {
+		return retiredFrameNumber;
+	}
+
+	public int getFramesInFlight() {
+		return framesInFlight;
+	}
+
+	public long getImageAvailableSemaphore() {
+		return imageAvailableSemaphores[currentFrame];
+	}
+
+	public long getRenderFinishedSemaphore() {
+		return renderFinishedSemaphores[currentFrame];
+	}
+
+	/**
+	 * Runs every outstanding retire action and destroys the sync objects. The device must be idle.
+	 */
+	public void destroy() {
+		retire(Long.MAX_VALUE);
+
+		for (int i = 0; i < framesInFlight; i++) {
+			vkDestroySemaphore(device, imageAvailableSemaphores[i], null);
+			vkDestroySemaphore(device, renderFinishedSemaphores[i], null);
+			vkDestroyFence(device, fences[i], null);
+		}
+	}
+
+	private void retire(long frame) {
+		if (frame > retiredFrameNumber) {
+			retiredFrameNumber = Math.min(frame, frameNumber - 1);
+		}
+
+		while (!retirements.isEmpty() && retirements.peek().frameNumber <= frame) {
+			retirements.poll().action.run();
+		}
+	}
+
+	private static class Retirement {
+		private final long frameNumber;
+		private final long sequence;
+		private final Runnable action;
+
+		private Retirement(long frameNumber, long sequence, Runnable action) {
+			this.frameNumber = frameNumber;
+			this.sequence = sequence;
+			this.action = action;
+		}
+	}
+}
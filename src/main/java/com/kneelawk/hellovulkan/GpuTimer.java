@@ -0,0 +1,86 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkQueryPoolCreateInfo;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Measures the GPU time of each frame with a pair of timestamp queries per frame slot.
+ */
+public class GpuTimer {
+	private final VkDevice device;
+	private final long queryPool;
+	private final double nanosPerTick;
+	private final long validBitsMask;
+	private final boolean[] written;
+
+	/**
+	 * @param timestampPeriod    the device's timestampPeriod limit.
+	 * @param timestampValidBits the timestampValidBits of the queue family the frames are submitted to.
+	 */
+	public GpuTimer(VkDevice device, int frameCount, float timestampPeriod, int timestampValidBits) {
+		this.device = device;
+		nanosPerTick = timestampPeriod;
+		validBitsMask = timestampValidBits >= 64 ? -1L : (1L << timestampValidBits) - 1;
+		written = new boolean[frameCount];
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkQueryPoolCreateInfo queryPoolCreateInfo = VkQueryPoolCreateInfo.callocStack(stack);
+			queryPoolCreateInfo.sType(VK_STRUCTURE_TYPE_QUERY_POOL_CREATE_INFO);
+			queryPoolCreateInfo.queryType(VK_QUERY_TYPE_TIMESTAMP);
+			queryPoolCreateInfo.queryCount(frameCount * 2);
+
+			LongBuffer queryPoolBuffer = stack.mallocLong(1);
+			if (vkCreateQueryPool(device, queryPoolCreateInfo, null, queryPoolBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create timestamp query pool");
+			}
+			queryPool = queryPoolBuffer.get(0);
+		}
+	}
+
+	/**
+	 * Must be recorded outside of a render pass, at the start of the frame's command buffer.
+	 */
+	public void begin(VkCommandBuffer commandBuffer, int frame) {
+		written[frame] = false;
+		vkCmdResetQueryPool(commandBuffer, queryPool, frame * 2, 2);
+		vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, queryPool, frame * 2);
+	}
+
+	public void end(VkCommandBuffer commandBuffer, int frame) {
+		vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, queryPool, frame * 2 + 1);
+		written[frame] = true;
+	}
+
+	/**
+	 * Reads the previous results for a frame slot, which must only be called after that slot's fence has signaled. Each
+	 * result is only returned once, so a slot that is waited on again without a new submit reports nothing.
+	 *
+	 * @return the GPU time in nanoseconds, or -1 if there is no result.
+	 */
+	public long collect(int frame) {
+		if (!written[frame]) {
+			return -1;
+		}
+		written[frame] = false;
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			LongBuffer results = stack.mallocLong(2);
+			if (vkGetQueryPoolResults(device, queryPool, frame * 2, 2, results, 8, VK_QUERY_RESULT_64_BIT) != VK_SUCCESS) {
+				return -1;
+			}
+
+			long ticks = ((results.get(1) & validBitsMask) - (results.get(0) & validBitsMask)) & validBitsMask;
+			return (long) (ticks * nanosPerTick);
+		}
+	}
+
+	public void destroy() {
+		vkDestroyQueryPool(device, queryPool, null);
+	}
+}
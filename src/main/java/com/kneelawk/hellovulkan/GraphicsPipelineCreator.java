@@ -0,0 +1,186 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableList;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.util.function.IntToLongFunction;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Creates graphics pipelines from their descriptions, with a dynamic viewport and scissor and one shared pipeline
+ * layout.
+ */
+public class GraphicsPipelineCreator implements PipelineCreator {
+	private final VkDevice device;
+	private final long pipelineCache;
+	private final ShaderModuleCache shaderModuleCache;
+	private final long pipelineLayout;
+	private final IntToLongFunction renderPasses;
+
+	/**
+	 * @param renderPasses finds a render pass compatible with a color format. It is called on the compiler threads.
+	 */
+	public GraphicsPipelineCreator(VkDevice device, long pipelineCache, ShaderModuleCache shaderModuleCache,
+								   long pipelineLayout, IntToLongFunction renderPasses) {
+		this.device = device;
+		this.pipelineCache = pipelineCache;
+		this.shaderModuleCache = shaderModuleCache;
+		this.pipelineLayout = pipelineLayout;
+		this.renderPasses = renderPasses;
+	}
+
+	@Override
+	public long createPipeline(PipelineDescription description) {
+		ImmutableList<PipelineDescription.ShaderStage> stages = description.getStages();
+		long[] shaderModules = new long[stages.size()];
+		int acquiredModules = 0;
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkPipelineShaderStageCreateInfo.Buffer shaderStages = VkPipelineShaderStageCreateInfo.callocStack(stages.size(), stack);
+			for (int i = 0; i < stages.size(); i++) {
+				PipelineDescription.ShaderStage stage = stages.get(i);
+
+				// after the first pipeline these come straight from the cache, without touching the resources
+				try {
+					shaderModules[i] = shaderModuleCache.acquire(stage.getModule());
+				} catch (IOException e) {
+					throw new RuntimeException("Failed to load shader " + stage.getModule(), e);
+				}
+				acquiredModules++;
+
+				shaderStages.position(i);
+				shaderStages.sType(VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO);
+				shaderStages.stage(stage.getStage());
+				shaderStages.module(shaderModules[i]);
+				shaderStages.pName(stack.ASCII("main"));
+				shaderStages.pSpecializationInfo(stage.getSpecialization().toSpecializationInfo(stack));
+			}
+			shaderStages.rewind();
+
+			VertexFormat vertexFormat = description.getVertexFormat();
+			VkPipelineVertexInputStateCreateInfo vertexInputCreateInfo = VkPipelineVertexInputStateCreateInfo.callocStack(stack);
+			vertexInputCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_VERTEX_INPUT_STATE_CREATE_INFO);
+			vertexInputCreateInfo.pVertexBindingDescriptions(vertexFormat.getBindingDescriptions(stack));
+			vertexInputCreateInfo.pVertexAttributeDescriptions(vertexFormat.getAttributeDescriptions(stack));
+
+			VkPipelineInputAssemblyStateCreateInfo inputAssemblyCreateInfo = VkPipelineInputAssemblyStateCreateInfo.callocStack(stack);
+			inputAssemblyCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_INPUT_ASSEMBLY_STATE_CREATE_INFO);
+			inputAssemblyCreateInfo.topology(description.getTopology());
+			inputAssemblyCreateInfo.primitiveRestartEnable(false);
+
+			// the viewport and scissor are set when recording, so resizing does not need a new pipeline
+			VkPipelineViewportStateCreateInfo viewportStateCreateInfo = VkPipelineViewportStateCreateInfo.callocStack(stack);
+			viewportStateCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_VIEWPORT_STATE_CREATE_INFO);
+			viewportStateCreateInfo.viewportCount(1);
+			viewportStateCreateInfo.pViewports(null);
+			viewportStateCreateInfo.scissorCount(1);
+			viewportStateCreateInfo.pScissors(null);
+
+			VkPipelineDynamicStateCreateInfo dynamicStateCreateInfo = VkPipelineDynamicStateCreateInfo.callocStack(stack);
+			dynamicStateCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_DYNAMIC_STATE_CREATE_INFO);
+			dynamicStateCreateInfo.pDynamicStates(stack.ints(VK_DYNAMIC_STATE_VIEWPORT, VK_DYNAMIC_STATE_SCISSOR));
+
+			VkPipelineRasterizationStateCreateInfo rasterizationStateCreateInfo = VkPipelineRasterizationStateCreateInfo.callocStack(stack);
+			rasterizationStateCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_RASTERIZATION_STATE_CREATE_INFO);
+			rasterizationStateCreateInfo.depthClampEnable(false);
+			rasterizationStateCreateInfo.rasterizerDiscardEnable(false);
+			rasterizationStateCreateInfo.polygonMode(description.getPolygonMode());
+			rasterizationStateCreateInfo.lineWidth(1.0f);
+			rasterizationStateCreateInfo.cullMode(description.getCullMode());
+			rasterizationStateCreateInfo.frontFace(description.getFrontFace());
+			rasterizationStateCreateInfo.depthBiasEnable(false);
+			rasterizationStateCreateInfo.depthBiasConstantFactor(0.0f);
+			rasterizationStateCreateInfo.depthBiasClamp(0.0f);
+			rasterizationStateCreateInfo.depthBiasSlopeFactor(0.0f);
+
+			VkPipelineMultisampleStateCreateInfo multisampleStateCreateInfo = VkPipelineMultisampleStateCreateInfo.callocStack(stack);
+			multisampleStateCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_MULTISAMPLE_STATE_CREATE_INFO);
+			multisampleStateCreateInfo.sampleShadingEnable(false);
+			multisampleStateCreateInfo.rasterizationSamples(description.getSamples());
+			multisampleStateCreateInfo.minSampleShading(1.0f);
+			multisampleStateCreateInfo.pSampleMask(null);
+			multisampleStateCreateInfo.alphaToCoverageEnable(false);
+			multisampleStateCreateInfo.alphaToOneEnable(false);
+
+			VkPipelineColorBlendAttachmentState.Buffer colorBlendAttachmentStateBuffer = VkPipelineColorBlendAttachmentState.callocStack(1, stack);
+			colorBlendAttachmentStateBuffer.position(0);
+			colorBlendAttachmentStateBuffer.colorWriteMask(description.getColorWriteMask());
+			setBlendMode(colorBlendAttachmentStateBuffer, description.getBlendMode());
+
+			VkPipelineColorBlendStateCreateInfo colorBlendStateCreateInfo = VkPipelineColorBlendStateCreateInfo.callocStack(stack);
+			colorBlendStateCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_COLOR_BLEND_STATE_CREATE_INFO);
+			colorBlendStateCreateInfo.logicOpEnable(false);
+			colorBlendStateCreateInfo.logicOp(VK_LOGIC_OP_COPY);
+			colorBlendStateCreateInfo.pAttachments(colorBlendAttachmentStateBuffer);
+			colorBlendStateCreateInfo.blendConstants(stack.floats(0.0f, 0.0f, 0.0f, 0.0f));
+
+			VkGraphicsPipelineCreateInfo.Buffer pipelineCreateInfoBuffer = VkGraphicsPipelineCreateInfo.callocStack(1, stack);
+			pipelineCreateInfoBuffer.position(0);
+			pipelineCreateInfoBuffer.sType(VK_STRUCTURE_TYPE_GRAPHICS_PIPELINE_CREATE_INFO);
+			pipelineCreateInfoBuffer.pStages(shaderStages);
+			pipelineCreateInfoBuffer.pVertexInputState(vertexInputCreateInfo);
+			pipelineCreateInfoBuffer.pInputAssemblyState(inputAssemblyCreateInfo);
+			pipelineCreateInfoBuffer.pViewportState(viewportStateCreateInfo);
+			pipelineCreateInfoBuffer.pRasterizationState(rasterizationStateCreateInfo);
+			pipelineCreateInfoBuffer.pMultisampleState(multisampleStateCreateInfo);
+			pipelineCreateInfoBuffer.pDepthStencilState(null);
+			pipelineCreateInfoBuffer.pColorBlendState(colorBlendStateCreateInfo);
+			pipelineCreateInfoBuffer.pDynamicState(dynamicStateCreateInfo);
+			pipelineCreateInfoBuffer.layout(pipelineLayout);
+			pipelineCreateInfoBuffer.renderPass(renderPasses.applyAsLong(description.getColorFormat()));
+			pipelineCreateInfoBuffer.subpass(0);
+			pipelineCreateInfoBuffer.basePipelineHandle(VK_NULL_HANDLE);
+			pipelineCreateInfoBuffer.basePipelineIndex(-1);
+
+			// the pipeline cache is internally synchronized, so compiler threads can share it
+			LongBuffer graphicsPipelineBuffer = stack.mallocLong(1);
+			if (vkCreateGraphicsPipelines(device, pipelineCache, pipelineCreateInfoBuffer, null, graphicsPipelineBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create graphics pipeline");
+			}
+
+			return graphicsPipelineBuffer.get(0);
+		} finally {
+			for (int i = 0; i < acquiredModules; i++) {
+				shaderModuleCache.release(shaderModules[i]);
+			}
+		}
+	}
+
+	@Override
+	public void destroyPipeline(long pipeline) {
+		vkDestroyPipeline(device, pipeline, null);
+	}
+
+	private static void setBlendMode(VkPipelineColorBlendAttachmentState.Buffer attachment, PipelineDescription.BlendMode blendMode) {
+		attachment.colorBlendOp(VK_BLEND_OP_ADD);
+		attachment.alphaBlendOp(VK_BLEND_OP_ADD);
+
+		switch (blendMode) {
+			case OPAQUE:
+				attachment.blendEnable(false);
+				attachment.srcColorBlendFactor(VK_BLEND_FACTOR_ONE);
+				attachment.dstColorBlendFactor(VK_BLEND_FACTOR_ZERO);
+				attachment.srcAlphaBlendFactor(VK_BLEND_FACTOR_ONE);
+				attachment.dstAlphaBlendFactor(VK_BLEND_FACTOR_ZERO);
+				break;
+			case ALPHA:
+				attachment.blendEnable(true);
+				attachment.srcColorBlendFactor(VK_BLEND_FACTOR_SRC_ALPHA);
+				attachment.dstColorBlendFactor(VK_BLEND_FACTOR_ONE_MINUS_SRC_ALPHA);
+				attachment.srcAlphaBlendFactor(VK_BLEND_FACTOR_ONE);
+				attachment.dstAlphaBlendFactor(VK_BLEND_FACTOR_ONE_MINUS_SRC_ALPHA);
+				break;
+			case ADDITIVE:
+				attachment.blendEnable(true);
+				attachment.srcColorBlendFactor(VK_BLEND_FACTOR_SRC_ALPHA);
+				attachment.dstColorBlendFactor(VK_BLEND_FACTOR_ONE);
+				attachment.srcAlphaBlendFactor(VK_BLEND_FACTOR_ONE);
+				attachment.dstAlphaBlendFactor(VK_BLEND_FACTOR_ONE);
+				break;
+		}
+	}
+}
@@ -1,10 +1,8 @@
 package com.kneelawk.hellovulkan;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import org.joml.Vector2f;
-import org.joml.Vector3f;
+import org.joml.Matrix4f;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
@@ -14,16 +12,18 @@ import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
-import java.nio.channels.Channels;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.glfw.GLFWVulkan.glfwCreateWindowSurface;
 import static org.lwjgl.glfw.GLFWVulkan.glfwGetRequiredInstanceExtensions;
-import static org.lwjgl.system.MemoryUtil.NULL;
-import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.system.MemoryUtil.*;
 import static org.lwjgl.vulkan.EXTDebugUtils.*;
 import static org.lwjgl.vulkan.KHRSurface.*;
 import static org.lwjgl.vulkan.KHRSwapchain.*;
@@ -31,9 +31,53 @@ import static org.lwjgl.vulkan.VK10.*;
 
 public class HelloVulkanApplication {
 	private static final boolean DEBUG = Boolean.parseBoolean(System.getProperty("com.kneelawk.hellovulkan.Debug", "true"));
+	private static final boolean PACKED_VERTICES = Boolean.parseBoolean(System.getProperty("com.kneelawk.hellovulkan.PackedVertices", "false"));
+	private static final VertexFormat VERTEX_FORMAT = Instance.withInstanceBinding(PACKED_VERTICES ? Vertex.PACKED_FORMAT : Vertex.FORMAT);
+	private static final int INSTANCE_ALIGNMENT = 16;
+	private static final int INSTANCE_COUNT = Integer.getInteger("com.kneelawk.hellovulkan.Instances", 1);
+	private static final int PARTICLE_COUNT = Integer.getInteger("com.kneelawk.hellovulkan.Particles", 0);
+	private static final boolean INDIRECT_DRAWS = Boolean.parseBoolean(System.getProperty("com.kneelawk.hellovulkan.IndirectDraws", "true"));
+	private static final long INDIRECT_RING_SIZE = 1024L * 1024;
+	private static final long UNIFORM_RING_SIZE = 256L * 1024;
+	// mat4 viewProjection
+	private static final int CAMERA_UNIFORM_SIZE = 64;
+	private static final int DESCRIPTOR_SETS_PER_POOL = 64;
+	// small per-draw data is pushed rather than going through descriptors
+	private static final PushConstantLayout DRAW_CONSTANTS = PushConstantLayout.builder()
+			.member("transform", PushConstantLayout.Type.VEC4)
+			.member("offset", PushConstantLayout.Type.VEC2)
+			.build(VK_SHADER_STAGE_VERTEX_BIT);
+	private static final PushConstantLayout.Member DRAW_TRANSFORM = DRAW_CONSTANTS.getMember("transform");
+	private static final PushConstantLayout.Member DRAW_OFFSET = DRAW_CONSTANTS.getMember("offset");
+	private static final String PIPELINE_CACHE_PATH = System.getProperty("com.kneelawk.hellovulkan.PipelineCache", "pipeline-cache.bin");
+	private static final int PIPELINE_COMPILE_THREADS = Integer.getInteger("com.kneelawk.hellovulkan.PipelineCompileThreads",
+			Math.max(Runtime.getRuntime().availableProcessors() / 2, 1));
+	private static final int RECORDING_THREADS = Integer.getInteger("com.kneelawk.hellovulkan.RecordingThreads",
+			Math.min(Runtime.getRuntime().availableProcessors(), 16));
+	private static final int MIN_DRAWS_PER_RECORDING_SLICE = 256;
+	private static final boolean HEADLESS = Boolean.parseBoolean(System.getProperty("com.kneelawk.hellovulkan.Headless", "false"));
+	private static final int HEADLESS_FRAMES = Integer.getInteger("com.kneelawk.hellovulkan.HeadlessFrames", 1000);
+	private static final String CAPTURE_DIRECTORY = System.getProperty("com.kneelawk.hellovulkan.CaptureDirectory");
+	private static final FrameCapture.Format CAPTURE_FORMAT = FrameCapture.Format.valueOf(
+			System.getProperty("com.kneelawk.hellovulkan.CaptureFormat", "png").toUpperCase());
+	private static final int CAPTURE_THREADS = Integer.getInteger("com.kneelawk.hellovulkan.CaptureThreads",
+			Math.max(Runtime.getRuntime().availableProcessors() / 2, 1));
+	private static final int HEADLESS_IMAGE_FORMAT = VK_FORMAT_R8G8B8A8_UNORM;
+	private static final boolean GPU_TIMING = Boolean.parseBoolean(System.getProperty("com.kneelawk.hellovulkan.GpuTiming", "true"));
+	private static final int PROFILE_DUMP_INTERVAL_SECONDS = Integer.getInteger("com.kneelawk.hellovulkan.ProfileDumpInterval",
+			DEBUG ? 5 : 0);
+	private static final String SHADER_PATH = "com/kneelawk/hellovulkan/";
 	private static final int WINDOW_WIDTH = 1280;
 	private static final int WINDOW_HEIGHT = 720;
-	private static final int MAX_FRAMES_IN_FLIGHT = 2;
+	// one of low-latency, balanced, max-throughput or power-saver
+	private static final PresentPolicy PRESENT_POLICY = readPresentPolicy();
+	// 1 for the lowest latency, 3 or more to keep the GPU busy when frame times vary
+	private static final int FRAMES_IN_FLIGHT = Integer.getInteger("com.kneelawk.hellovulkan.FramesInFlight",
+			PRESENT_POLICY.getDefaultFramesInFlight());
+	// 0 to render as fast as presentation allows
+	private static final int TARGET_FRAME_RATE = Integer.getInteger("com.kneelawk.hellovulkan.TargetFrameRate",
+			PRESENT_POLICY.getDefaultTargetFrameRate());
+	private static final long STAGING_BUFFER_SIZE = 16L * 1024 * 1024;
 	private static final String[] LAYERS = {
 			"VK_LAYER_LUNARG_standard_validation"
 	};
@@ -44,10 +88,10 @@ public class HelloVulkanApplication {
 			VK_KHR_SWAPCHAIN_EXTENSION_NAME
 	};
 
-	private static final Vertex[] vertices = {
-			new Vertex(new Vector2f(0.0f, -0.5f), new Vector3f(1.0f, 0.0f, 0.0f)),
-			new Vertex(new Vector2f(0.5f, 0.5f), new Vector3f(0.0f, 1.0f, 0.0f)),
-			new Vertex(new Vector2f(-0.5f, 0.5f), new Vector3f(0.0f, 0.0f, 1.0f))
+	private static final float[] VERTEX_DATA = {
+			0.0f, -0.5f, 1.0f, 0.0f, 0.0f,
+			0.5f, 0.5f, 0.0f, 1.0f, 0.0f,
+			-0.5f, 0.5f, 0.0f, 0.0f, 1.0f
 	};
 
 	/*
@@ -68,12 +112,21 @@ public class HelloVulkanApplication {
 
 	// device
 	private VkPhysicalDevice physicalDevice;
+	// queried once when the device is picked, the properties never change
+	private VkPhysicalDeviceProperties physicalDeviceProperties;
 	private VkDevice device;
 
 	// queues
+	// the families the device's queues were created from, so creating resources does not have to look them up again
+	private QueueFamilyIndices queueFamilyIndices;
 	private VkQueue graphicsQueue;
 	private VkQueue presentQueue;
 	private VkQueue transferQueue;
+	private VkQueue computeQueue;
+
+	// memory
+	private DeviceMemoryAllocator memoryAllocator;
+	private StagingUploader stagingUploader;
 
 	// swap chain
 	private long swapChain;
@@ -82,34 +135,113 @@ public class HelloVulkanApplication {
 	private VkExtent2D swapChainExtent = VkExtent2D.mallocStack();
 	private long[] swapChainImageViews;
 
-	// render pass
+	// shaders
+	private ShaderVariantManifest shaderVariants;
+	private Set<String> shaderFeatures;
+	private ShaderModuleCache shaderModuleCache;
+
+	// pipeline cache
+	private long pipelineCache;
+
+	// render pass, one for each image format the swap chain has had, as pipelines for it may still be compiling
+	private final Map<Integer, Long> renderPasses = new ConcurrentHashMap<>();
 	private long renderPass;
+
+	// descriptors, set 0 holds per-frame data and is allocated fresh every frame
+	private DescriptorSetLayout frameSetLayout;
+	private DescriptorAllocator descriptorAllocator;
+
+	// pipelines
 	private long pipelineLayout;
+	private PipelineStateCache pipelineStateCache;
+	private PipelineDescription graphicsPipelineDescription;
 	private long graphicsPipeline;
 
+	// headless rendering, offscreen images stand in for the swap chain images
+	private DeviceImage[] offscreenImages;
+	private FrameCapture frameCapture;
+
 	// framebuffer
 	private long[] swapChainFramebuffers;
 
 	// command buffers
-	private long commandPool;
-	private long transferCommandPool;
-	private VkCommandBuffer[] commandBuffers;
-
-	// synchronization
-	private long[] imageAvailableSemaphores = new long[MAX_FRAMES_IN_FLIGHT];
-	private long[] renderFinishedSemaphores = new long[MAX_FRAMES_IN_FLIGHT];
-	private long[] inFlightFences = new long[MAX_FRAMES_IN_FLIGHT];
+	// one transient pool per frame in flight, reset as a whole once that frame's fence has signaled
+	private long[] frameCommandPools = new long[FRAMES_IN_FLIGHT];
+	private VkCommandBuffer[] frameCommandBuffers = new VkCommandBuffer[FRAMES_IN_FLIGHT];
+	private DrawList drawList = new DrawList();
+
+	// parallel recording, one pool per frame in flight and recording slot
+	private RecordingScheduler recordingScheduler;
+	private long[][] secondaryCommandPools;
+	private VkCommandBuffer[][] secondaryCommandBuffers;
+
+	// synchronization, the current frame is the scheduler's slot for the frame being recorded
+	private FrameScheduler frameScheduler;
 	private int currentFrame = 0;
+	// resources replaced while frames in flight may still use them, like the swap chain on resize
+	private DeferredDeletionQueue deletionQueue;
+
+	// instrumentation
+	private final FrameProfiler frameProfiler = new FrameProfiler(TimeUnit.SECONDS.toNanos(PROFILE_DUMP_INTERVAL_SECONDS));
+	private GpuTimer gpuTimer;
+	private long lastFrameStart = -1;
+	private final FramePacer framePacer = new FramePacer(TARGET_FRAME_RATE);
+	// when input for the frame being drawn was polled
+	private long inputPolled = -1;
 
 	// swap chain recreation
 	private boolean framebufferResized = false;
 
 	// vertex buffer
-	private long vertexBuffer;
-	private long vertexBufferMemory;
+	private VertexStore vertices;
+	private DeviceBuffer vertexBuffer;
+
+	// index buffer
+	private int[] meshIndices;
+	private DeviceBuffer indexBuffer;
+
+	// per-instance attributes, rewritten every frame
+	private MappedRingBuffer instanceRing;
+	private VertexWriter instanceWriter = VERTEX_FORMAT.writer(Instance.BINDING);
+
+	// indirect draw commands, packed once per frame before recording. The offset is -1 when this frame's commands did
+	// not fit in the ring and its draws are recorded directly.
+	private MappedRingBuffer indirectRing;
+	private IndirectCommandPacker indirectPacker = new IndirectCommandPacker();
+	private long indirectOffset = -1;
+	private boolean multiDrawIndirect;
+
+	// uniforms, rewritten every frame and addressed with dynamic offsets
+	private UniformRingBuffer uniformRing;
+	private Matrix4f camera = new Matrix4f();
+	private long frameDescriptorSet;
+	private int cameraOffset;
+
+	// Particles
+	private ParticleSimulation particleSimulation;
+	private long lastParticleStep = -1;
+
+	/**
+	 * Frame timings can be polled from any thread while the application runs.
+	 */
+	public FrameProfiler getFrameProfiler() {
+		return frameProfiler;
+	}
+
+	private static PresentPolicy readPresentPolicy() {
+		String name = System.getProperty("com.kneelawk.hellovulkan.PresentPolicy", PresentPolicy.BALANCED.getName());
+		try {
+			return PresentPolicy.fromName(name);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage() + ", using " + PresentPolicy.BALANCED.getName());
+			return PresentPolicy.BALANCED;
+		}
+	}
 
 	public void run() {
-		initWindow();
+		if (!HEADLESS) {
+			initWindow();
+		}
 		initVulkan();
 		mainLoop();
 		cleanup();
@@ -141,17 +273,42 @@ public class HelloVulkanApplication {
 			setupDebugCallback();
 		}
 
-		createSurface();
+		if (!HEADLESS) {
+			createSurface();
+		}
 		pickPhysicalDevice();
 		createLogicalDevice();
-		createSwapChain();
+		createMemoryAllocator();
+		createPipelineCache();
+		loadShaderVariants();
+		if (HEADLESS) {
+			createOffscreenImages();
+		} else {
+			createSwapChain();
+		}
 		createImageViews();
 		createRenderPass();
+		createDescriptorSetLayouts();
+		createPipelineLayout();
+		createPipelineStateCache();
 		createGraphicsPipeline();
 		createFramebuffers();
-		createCommandPool();
+		createFrameCommandPools();
+		createGpuTimer();
+		createStagingUploader();
 		createVertexBuffer();
-		createCommandBuffers();
+		createIndexBuffer();
+		createInstanceBuffer();
+		createUniformBuffer();
+		if (PARTICLE_COUNT > 0) {
+			createParticleSimulation();
+		}
+		if (INDIRECT_DRAWS) {
+			createIndirectBuffer();
+		}
+		if (HEADLESS && CAPTURE_DIRECTORY != null) {
+			createFrameCapture();
+		}
 		createSyncObjects();
 	}
 
@@ -183,14 +340,18 @@ public class HelloVulkanApplication {
 
 	private List<String> getRequiredExtensions() {
 		List<String> requiredExtensions = Lists.newArrayList();
-		PointerBuffer requiredExtensionsBuffer = glfwGetRequiredInstanceExtensions();
 
-		if (requiredExtensionsBuffer == null) {
-			throw new RuntimeException("Failed to find the vulkan extensions required for GLFW");
-		}
+		// headless rendering never creates a surface, so it needs none of GLFW's extensions
+		if (!HEADLESS) {
+			PointerBuffer requiredExtensionsBuffer = glfwGetRequiredInstanceExtensions();
+
+			if (requiredExtensionsBuffer == null) {
+				throw new RuntimeException("Failed to find the vulkan extensions required for GLFW");
+			}
 
-		for (int i = 0; i < requiredExtensionsBuffer.remaining(); i++) {
-			requiredExtensions.add(requiredExtensionsBuffer.getStringASCII(i));
+			for (int i = 0; i < requiredExtensionsBuffer.remaining(); i++) {
+				requiredExtensions.add(requiredExtensionsBuffer.getStringASCII(i));
+			}
 		}
 
 		if (DEBUG) {
@@ -361,6 +522,9 @@ public class HelloVulkanApplication {
 			if (physicalDevice == null) {
 				throw new RuntimeException("No compatible physical device detected");
 			}
+
+			physicalDeviceProperties = VkPhysicalDeviceProperties.malloc();
+			vkGetPhysicalDeviceProperties(physicalDevice, physicalDeviceProperties);
 		}
 	}
 
@@ -428,8 +592,8 @@ public class HelloVulkanApplication {
 
 		boolean extensionsSupported = checkDeviceExtensionSupport(physicalDevice);
 
-		boolean swapChainAdequate = false;
-		if (extensionsSupported) {
+		boolean swapChainAdequate = HEADLESS;
+		if (extensionsSupported && !HEADLESS) {
 			SwapChainSupportDetails details = querySwapChainSupport(physicalDevice);
 			swapChainAdequate = !details.getFormats().isEmpty() && !details.getPresentModes().isEmpty();
 		}
@@ -456,9 +620,11 @@ public class HelloVulkanApplication {
 				indices.setGraphicsFamily(i);
 			}
 
-			vkGetPhysicalDeviceSurfaceSupportKHR(physicalDevice, i, surface, presentSupportBuffer);
-			if (queueFamilyProperties.queueCount() > 0 && presentSupportBuffer.get(0) != 0) {
-				indices.setPresentFamily(i);
+			if (!HEADLESS) {
+				vkGetPhysicalDeviceSurfaceSupportKHR(physicalDevice, i, surface, presentSupportBuffer);
+				if (queueFamilyProperties.queueCount() > 0 && presentSupportBuffer.get(0) != 0) {
+					indices.setPresentFamily(i);
+				}
 			}
 
 			if (queueFamilyProperties.queueCount() > 0 && (queueFamilyProperties.queueFlags() & VK_QUEUE_TRANSFER_BIT) != 0) {
@@ -474,6 +640,26 @@ public class HelloVulkanApplication {
 			indices.setTransferFamily(indices.getGraphicsFamily());
 		}
 
+		// a compute-only family usually maps to separate hardware queues that run alongside graphics work
+		for (int i = 0; i < queueFamilyCount; i++) {
+			VkQueueFamilyProperties queueFamilyProperties = queueFamilyPropertiesBuffer.get(i);
+			if (queueFamilyProperties.queueCount() > 0 && (queueFamilyProperties.queueFlags() & VK_QUEUE_COMPUTE_BIT) != 0
+					&& (queueFamilyProperties.queueFlags() & VK_QUEUE_GRAPHICS_BIT) == 0) {
+				indices.setComputeFamily(i);
+				break;
+			}
+		}
+
+		if (!indices.isComputeFamilyFound() && indices.isGraphicsFamilyFound()
+				&& (queueFamilyPropertiesBuffer.get(indices.getGraphicsFamily()).queueFlags() & VK_QUEUE_COMPUTE_BIT) != 0) {
+			indices.setComputeFamily(indices.getGraphicsFamily());
+		}
+
+		// nothing is presented in headless mode, the present queue is just the graphics queue
+		if (HEADLESS && indices.isGraphicsFamilyFound()) {
+			indices.setPresentFamily(indices.getGraphicsFamily());
+		}
+
 		return indices;
 	}
 
@@ -488,7 +674,7 @@ public class HelloVulkanApplication {
 		VkExtensionProperties.Buffer availableExtensionsBuffer = VkExtensionProperties.mallocStack(extensionCount, stack);
 		vkEnumerateDeviceExtensionProperties(physicalDevice, (ByteBuffer) null, extensionCountBuffer, availableExtensionsBuffer);
 
-		List<String> requiredDeviceExtensions = Lists.newArrayList(DEVICE_EXTENSIONS);
+		List<String> requiredDeviceExtensions = getRequiredDeviceExtensions();
 
 		for (int i = 0; i < extensionCount; i++) {
 			requiredDeviceExtensions.remove(availableExtensionsBuffer.get(i).extensionNameString());
@@ -501,6 +687,10 @@ public class HelloVulkanApplication {
 		return requiredDeviceExtensions.isEmpty();
 	}
 
+	private List<String> getRequiredDeviceExtensions() {
+		return HEADLESS ? Lists.newArrayList() : Lists.newArrayList(DEVICE_EXTENSIONS);
+	}
+
 	private SwapChainSupportDetails querySwapChainSupport(VkPhysicalDevice physicalDevice) {
 		MemoryStack stack = MemoryStack.stackGet();
 
@@ -546,8 +736,12 @@ public class HelloVulkanApplication {
 	private void createLogicalDevice() {
 		try (MemoryStack stack = MemoryStack.stackPush()) {
 			QueueFamilyIndices indices = findQueueFamilies(physicalDevice);
+			queueFamilyIndices = indices;
 
-			Set<Integer> uniqueQueueFamilies = ImmutableSet.of(indices.getGraphicsFamily(), indices.getPresentFamily(), indices.getTransferFamily());
+			Set<Integer> uniqueQueueFamilies = indices.isComputeFamilyFound()
+					? ImmutableSet.of(indices.getGraphicsFamily(), indices.getPresentFamily(), indices.getTransferFamily(),
+					indices.getComputeFamily())
+					: ImmutableSet.of(indices.getGraphicsFamily(), indices.getPresentFamily(), indices.getTransferFamily());
 
 			FloatBuffer queuePrioritiesBuffer = stack.floats(1.0f);
 			VkDeviceQueueCreateInfo.Buffer queueCreateInfoBuffer = VkDeviceQueueCreateInfo.mallocStack(uniqueQueueFamilies.size(), stack);
@@ -560,16 +754,24 @@ public class HelloVulkanApplication {
 			}
 			queueCreateInfoBuffer.flip();
 
+			VkPhysicalDeviceFeatures supportedFeatures = VkPhysicalDeviceFeatures.mallocStack(stack);
+			vkGetPhysicalDeviceFeatures(physicalDevice, supportedFeatures);
+
+			// without multiDrawIndirect every indirect command still needs its own vkCmdDrawIndexedIndirect
+			multiDrawIndirect = INDIRECT_DRAWS && supportedFeatures.multiDrawIndirect();
+
 			VkPhysicalDeviceFeatures physicalDeviceFeatures = VkPhysicalDeviceFeatures.callocStack(stack);
+			physicalDeviceFeatures.multiDrawIndirect(multiDrawIndirect);
 
 			VkDeviceCreateInfo deviceCreateInfo = VkDeviceCreateInfo.callocStack(stack);
 			deviceCreateInfo.sType(VK_STRUCTURE_TYPE_DEVICE_CREATE_INFO);
 			deviceCreateInfo.pQueueCreateInfos(queueCreateInfoBuffer);
 			deviceCreateInfo.pEnabledFeatures(physicalDeviceFeatures);
 
-			PointerBuffer extensionsBuffer = stack.mallocPointer(DEVICE_EXTENSIONS.length);
-			for (int i = 0; i < LAYERS.length; i++) {
-				extensionsBuffer.put(i, stack.ASCII(DEVICE_EXTENSIONS[i]));
+			List<String> deviceExtensions = getRequiredDeviceExtensions();
+			PointerBuffer extensionsBuffer = stack.mallocPointer(deviceExtensions.size());
+			for (int i = 0; i < deviceExtensions.size(); i++) {
+				extensionsBuffer.put(i, stack.ASCII(deviceExtensions.get(i)));
 			}
 
 			deviceCreateInfo.ppEnabledExtensionNames(extensionsBuffer);
@@ -601,6 +803,75 @@ public class HelloVulkanApplication {
 
 			vkGetDeviceQueue(device, indices.getTransferFamily(), 0, queueBuffer);
 			transferQueue = new VkQueue(queueBuffer.get(0), device);
+
+			if (indices.isComputeFamilyFound()) {
+				vkGetDeviceQueue(device, indices.getComputeFamily(), 0, queueBuffer);
+				computeQueue = new VkQueue(queueBuffer.get(0), device);
+			}
+		}
+	}
+
+	private void createMemoryAllocator() {
+		memoryAllocator = new DeviceMemoryAllocator(MemoryTypeTable.fromPhysicalDevice(physicalDevice),
+				new VulkanBlockSource(device), DeviceMemoryAllocator.DEFAULT_BLOCK_SIZE,
+				physicalDeviceProperties.limits().bufferImageGranularity());
+	}
+
+	private void createPipelineCache() {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			ByteBuffer initialData = null;
+			try {
+				initialData = PipelineCacheFile.load(Paths.get(PIPELINE_CACHE_PATH), physicalDeviceProperties.vendorID(),
+						physicalDeviceProperties.deviceID(), physicalDeviceProperties.pipelineCacheUUID());
+			} catch (IOException e) {
+				System.err.println("Failed to read the pipeline cache, starting with an empty one: " + e);
+			}
+
+			if (DEBUG) {
+				System.out.println(initialData != null ? "Loaded " + initialData.remaining() + " byte pipeline cache"
+						: "No usable pipeline cache found");
+			}
+
+			VkPipelineCacheCreateInfo pipelineCacheCreateInfo = VkPipelineCacheCreateInfo.callocStack(stack);
+			pipelineCacheCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_CACHE_CREATE_INFO);
+			pipelineCacheCreateInfo.pInitialData(initialData);
+
+			LongBuffer pipelineCacheBuffer = stack.mallocLong(1);
+			int result = vkCreatePipelineCache(device, pipelineCacheCreateInfo, null, pipelineCacheBuffer);
+			// the driver copies the initial data
+			if (initialData != null) {
+				memFree(initialData);
+			}
+			if (result != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create pipeline cache");
+			}
+
+			pipelineCache = pipelineCacheBuffer.get(0);
+		}
+	}
+
+	private void savePipelineCache() {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			PointerBuffer dataSizeBuffer = stack.mallocPointer(1);
+			if (vkGetPipelineCacheData(device, pipelineCache, dataSizeBuffer, null) != VK_SUCCESS) {
+				System.err.println("Failed to get the pipeline cache size");
+				return;
+			}
+
+			ByteBuffer data = memAlloc((int) dataSizeBuffer.get(0));
+			try {
+				if (vkGetPipelineCacheData(device, pipelineCache, dataSizeBuffer, data) != VK_SUCCESS) {
+					System.err.println("Failed to get the pipeline cache data");
+					return;
+				}
+
+				data.limit((int) dataSizeBuffer.get(0));
+				PipelineCacheFile.writeAtomically(Paths.get(PIPELINE_CACHE_PATH), data);
+			} catch (IOException e) {
+				System.err.println("Failed to write the pipeline cache: " + e);
+			} finally {
+				memFree(data);
+			}
 		}
 	}
 
@@ -614,16 +885,59 @@ public class HelloVulkanApplication {
 			glfwWaitEvents();
 		}
 
-		vkDeviceWaitIdle(device);
+		int previousImageFormat = swapChainImageFormat;
 
-		cleanupSwapChain();
+		// frames in flight may still render to the old swap chain, so it is destroyed once they have retired instead
+		// of idling the device
+		long oldSwapChain = swapChain;
+		long[] oldImageViews = swapChainImageViews;
+		long[] oldFramebuffers = swapChainFramebuffers;
+		deletionQueue.defer(frameScheduler.getFrameNumber(), () -> {
+			for (long framebuffer : oldFramebuffers) {
+				vkDestroyFramebuffer(device, framebuffer, null);
+			}
+			for (long imageView : oldImageViews) {
+				vkDestroyImageView(device, imageView, null);
+			}
+			vkDestroySwapchainKHR(device, oldSwapChain, null);
+		});
 
 		createSwapChain();
 		createImageViews();
-		createRenderPass();
-		createGraphicsPipeline();
+		int rebuiltObjects = 1 + swapChainImageViews.length;
+
+		// the viewport and scissor are dynamic, so the render pass and pipeline only depend on the image format. The
+		// new pipeline compiles in the background, frames are only cleared until it is ready.
+		if (swapChainImageFormat != previousImageFormat) {
+			int previousObjects = renderPasses.size() + pipelineStateCache.size();
+			createRenderPass();
+			requestGraphicsPipeline();
+			rebuiltObjects += renderPasses.size() + pipelineStateCache.size() - previousObjects;
+		}
+
 		createFramebuffers();
-		createCommandBuffers();
+		rebuiltObjects += swapChainFramebuffers.length;
+
+		System.out.println("Recreated swap chain at " + swapChainExtent.width() + "x" + swapChainExtent.height()
+				+ ", rebuilt " + rebuiltObjects + " objects");
+	}
+
+	private void loadShaderVariants() {
+		try {
+			shaderVariants = ShaderVariantManifest.loadDefault();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to load the shader variant manifest", e);
+		}
+
+		// a lone instance is always drawn untinted
+		shaderFeatures = INSTANCE_COUNT > 1 || PARTICLE_COUNT > 0 ? ImmutableSet.of("TINT") : ImmutableSet.of();
+
+		if (DEBUG) {
+			System.out.println("Loaded " + shaderVariants.getVariantCount() + " shader variants, using features "
+					+ shaderFeatures);
+		}
+
+		shaderModuleCache = new ShaderModuleCache(device);
 	}
 
 	private void createSwapChain() {
@@ -632,13 +946,16 @@ public class HelloVulkanApplication {
 			SwapChainSupportDetails swapChainSupportDetails = querySwapChainSupport(physicalDevice);
 
 			VkSurfaceFormatKHR surfaceFormat = chooseSwapSurfaceFormat(swapChainSupportDetails.getFormats());
-			int presentMode = chooseSwapPresentMode(swapChainSupportDetails.getPresentModes());
+			int presentMode = PRESENT_POLICY.choosePresentMode(swapChainSupportDetails.getPresentModes());
 			VkExtent2D extent = chooseSwapExtent(swapChainSupportDetails.getCapabilities());
 
-			int maxImageCount = swapChainSupportDetails.getCapabilities().maxImageCount();
-			int imageCount = swapChainSupportDetails.getCapabilities().minImageCount() + 1;
-			if (maxImageCount > 0 && imageCount > maxImageCount) {
-				imageCount = maxImageCount;
+			int imageCount = PRESENT_POLICY.chooseImageCount(swapChainSupportDetails.getCapabilities().minImageCount(),
+					swapChainSupportDetails.getCapabilities().maxImageCount(), FRAMES_IN_FLIGHT);
+
+			if (DEBUG) {
+				System.out.println("Present policy " + PRESENT_POLICY.getName() + ": present mode " + presentMode + ", "
+						+ imageCount + " images, " + FRAMES_IN_FLIGHT + " frames in flight, "
+						+ (framePacer.isPacing() ? "paced to " + TARGET_FRAME_RATE + " fps" : "unpaced"));
 			}
 
 			VkSwapchainCreateInfoKHR swapchainCreateInfo = VkSwapchainCreateInfoKHR.callocStack(stack);
@@ -663,7 +980,8 @@ public class HelloVulkanApplication {
 			swapchainCreateInfo.compositeAlpha(VK_COMPOSITE_ALPHA_OPAQUE_BIT_KHR);
 			swapchainCreateInfo.presentMode(presentMode);
 			swapchainCreateInfo.clipped(true);
-			swapchainCreateInfo.oldSwapchain(VK_NULL_HANDLE);
+			// lets the presentation engine hand over from the swap chain being replaced, if there is one
+			swapchainCreateInfo.oldSwapchain(swapChain);
 
 			LongBuffer swapChainBuffer = stack.mallocLong(1);
 			if (vkCreateSwapchainKHR(device, swapchainCreateInfo, null, swapChainBuffer) != VK_SUCCESS) {
@@ -689,6 +1007,24 @@ public class HelloVulkanApplication {
 		}
 	}
 
+	/**
+	 * Creates one offscreen image per frame in flight in place of the swap chain, so the rest of the renderer does not
+	 * need to know whether it is drawing to a window.
+	 */
+	private void createOffscreenImages() {
+		swapChainImageFormat = HEADLESS_IMAGE_FORMAT;
+		swapChainExtent.set(WINDOW_WIDTH, WINDOW_HEIGHT);
+
+		offscreenImages = new DeviceImage[FRAMES_IN_FLIGHT];
+		swapChainImages = new long[FRAMES_IN_FLIGHT];
+		for (int i = 0; i < FRAMES_IN_FLIGHT; i++) {
+			offscreenImages[i] = DeviceImage.create(device, memoryAllocator, WINDOW_WIDTH, WINDOW_HEIGHT,
+					HEADLESS_IMAGE_FORMAT, VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT | VK_IMAGE_USAGE_TRANSFER_SRC_BIT,
+					VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT);
+			swapChainImages[i] = offscreenImages[i].getImage();
+		}
+	}
+
 	private VkSurfaceFormatKHR chooseSwapSurfaceFormat(List<VkSurfaceFormatKHR> availableFormats) {
 		if (availableFormats.size() == 1 && availableFormats.get(0).format() == VK_FORMAT_UNDEFINED) {
 			return new VkSurfaceFormatKHR(
@@ -707,20 +1043,6 @@ public class HelloVulkanApplication {
 		return availableFormats.get(0);
 	}
 
-	private int chooseSwapPresentMode(List<Integer> availablePresentModes) {
-		int bestPresentMode = VK_PRESENT_MODE_FIFO_KHR;
-
-		for (int presentMode : availablePresentModes) {
-			if (presentMode == VK_PRESENT_MODE_MAILBOX_KHR) {
-				return presentMode;
-			} else if (presentMode == VK_PRESENT_MODE_IMMEDIATE_KHR) {
-				bestPresentMode = presentMode;
-			}
-		}
-
-		return bestPresentMode;
-	}
-
 	private VkExtent2D chooseSwapExtent(VkSurfaceCapabilitiesKHR capabilities) {
 		if (capabilities.currentExtent().width() == 0xFFFFFFFF) {
 			MemoryStack stack = MemoryStack.stackGet();
@@ -790,17 +1112,29 @@ public class HelloVulkanApplication {
 	}
 
 	private void createRenderPass() {
+		renderPass = getRenderPass(swapChainImageFormat);
+	}
+
+	/**
+	 * Finds the render pass for an image format, creating it if the swap chain has not had that format before. Called
+	 * from the pipeline compiler threads too.
+	 */
+	private long getRenderPass(int imageFormat) {
+		return renderPasses.computeIfAbsent(imageFormat, this::createRenderPass);
+	}
+
+	private long createRenderPass(int imageFormat) {
 		try (MemoryStack stack = MemoryStack.stackPush()) {
 			VkAttachmentDescription.Buffer colorAttachmentDescriptionBuffer = VkAttachmentDescription.callocStack(1, stack);
 			colorAttachmentDescriptionBuffer.position(0);
-			colorAttachmentDescriptionBuffer.format(swapChainImageFormat);
+			colorAttachmentDescriptionBuffer.format(imageFormat);
 			colorAttachmentDescriptionBuffer.samples(VK_SAMPLE_COUNT_1_BIT);
 			colorAttachmentDescriptionBuffer.loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR);
 			colorAttachmentDescriptionBuffer.storeOp(VK_ATTACHMENT_STORE_OP_STORE);
 			colorAttachmentDescriptionBuffer.stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE);
 			colorAttachmentDescriptionBuffer.stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE);
 			colorAttachmentDescriptionBuffer.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
-			colorAttachmentDescriptionBuffer.finalLayout(VK_IMAGE_LAYOUT_PRESENT_SRC_KHR);
+			colorAttachmentDescriptionBuffer.finalLayout(HEADLESS ? VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL : VK_IMAGE_LAYOUT_PRESENT_SRC_KHR);
 
 			VkAttachmentReference.Buffer colorAttachmentReferenceBuffer = VkAttachmentReference.callocStack(1, stack);
 			colorAttachmentReferenceBuffer.position(0);
@@ -813,7 +1147,7 @@ public class HelloVulkanApplication {
 			subpassDescriptionBuffer.colorAttachmentCount(1);
 			subpassDescriptionBuffer.pColorAttachments(colorAttachmentReferenceBuffer);
 
-			VkSubpassDependency.Buffer subpassDependencyBuffer = VkSubpassDependency.callocStack(1, stack);
+			VkSubpassDependency.Buffer subpassDependencyBuffer = VkSubpassDependency.callocStack(HEADLESS ? 2 : 1, stack);
 			subpassDependencyBuffer.position(0);
 			subpassDependencyBuffer.srcSubpass(VK_SUBPASS_EXTERNAL);
 			subpassDependencyBuffer.dstSubpass(0);
@@ -822,6 +1156,18 @@ public class HelloVulkanApplication {
 			subpassDependencyBuffer.dstStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
 			subpassDependencyBuffer.dstAccessMask(VK_ACCESS_COLOR_ATTACHMENT_READ_BIT | VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
 
+			// offscreen images are copied out right after the render pass
+			if (HEADLESS) {
+				subpassDependencyBuffer.position(1);
+				subpassDependencyBuffer.srcSubpass(0);
+				subpassDependencyBuffer.dstSubpass(VK_SUBPASS_EXTERNAL);
+				subpassDependencyBuffer.srcStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
+				subpassDependencyBuffer.srcAccessMask(VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+				subpassDependencyBuffer.dstStageMask(VK_PIPELINE_STAGE_TRANSFER_BIT);
+				subpassDependencyBuffer.dstAccessMask(VK_ACCESS_TRANSFER_READ_BIT);
+			}
+			subpassDependencyBuffer.position(0);
+
 			VkRenderPassCreateInfo renderPassCreateInfo = VkRenderPassCreateInfo.callocStack(stack);
 			renderPassCreateInfo.sType(VK_STRUCTURE_TYPE_RENDER_PASS_CREATE_INFO);
 			renderPassCreateInfo.pAttachments(colorAttachmentDescriptionBuffer);
@@ -833,121 +1179,22 @@ public class HelloVulkanApplication {
 				throw new RuntimeException("Failed to create render pass");
 			}
 
-			renderPass = renderPassBuffer.get(0);
+			return renderPassBuffer.get(0);
 		}
 	}
 
-	private void createGraphicsPipeline() {
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			ByteBuffer vertShaderCode;
-			try {
-				vertShaderCode = readFile("simplevert.spv");
-			} catch (IOException e) {
-				throw new RuntimeException("Failed to load the vertex shader", e);
-			}
-
-			ByteBuffer fragShaderCode;
-			try {
-				fragShaderCode = readFile("simplefrag.spv");
-			} catch (IOException e) {
-				throw new RuntimeException("Failed to load the fragment shader", e);
-			}
-
-			long vertShaderModule = createShaderModule(vertShaderCode);
-			long fragShaderModule = createShaderModule(fragShaderCode);
-
-			VkPipelineShaderStageCreateInfo.Buffer shaderStages = VkPipelineShaderStageCreateInfo.callocStack(2, stack);
-
-			shaderStages.position(0);
-			shaderStages.sType(VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO);
-			shaderStages.stage(VK_SHADER_STAGE_VERTEX_BIT);
-			shaderStages.module(vertShaderModule);
-			shaderStages.pName(stack.ASCII("main"));
-
-			shaderStages.position(1);
-			shaderStages.sType(VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO);
-			shaderStages.stage(VK_SHADER_STAGE_FRAGMENT_BIT);
-			shaderStages.module(fragShaderModule);
-			shaderStages.pName(stack.ASCII("main"));
-
-			shaderStages.rewind();
-
-			VkPipelineVertexInputStateCreateInfo vertexInputCreateInfo = VkPipelineVertexInputStateCreateInfo.callocStack(stack);
-			vertexInputCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_VERTEX_INPUT_STATE_CREATE_INFO);
-			vertexInputCreateInfo.pVertexBindingDescriptions(VkVertexInputBindingDescription.callocStack(1, stack).put(0, Vertex.getBindingDescription()));
-			vertexInputCreateInfo.pVertexAttributeDescriptions(Vertex.getAttributeDescriptions());
-
-			VkPipelineInputAssemblyStateCreateInfo inputAssemblyCreateInfo = VkPipelineInputAssemblyStateCreateInfo.callocStack(stack);
-			inputAssemblyCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_INPUT_ASSEMBLY_STATE_CREATE_INFO);
-			inputAssemblyCreateInfo.topology(VK_PRIMITIVE_TOPOLOGY_TRIANGLE_LIST);
-			inputAssemblyCreateInfo.primitiveRestartEnable(false);
-
-			VkViewport.Buffer viewportBuffer = VkViewport.callocStack(1, stack);
-			viewportBuffer.position(0);
-			viewportBuffer.x(0);
-			viewportBuffer.y(0);
-			viewportBuffer.width(swapChainExtent.width());
-			viewportBuffer.height(swapChainExtent.height());
-			viewportBuffer.minDepth(0);
-			viewportBuffer.maxDepth(1);
-
-			VkRect2D.Buffer scissorBuffer = VkRect2D.callocStack(1, stack);
-			scissorBuffer.position(0);
-			scissorBuffer.offset(VkOffset2D.callocStack(stack).set(0, 0));
-			scissorBuffer.extent(swapChainExtent);
-
-			VkPipelineViewportStateCreateInfo viewportStateCreateInfo = VkPipelineViewportStateCreateInfo.callocStack(stack);
-			viewportStateCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_VIEWPORT_STATE_CREATE_INFO);
-			viewportStateCreateInfo.viewportCount(1);
-			viewportStateCreateInfo.pViewports(viewportBuffer);
-			viewportStateCreateInfo.scissorCount(1);
-			viewportStateCreateInfo.pScissors(scissorBuffer);
-
-			VkPipelineRasterizationStateCreateInfo rasterizationStateCreateInfo = VkPipelineRasterizationStateCreateInfo.callocStack(stack);
-			rasterizationStateCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_RASTERIZATION_STATE_CREATE_INFO);
-			rasterizationStateCreateInfo.depthClampEnable(false);
-			rasterizationStateCreateInfo.rasterizerDiscardEnable(false);
-			rasterizationStateCreateInfo.polygonMode(VK_POLYGON_MODE_FILL);
-			rasterizationStateCreateInfo.lineWidth(1.0f);
-			rasterizationStateCreateInfo.cullMode(VK_CULL_MODE_BACK_BIT);
-			rasterizationStateCreateInfo.frontFace(VK_FRONT_FACE_CLOCKWISE);
-			rasterizationStateCreateInfo.depthBiasEnable(false);
-			rasterizationStateCreateInfo.depthBiasConstantFactor(0.0f);
-			rasterizationStateCreateInfo.depthBiasClamp(0.0f);
-			rasterizationStateCreateInfo.depthBiasSlopeFactor(0.0f);
-
-			VkPipelineMultisampleStateCreateInfo multisampleStateCreateInfo = VkPipelineMultisampleStateCreateInfo.callocStack(stack);
-			multisampleStateCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_MULTISAMPLE_STATE_CREATE_INFO);
-			multisampleStateCreateInfo.sampleShadingEnable(false);
-			multisampleStateCreateInfo.rasterizationSamples(VK_SAMPLE_COUNT_1_BIT);
-			multisampleStateCreateInfo.minSampleShading(1.0f);
-			multisampleStateCreateInfo.pSampleMask(null);
-			multisampleStateCreateInfo.alphaToCoverageEnable(false);
-			multisampleStateCreateInfo.alphaToOneEnable(false);
-
-			VkPipelineColorBlendAttachmentState.Buffer colorBlendAttachmentStateBuffer = VkPipelineColorBlendAttachmentState.callocStack(1, stack);
-			colorBlendAttachmentStateBuffer.position(0);
-			colorBlendAttachmentStateBuffer.colorWriteMask(VK_COLOR_COMPONENT_R_BIT | VK_COLOR_COMPONENT_G_BIT
-					| VK_COLOR_COMPONENT_B_BIT | VK_COLOR_COMPONENT_A_BIT);
-			colorBlendAttachmentStateBuffer.blendEnable(false);
-			colorBlendAttachmentStateBuffer.srcColorBlendFactor(VK_BLEND_FACTOR_ONE);
-			colorBlendAttachmentStateBuffer.dstColorBlendFactor(VK_BLEND_FACTOR_ZERO);
-			colorBlendAttachmentStateBuffer.colorBlendOp(VK_BLEND_OP_ADD);
-			colorBlendAttachmentStateBuffer.srcAlphaBlendFactor(VK_BLEND_FACTOR_ONE);
-			colorBlendAttachmentStateBuffer.dstAlphaBlendFactor(VK_BLEND_FACTOR_ZERO);
-			colorBlendAttachmentStateBuffer.alphaBlendOp(VK_BLEND_OP_ADD);
-
-			VkPipelineColorBlendStateCreateInfo colorBlendStateCreateInfo = VkPipelineColorBlendStateCreateInfo.callocStack(stack);
-			colorBlendStateCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_COLOR_BLEND_STATE_CREATE_INFO);
-			colorBlendStateCreateInfo.logicOpEnable(false);
-			colorBlendStateCreateInfo.logicOp(VK_LOGIC_OP_COPY);
-			colorBlendStateCreateInfo.pAttachments(colorBlendAttachmentStateBuffer);
-			colorBlendStateCreateInfo.blendConstants(stack.floats(0.0f, 0.0f, 0.0f, 0.0f));
+	private void createDescriptorSetLayouts() {
+		frameSetLayout = DescriptorSetLayout.builder()
+				.binding(0, VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC, VK_SHADER_STAGE_VERTEX_BIT)
+				.build(device);
+	}
 
+	private void createPipelineLayout() {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
 			VkPipelineLayoutCreateInfo pipelineLayoutCreateInfo = VkPipelineLayoutCreateInfo.callocStack(stack);
 			pipelineLayoutCreateInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_LAYOUT_CREATE_INFO);
-			pipelineLayoutCreateInfo.pSetLayouts(null);
-			pipelineLayoutCreateInfo.pPushConstantRanges(null);
+			pipelineLayoutCreateInfo.pSetLayouts(stack.longs(frameSetLayout.getLayout()));
+			pipelineLayoutCreateInfo.pPushConstantRanges(DRAW_CONSTANTS.toPushConstantRange(stack));
 
 			LongBuffer pipelineLayoutBuffer = stack.mallocLong(1);
 			if (vkCreatePipelineLayout(device, pipelineLayoutCreateInfo, null, pipelineLayoutBuffer) != VK_SUCCESS) {
@@ -955,56 +1202,35 @@ public class HelloVulkanApplication {
 			}
 
 			pipelineLayout = pipelineLayoutBuffer.get(0);
-
-			VkGraphicsPipelineCreateInfo.Buffer pipelineCreateInfoBuffer = VkGraphicsPipelineCreateInfo.callocStack(1, stack);
-			pipelineCreateInfoBuffer.position(0);
-			pipelineCreateInfoBuffer.sType(VK_STRUCTURE_TYPE_GRAPHICS_PIPELINE_CREATE_INFO);
-			pipelineCreateInfoBuffer.pStages(shaderStages);
-			pipelineCreateInfoBuffer.pVertexInputState(vertexInputCreateInfo);
-			pipelineCreateInfoBuffer.pInputAssemblyState(inputAssemblyCreateInfo);
-			pipelineCreateInfoBuffer.pViewportState(viewportStateCreateInfo);
-			pipelineCreateInfoBuffer.pRasterizationState(rasterizationStateCreateInfo);
-			pipelineCreateInfoBuffer.pMultisampleState(multisampleStateCreateInfo);
-			pipelineCreateInfoBuffer.pDepthStencilState(null);
-			pipelineCreateInfoBuffer.pColorBlendState(colorBlendStateCreateInfo);
-			pipelineCreateInfoBuffer.pDynamicState(null);
-			pipelineCreateInfoBuffer.layout(pipelineLayout);
-			pipelineCreateInfoBuffer.renderPass(renderPass);
-			pipelineCreateInfoBuffer.subpass(0);
-			pipelineCreateInfoBuffer.basePipelineHandle(VK_NULL_HANDLE);
-			pipelineCreateInfoBuffer.basePipelineIndex(-1);
-
-			LongBuffer graphicsPipelineBuffer = stack.mallocLong(1);
-			if (vkCreateGraphicsPipelines(device, VK_NULL_HANDLE, pipelineCreateInfoBuffer, null, graphicsPipelineBuffer) != VK_SUCCESS) {
-				throw new RuntimeException("Failed to create graphics pipeline");
-			}
-
-			graphicsPipeline = graphicsPipelineBuffer.get(0);
-
-			vkDestroyShaderModule(device, vertShaderModule, null);
-			vkDestroyShaderModule(device, fragShaderModule, null);
 		}
 	}
 
-	private ByteBuffer readFile(String filename) throws IOException {
-		return BufferUtils.toByteBuffer(Channels.newChannel(getClass().getResourceAsStream(filename)));
+	private void createPipelineStateCache() {
+		GraphicsPipelineCreator creator = new GraphicsPipelineCreator(device, pipelineCache, shaderModuleCache,
+				pipelineLayout, this::getRenderPass);
+		pipelineStateCache = new PipelineStateCache(creator, PIPELINE_COMPILE_THREADS);
 	}
 
-	private long createShaderModule(ByteBuffer code) {
-		MemoryStack stack = MemoryStack.stackGet();
-
-		VkShaderModuleCreateInfo createInfo = VkShaderModuleCreateInfo.callocStack(stack);
-		createInfo.sType(VK_STRUCTURE_TYPE_SHADER_MODULE_CREATE_INFO);
-		createInfo.pCode(code);
-
-		LongBuffer shaderModuleBuffer = stack.mallocLong(1);
-		if (vkCreateShaderModule(device, createInfo, null, shaderModuleBuffer) != VK_SUCCESS) {
-			throw new RuntimeException("Failed to create shader module");
-		}
-
-		memFree(code);
+	/**
+	 * Creates the first graphics pipeline, which nothing can be drawn without, so it is waited for.
+	 */
+	private void createGraphicsPipeline() {
+		requestGraphicsPipeline();
+		graphicsPipeline = pipelineStateCache.getBlocking(graphicsPipelineDescription);
+	}
 
-		return shaderModuleBuffer.get(0);
+	/**
+	 * Describes the graphics pipeline for the current image format and starts compiling it if it is new. Frames pick
+	 * it up once it is ready.
+	 */
+	private void requestGraphicsPipeline() {
+		graphicsPipelineDescription = PipelineDescription.builder()
+				.stage(VK_SHADER_STAGE_VERTEX_BIT, shaderVariants.resolve(SHADER_PATH + "simple.vert", shaderFeatures))
+				.stage(VK_SHADER_STAGE_FRAGMENT_BIT, shaderVariants.resolve(SHADER_PATH + "simple.frag", shaderFeatures))
+				.vertexFormat(VERTEX_FORMAT)
+				.colorFormat(swapChainImageFormat)
+				.build();
+		pipelineStateCache.request(graphicsPipelineDescription);
 	}
 
 	private void createFramebuffers() {
@@ -1034,251 +1260,538 @@ public class HelloVulkanApplication {
 		}
 	}
 
-	private void createCommandPool() {
+	private void createFrameCommandPools() {
 		try (MemoryStack stack = MemoryStack.stackPush()) {
-			QueueFamilyIndices queueFamilyIndices = findQueueFamilies(physicalDevice);
-
 			VkCommandPoolCreateInfo commandPoolCreateInfo = VkCommandPoolCreateInfo.callocStack(stack);
 			commandPoolCreateInfo.sType(VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO);
 			commandPoolCreateInfo.queueFamilyIndex(queueFamilyIndices.getGraphicsFamily());
-			commandPoolCreateInfo.flags(0);
+			commandPoolCreateInfo.flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT);
+
+			VkCommandBufferAllocateInfo commandBufferAllocateInfo = VkCommandBufferAllocateInfo.callocStack(stack);
+			commandBufferAllocateInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
+			commandBufferAllocateInfo.level(VK_COMMAND_BUFFER_LEVEL_PRIMARY);
+			commandBufferAllocateInfo.commandBufferCount(1);
 
 			LongBuffer commandPoolBuffer = stack.mallocLong(1);
-			if (vkCreateCommandPool(device, commandPoolCreateInfo, null, commandPoolBuffer) != VK_SUCCESS) {
-				throw new RuntimeException("Failed to create command pool");
+			PointerBuffer commandBufferBuffer = stack.mallocPointer(1);
+			for (int i = 0; i < FRAMES_IN_FLIGHT; i++) {
+				if (vkCreateCommandPool(device, commandPoolCreateInfo, null, commandPoolBuffer) != VK_SUCCESS) {
+					throw new RuntimeException("Failed to create command pool");
+				}
+				frameCommandPools[i] = commandPoolBuffer.get(0);
+
+				commandBufferAllocateInfo.commandPool(frameCommandPools[i]);
+				if (vkAllocateCommandBuffers(device, commandBufferAllocateInfo, commandBufferBuffer) != VK_SUCCESS) {
+					throw new RuntimeException("Failed to allocate command buffers");
+				}
+				frameCommandBuffers[i] = new VkCommandBuffer(commandBufferBuffer.get(0), device);
 			}
-			commandPool = commandPoolBuffer.get(0);
 
-			commandPoolCreateInfo.queueFamilyIndex(queueFamilyIndices.getTransferFamily());
-			commandPoolCreateInfo.flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT);
-			if (vkCreateCommandPool(device, commandPoolCreateInfo, null, commandPoolBuffer) != VK_SUCCESS) {
-				throw new RuntimeException("Failed to create transfer command pool");
+			recordingScheduler = new RecordingScheduler(RECORDING_THREADS, MIN_DRAWS_PER_RECORDING_SLICE);
+			int slotCount = recordingScheduler.getSlotCount();
+			secondaryCommandPools = new long[FRAMES_IN_FLIGHT][slotCount];
+			secondaryCommandBuffers = new VkCommandBuffer[FRAMES_IN_FLIGHT][slotCount];
+
+			commandBufferAllocateInfo.level(VK_COMMAND_BUFFER_LEVEL_SECONDARY);
+			for (int i = 0; i < FRAMES_IN_FLIGHT; i++) {
+				for (int slot = 0; slot < slotCount; slot++) {
+					if (vkCreateCommandPool(device, commandPoolCreateInfo, null, commandPoolBuffer) != VK_SUCCESS) {
+						throw new RuntimeException("Failed to create secondary command pool");
+					}
+					secondaryCommandPools[i][slot] = commandPoolBuffer.get(0);
+
+					commandBufferAllocateInfo.commandPool(secondaryCommandPools[i][slot]);
+					if (vkAllocateCommandBuffers(device, commandBufferAllocateInfo, commandBufferBuffer) != VK_SUCCESS) {
+						throw new RuntimeException("Failed to allocate secondary command buffers");
+					}
+					secondaryCommandBuffers[i][slot] = new VkCommandBuffer(commandBufferBuffer.get(0), device);
+				}
 			}
-			transferCommandPool = commandPoolBuffer.get(0);
 		}
 	}
 
-	private void createVertexBuffer() {
+	private void createGpuTimer() {
+		if (!GPU_TIMING) {
+			return;
+		}
+
 		try (MemoryStack stack = MemoryStack.stackPush()) {
-			LongBuffer bufferBuffer = stack.mallocLong(1);
-			LongBuffer bufferMemoryBuffer = stack.mallocLong(1);
+			IntBuffer queueFamilyCountBuffer = stack.callocInt(1);
+			vkGetPhysicalDeviceQueueFamilyProperties(physicalDevice, queueFamilyCountBuffer, null);
+			VkQueueFamilyProperties.Buffer queueFamilyPropertiesBuffer = VkQueueFamilyProperties.mallocStack(queueFamilyCountBuffer.get(0), stack);
+			vkGetPhysicalDeviceQueueFamilyProperties(physicalDevice, queueFamilyCountBuffer, queueFamilyPropertiesBuffer);
+
+			int timestampValidBits = queueFamilyPropertiesBuffer.get(queueFamilyIndices.getGraphicsFamily()).timestampValidBits();
+			if (timestampValidBits == 0) {
+				System.out.println("The graphics queue does not support timestamps, GPU timing is disabled");
+				return;
+			}
 
-			QueueFamilyIndices indices = findQueueFamilies(physicalDevice);
+			gpuTimer = new GpuTimer(device, FRAMES_IN_FLIGHT, physicalDeviceProperties.limits().timestampPeriod(),
+					timestampValidBits);
+		}
+	}
 
-			long vertexBufferSize = Vertex.SIZEOF * vertices.length;
-			createBuffer(vertexBufferSize, VK_BUFFER_USAGE_TRANSFER_SRC_BIT,
-					VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT,
-					bufferBuffer, bufferMemoryBuffer, ImmutableSet.of(indices.getTransferFamily()));
-			long stagingBuffer = bufferBuffer.get(0);
-			long stagingBufferMemory = bufferMemoryBuffer.get(0);
+	private void createStagingUploader() {
+		stagingUploader = new StagingUploader(device, memoryAllocator, transferQueue, queueFamilyIndices.getTransferFamily(),
+				STAGING_BUFFER_SIZE);
+	}
 
-			PointerBuffer dataBuffer = stack.mallocPointer(1);
-			vkMapMemory(device, stagingBufferMemory, 0, vertexBufferSize, 0, dataBuffer);
-			writeVertices(dataBuffer.getByteBuffer(0, (int) vertexBufferSize));
-			vkUnmapMemory(device, stagingBufferMemory);
+	private void createVertexBuffer() {
+		VertexStore triangleList = new VertexStore(VERTEX_DATA.length * 4 / Vertex.SIZEOF);
+		triangleList.appendAll(VERTEX_DATA, 0, VERTEX_DATA.length * 4 / Vertex.SIZEOF);
 
-			createBuffer(vertexBufferSize, VK_BUFFER_USAGE_VERTEX_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
-					VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, bufferBuffer, bufferMemoryBuffer,
-					ImmutableSet.of(indices.getTransferFamily(), indices.getGraphicsFamily()));
-			vertexBuffer = bufferBuffer.get(0);
-			vertexBufferMemory = bufferMemoryBuffer.get(0);
+		MeshOptimizer.IndexedMesh mesh = MeshOptimizer.optimize(triangleList);
+		vertices = mesh.getVertices();
+		meshIndices = mesh.getIndices();
 
-			copyBuffer(stagingBuffer, vertexBuffer, vertexBufferSize);
+		if (DEBUG) {
+			System.out.printf("Optimized mesh: %d -> %d vertices, ACMR %.3f\n", triangleList.size(), vertices.size(),
+					MeshOptimizer.averageCacheMissRatio(meshIndices, vertices.size(), MeshOptimizer.DEFAULT_CACHE_SIZE));
+		}
+		triangleList.free();
+
+		long vertexBufferSize = (long) vertices.size() * VERTEX_FORMAT.getStride(0);
+		vertexBuffer = DeviceBuffer.create(device, memoryAllocator, vertexBufferSize,
+				VK_BUFFER_USAGE_VERTEX_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT,
+				ImmutableSet.of(queueFamilyIndices.getTransferFamily(), queueFamilyIndices.getGraphicsFamily()));
 
-			vkDestroyBuffer(device, stagingBuffer, null);
-			vkFreeMemory(device, stagingBufferMemory, null);
+		// the copy is submitted with the first frame, which waits for it before reading any vertices
+		long stagingAddress = stagingUploader.stage(vertexBufferSize, vertexBuffer.getBuffer(), 0);
+		if (!PACKED_VERTICES) {
+			vertices.copyTo(stagingAddress);
+		} else {
+			vertices.packTo(VERTEX_FORMAT.writer(0), stagingAddress);
 		}
 	}
 
-	private void createBuffer(long size, int usage, int properties, LongBuffer buffer, LongBuffer bufferMemory, Set<Integer> queueFamilyIndices) {
-		MemoryStack stack = MemoryStack.stackGet();
+	private void createIndexBuffer() {
+		long indexBufferSize = (long) meshIndices.length * 4;
+		indexBuffer = DeviceBuffer.create(device, memoryAllocator, indexBufferSize,
+				VK_BUFFER_USAGE_INDEX_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT,
+				ImmutableSet.of(queueFamilyIndices.getTransferFamily(), queueFamilyIndices.getGraphicsFamily()));
 
-		VkBufferCreateInfo bufferCreateInfo = VkBufferCreateInfo.callocStack(stack);
-		bufferCreateInfo.sType(VK_STRUCTURE_TYPE_BUFFER_CREATE_INFO);
-		bufferCreateInfo.size(size);
-		bufferCreateInfo.usage(usage);
+		long stagingAddress = stagingUploader.stage(indexBufferSize, indexBuffer.getBuffer(), 0);
+		memIntBuffer(stagingAddress, meshIndices.length).put(meshIndices);
+	}
 
-		if (queueFamilyIndices.size() > 1) {
-			bufferCreateInfo.sharingMode(VK_SHARING_MODE_CONCURRENT);
+	private void createInstanceBuffer() {
+		// room for every frame in flight plus the one being written
+		long frameSize = (long) INSTANCE_COUNT * instanceWriter.getStride();
+		instanceRing = new MappedRingBuffer(device, memoryAllocator,
+				(FRAMES_IN_FLIGHT + 1) * BlockSubAllocator.alignUp(frameSize, INSTANCE_ALIGNMENT),
+				VK_BUFFER_USAGE_VERTEX_BUFFER_BIT, queueFamilyIndices.getGraphicsFamily());
+	}
 
-			IntBuffer indexBuffer = stack.mallocInt(queueFamilyIndices.size());
-			for (int index : queueFamilyIndices) {
-				indexBuffer.put(index);
-			}
-			indexBuffer.flip();
+	private void createUniformBuffer() {
+		uniformRing = new UniformRingBuffer(device, memoryAllocator, UNIFORM_RING_SIZE, CAMERA_UNIFORM_SIZE,
+				physicalDeviceProperties.limits().minUniformBufferOffsetAlignment(), queueFamilyIndices.getGraphicsFamily());
+		descriptorAllocator = new DescriptorAllocator(device, FRAMES_IN_FLIGHT, DESCRIPTOR_SETS_PER_POOL);
+	}
 
-			bufferCreateInfo.pQueueFamilyIndices(indexBuffer);
-		} else {
-			bufferCreateInfo.sharingMode(VK_SHARING_MODE_EXCLUSIVE);
-			bufferCreateInfo.pQueueFamilyIndices(stack.ints(Iterables.getOnlyElement(queueFamilyIndices)));
+	private void createParticleSimulation() {
+		if (!queueFamilyIndices.isComputeFamilyFound()) {
+			throw new RuntimeException("Particles need a queue family that supports compute");
 		}
 
-		if (vkCreateBuffer(device, bufferCreateInfo, null, buffer) != VK_SUCCESS) {
-			throw new RuntimeException("Failed to create buffer");
+		if (VERTEX_FORMAT.getStride(Instance.BINDING) != ParticleSimulation.INSTANCE_SIZE) {
+			throw new IllegalStateException("The particle shader does not write the instance binding's layout");
 		}
 
-		VkMemoryRequirements memoryRequirements = VkMemoryRequirements.callocStack(stack);
-		vkGetBufferMemoryRequirements(device, buffer.get(0), memoryRequirements);
+		long shaderModule;
+		try {
+			shaderModule = shaderModuleCache.acquire(shaderVariants.resolve(SHADER_PATH + "particles.comp", shaderFeatures));
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to load the particle compute shader", e);
+		}
 
-		VkMemoryAllocateInfo allocateInfo = VkMemoryAllocateInfo.callocStack(stack);
-		allocateInfo.sType(VK_STRUCTURE_TYPE_MEMORY_ALLOCATE_INFO);
-		allocateInfo.allocationSize(memoryRequirements.size());
-		allocateInfo.memoryTypeIndex(findMemoryType(memoryRequirements.memoryTypeBits(), properties));
+		particleSimulation = new ParticleSimulation(device, memoryAllocator, pipelineCache, shaderModule, computeQueue,
+				queueFamilyIndices.getComputeFamily(), queueFamilyIndices.getGraphicsFamily(), PARTICLE_COUNT,
+				FRAMES_IN_FLIGHT);
+		shaderModuleCache.release(shaderModule);
 
-		if (vkAllocateMemory(device, allocateInfo, null, bufferMemory) != VK_SUCCESS) {
-			throw new RuntimeException("Failed to allocate buffer memory");
+		if (DEBUG) {
+			int computeFamily = queueFamilyIndices.getComputeFamily();
+			System.out.println("Simulating " + PARTICLE_COUNT + " particles on queue family " + computeFamily
+					+ (computeFamily != queueFamilyIndices.getGraphicsFamily() ? " (async compute)" : ""));
 		}
+	}
 
-		vkBindBufferMemory(device, buffer.get(0), bufferMemory.get(0), 0);
+	private void createIndirectBuffer() {
+		indirectRing = new MappedRingBuffer(device, memoryAllocator, INDIRECT_RING_SIZE,
+				VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT, queueFamilyIndices.getGraphicsFamily());
 	}
 
-	private int findMemoryType(int typeFilter, int properties) {
-		MemoryStack stack = MemoryStack.stackGet();
+	private void createFrameCapture() {
+		try {
+			frameCapture = new FrameCapture(device, memoryAllocator, queueFamilyIndices.getGraphicsFamily(),
+					swapChainExtent.width(), swapChainExtent.height(), FRAMES_IN_FLIGHT, Paths.get(CAPTURE_DIRECTORY),
+					CAPTURE_FORMAT, CAPTURE_THREADS);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to create the capture directory", e);
+		}
+	}
 
-		VkPhysicalDeviceMemoryProperties memoryProperties = VkPhysicalDeviceMemoryProperties.callocStack(stack);
-		vkGetPhysicalDeviceMemoryProperties(physicalDevice, memoryProperties);
+	private void updateDrawList() {
+		drawList.clear();
+		int draw = drawList.addIndexed(vertexBuffer.getBuffer(), indexBuffer.getBuffer(), 0, meshIndices.length, 0);
 
-		int memoryTypeCount = memoryProperties.memoryTypeCount();
-		for (int i = 0; i < memoryTypeCount; i++) {
-			VkMemoryType memoryType = memoryProperties.memoryTypes(i);
-			if ((typeFilter & (1 << i)) != 0 && (memoryType.propertyFlags() & properties) == properties) {
-				return i;
+		if (particleSimulation != null) {
+			// written on the compute queue before this frame's vertex input runs
+			drawList.setInstances(draw, particleSimulation.getInstanceBuffer(currentFrame), 0,
+					particleSimulation.getParticleCount());
+		} else {
+			long instanceOffset = instanceRing.allocate((long) INSTANCE_COUNT * instanceWriter.getStride(), INSTANCE_ALIGNMENT);
+			if (instanceOffset < 0) {
+				throw new RuntimeException("Instance ring is full");
 			}
+			writeInstances(instanceRing.getAddress(instanceOffset));
+			drawList.setInstances(draw, instanceRing.getBuffer(), instanceOffset, INSTANCE_COUNT);
 		}
 
-		throw new RuntimeException("Failed to find a memory type");
+		if (INDIRECT_DRAWS) {
+			packIndirectCommands();
+		}
 	}
 
-	private void writeVertices(ByteBuffer buf) {
-		for (int i = 0; i < vertices.length; i++) {
-			vertices[i].writeTo(i * Vertex.SIZEOF, buf);
+	/**
+	 * Writes this frame's camera into the uniform ring and allocates the frame's descriptor set pointing at the ring.
+	 * Draws select their block with a dynamic offset, so the set is written once per frame.
+	 */
+	private void updateFrameUniforms() {
+		cameraOffset = uniformRing.allocate(CAMERA_UNIFORM_SIZE);
+		if (cameraOffset < 0) {
+			throw new RuntimeException("Uniform ring is full");
 		}
-	}
 
-	private void copyBuffer(long srcBuffer, long dstBuffer, long size) {
-		MemoryStack stack = MemoryStack.stackGet();
+		// fits the -1 to 1 square into the shorter side of the window, so the scene keeps its proportions
+		float aspect = (float) swapChainExtent.width() / swapChainExtent.height();
+		if (aspect >= 1.0f) {
+			camera.setOrtho2D(-aspect, aspect, -1.0f, 1.0f);
+		} else {
+			camera.setOrtho2D(-1.0f, 1.0f, -1.0f / aspect, 1.0f / aspect);
+		}
+		camera.getToAddress(uniformRing.getAddress(cameraOffset));
 
-		VkCommandBufferAllocateInfo allocateInfo = VkCommandBufferAllocateInfo.callocStack(stack);
-		allocateInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
-		allocateInfo.level(VK_COMMAND_BUFFER_LEVEL_PRIMARY);
-		allocateInfo.commandPool(transferCommandPool);
-		allocateInfo.commandBufferCount(1);
+		frameDescriptorSet = descriptorAllocator.allocate(currentFrame, frameSetLayout);
 
-		PointerBuffer commandBufferBuffer = stack.mallocPointer(1);
-		if (vkAllocateCommandBuffers(device, allocateInfo, commandBufferBuffer) != VK_SUCCESS) {
-			throw new RuntimeException("Failed to create copy command buffer");
-		}
-		VkCommandBuffer commandBuffer = new VkCommandBuffer(commandBufferBuffer.get(0), device);
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkDescriptorBufferInfo.Buffer bufferInfo = VkDescriptorBufferInfo.callocStack(1, stack);
+			bufferInfo.buffer(uniformRing.getBuffer());
+			bufferInfo.offset(0);
+			bufferInfo.range(uniformRing.getRange());
 
-		VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.callocStack(stack);
-		beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
-		beginInfo.flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
-		vkBeginCommandBuffer(commandBuffer, beginInfo);
+			VkWriteDescriptorSet.Buffer write = VkWriteDescriptorSet.callocStack(1, stack);
+			write.sType(VK_STRUCTURE_TYPE_WRITE_DESCRIPTOR_SET);
+			write.dstSet(frameDescriptorSet);
+			write.dstBinding(0);
+			write.dstArrayElement(0);
+			write.descriptorType(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC);
+			write.pBufferInfo(bufferInfo);
 
-		VkBufferCopy.Buffer copy = VkBufferCopy.callocStack(1, stack);
-		copy.position(0);
-		copy.srcOffset(0);
-		copy.dstOffset(0);
-		copy.size(size);
-		vkCmdCopyBuffer(commandBuffer, srcBuffer, dstBuffer, copy);
+			vkUpdateDescriptorSets(device, write, null);
+		}
+	}
 
-		vkEndCommandBuffer(commandBuffer);
+	private void packIndirectCommands() {
+		indirectOffset = indirectRing.allocate((long) drawList.size() * IndirectCommandPacker.COMMAND_SIZE, 4);
+		if (indirectOffset >= 0) {
+			indirectPacker.at(indirectRing.getAddress(indirectOffset)).putAll(drawList);
+		}
+	}
 
-		VkSubmitInfo submitInfo = VkSubmitInfo.callocStack(stack);
-		submitInfo.sType(VK_STRUCTURE_TYPE_SUBMIT_INFO);
-		submitInfo.pCommandBuffers(commandBufferBuffer);
-		vkQueueSubmit(transferQueue, submitInfo, VK_NULL_HANDLE);
+	/**
+	 * A single instance is drawn untransformed. More instances are laid out in a grid and spin.
+	 */
+	private void writeInstances(long address) {
+		instanceWriter.at(address);
+
+		if (INSTANCE_COUNT == 1) {
+			Instance.put(instanceWriter, 0, 1.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f);
+			return;
+		}
 
-		vkQueueWaitIdle(transferQueue);
+		int side = (int) Math.ceil(Math.sqrt(INSTANCE_COUNT));
+		float cell = 2.0f / side;
+		for (int i = 0; i < INSTANCE_COUNT; i++) {
+			int x = i % side;
+			int y = i / side;
+			float angle = frameScheduler.getFrameNumber() * 0.02f + i * 0.37f;
+			float cos = (float) Math.cos(angle) * cell;
+			float sin = (float) Math.sin(angle) * cell;
 
-		vkFreeCommandBuffers(device, transferCommandPool, commandBufferBuffer);
+			Instance.put(instanceWriter, i, cos, sin, -sin, cos, -1.0f + cell * (x + 0.5f), -1.0f + cell * (y + 0.5f),
+					(float) x / side, (float) y / side, 1.0f);
+		}
 	}
 
-	private void createCommandBuffers() {
+	private VkCommandBuffer recordFrame(int imageIndex) {
 		try (MemoryStack stack = MemoryStack.stackPush()) {
-			int commandBufferCount = swapChainFramebuffers.length;
+			// the frame's fence has signaled, so nothing allocated from its pool is still in use
+			vkResetCommandPool(device, frameCommandPools[currentFrame], 0);
 
-			commandBuffers = new VkCommandBuffer[commandBufferCount];
+			VkCommandBuffer commandBuffer = frameCommandBuffers[currentFrame];
 
-			VkCommandBufferAllocateInfo commandBufferAllocateInfo = VkCommandBufferAllocateInfo.callocStack(stack);
-			commandBufferAllocateInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
-			commandBufferAllocateInfo.commandPool(commandPool);
-			commandBufferAllocateInfo.level(VK_COMMAND_BUFFER_LEVEL_PRIMARY);
-			commandBufferAllocateInfo.commandBufferCount(commandBufferCount);
+			VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.callocStack(stack);
+			beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+			beginInfo.flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
 
-			PointerBuffer commandBufferBuffer = stack.mallocPointer(commandBufferCount);
-			if (vkAllocateCommandBuffers(device, commandBufferAllocateInfo, commandBufferBuffer) != VK_SUCCESS) {
-				throw new RuntimeException("Failed to allocate command buffers");
+			if (vkBeginCommandBuffer(commandBuffer, beginInfo) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to begin recording to a command buffer");
 			}
 
-			VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.callocStack(stack);
-			beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
-			beginInfo.flags(VK_COMMAND_BUFFER_USAGE_SIMULTANEOUS_USE_BIT);
+			if (gpuTimer != null) {
+				gpuTimer.begin(commandBuffer, currentFrame);
+			}
 
 			VkClearColorValue clearColor = VkClearColorValue.callocStack(stack).float32(stack.floats(0.0f, 0.0f, 0.0f, 1.0f));
 			VkClearValue.Buffer clearValueBuffer = VkClearValue.callocStack(1, stack).color(clearColor);
 
-			for (int i = 0; i < commandBufferCount; i++) {
-				VkCommandBuffer commandBuffer = new VkCommandBuffer(commandBufferBuffer.get(i), device);
-				commandBuffers[i] = commandBuffer;
+			VkRenderPassBeginInfo renderPassBeginInfo = VkRenderPassBeginInfo.callocStack(stack);
+			renderPassBeginInfo.sType(VK_STRUCTURE_TYPE_RENDER_PASS_BEGIN_INFO);
+			renderPassBeginInfo.renderPass(renderPass);
+			renderPassBeginInfo.framebuffer(swapChainFramebuffers[imageIndex]);
+			renderPassBeginInfo.renderArea().offset(VkOffset2D.callocStack(stack).set(0, 0));
+			renderPassBeginInfo.renderArea().extent(swapChainExtent);
+			renderPassBeginInfo.pClearValues(clearValueBuffer);
 
-				if (vkBeginCommandBuffer(commandBuffer, beginInfo) != VK_SUCCESS) {
-					throw new RuntimeException("Failed to begin recording to a command buffer");
-				}
+			// the frame is only cleared while its pipeline is still compiling
+			int drawCount = graphicsPipeline != PipelineStateCache.NOT_READY ? drawList.size() : 0;
+
+			// small draw lists are not worth handing to other threads
+			if (recordingScheduler.getSliceCount(drawCount) > 1) {
+				vkCmdBeginRenderPass(commandBuffer, renderPassBeginInfo, VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS);
 
-				VkRenderPassBeginInfo renderPassBeginInfo = VkRenderPassBeginInfo.callocStack(stack);
-				renderPassBeginInfo.sType(VK_STRUCTURE_TYPE_RENDER_PASS_BEGIN_INFO);
-				renderPassBeginInfo.renderPass(renderPass);
-				renderPassBeginInfo.framebuffer(swapChainFramebuffers[i]);
-				renderPassBeginInfo.renderArea().offset(VkOffset2D.callocStack(stack).set(0, 0));
-				renderPassBeginInfo.renderArea().extent(swapChainExtent);
-				renderPassBeginInfo.pClearValues(clearValueBuffer);
+				int sliceCount = recordingScheduler.record(drawCount,
+						(slot, first, count) -> recordSecondary(slot, imageIndex, first, count));
 
+				PointerBuffer secondaryBuffer = stack.mallocPointer(sliceCount);
+				for (int slot = 0; slot < sliceCount; slot++) {
+					secondaryBuffer.put(slot, secondaryCommandBuffers[currentFrame][slot]);
+				}
+				vkCmdExecuteCommands(commandBuffer, secondaryBuffer);
+			} else {
 				vkCmdBeginRenderPass(commandBuffer, renderPassBeginInfo, VK_SUBPASS_CONTENTS_INLINE);
 
-				vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, graphicsPipeline);
+				if (drawCount > 0) {
+					recordDraws(commandBuffer, 0, drawCount);
+				}
+			}
 
-				vkCmdBindVertexBuffers(commandBuffer, 0, stack.longs(vertexBuffer), stack.longs(0));
+			vkCmdEndRenderPass(commandBuffer);
 
-				vkCmdDraw(commandBuffer, vertices.length, 1, 0, 0);
+			if (frameCapture != null) {
+				long readbackBuffer = frameCapture.beginFrame(currentFrame, frameScheduler.getFrameNumber());
+				if (readbackBuffer != VK_NULL_HANDLE) {
+					recordReadback(commandBuffer, imageIndex, readbackBuffer);
+				}
+			}
 
-				vkCmdEndRenderPass(commandBuffer);
+			if (gpuTimer != null) {
+				gpuTimer.end(commandBuffer, currentFrame);
+			}
 
-				if (vkEndCommandBuffer(commandBuffer) != VK_SUCCESS) {
-					throw new RuntimeException("Failed to record a command buffer");
-				}
+			if (vkEndCommandBuffer(commandBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to record a command buffer");
 			}
+
+			return commandBuffer;
 		}
 	}
 
-	private void createSyncObjects() {
+	/**
+	 * Copies a rendered offscreen image into a readback buffer, where the CPU can read it once the frame's fence has
+	 * signaled.
+	 */
+	private void recordReadback(VkCommandBuffer commandBuffer, int imageIndex, long readbackBuffer) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkBufferImageCopy.Buffer copyRegion = VkBufferImageCopy.callocStack(1, stack);
+			copyRegion.bufferOffset(0);
+			copyRegion.bufferRowLength(0);
+			copyRegion.bufferImageHeight(0);
+			copyRegion.imageSubresource().aspectMask(VK_IMAGE_ASPECT_COLOR_BIT);
+			copyRegion.imageSubresource().mipLevel(0);
+			copyRegion.imageSubresource().baseArrayLayer(0);
+			copyRegion.imageSubresource().layerCount(1);
+			copyRegion.imageOffset().set(0, 0, 0);
+			copyRegion.imageExtent().set(swapChainExtent.width(), swapChainExtent.height(), 1);
+
+			vkCmdCopyImageToBuffer(commandBuffer, swapChainImages[imageIndex], VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+					readbackBuffer, copyRegion);
+
+			VkBufferMemoryBarrier.Buffer barrier = VkBufferMemoryBarrier.callocStack(1, stack);
+			barrier.sType(VK_STRUCTURE_TYPE_BUFFER_MEMORY_BARRIER);
+			barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT);
+			barrier.dstAccessMask(VK_ACCESS_HOST_READ_BIT);
+			barrier.srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+			barrier.dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+			barrier.buffer(readbackBuffer);
+			barrier.offset(0);
+			barrier.size(VK_WHOLE_SIZE);
+
+			vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_HOST_BIT, 0, null,
+					barrier, null);
+		}
+	}
+
+	/**
+	 * Records one slice of the draw list into a secondary command buffer. Runs on the recording threads.
+	 */
+	private void recordSecondary(int slot, int imageIndex, int firstDraw, int drawCount) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			vkResetCommandPool(device, secondaryCommandPools[currentFrame][slot], 0);
+
+			VkCommandBuffer commandBuffer = secondaryCommandBuffers[currentFrame][slot];
+
+			VkCommandBufferInheritanceInfo inheritanceInfo = VkCommandBufferInheritanceInfo.callocStack(stack);
+			inheritanceInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_INHERITANCE_INFO);
+			inheritanceInfo.renderPass(renderPass);
+			inheritanceInfo.subpass(0);
+			inheritanceInfo.framebuffer(swapChainFramebuffers[imageIndex]);
+
+			VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.callocStack(stack);
+			beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+			beginInfo.flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT | VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT);
+			beginInfo.pInheritanceInfo(inheritanceInfo);
+
+			if (vkBeginCommandBuffer(commandBuffer, beginInfo) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to begin recording to a secondary command buffer");
+			}
+
+			recordDraws(commandBuffer, firstDraw, drawCount);
+
+			if (vkEndCommandBuffer(commandBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to record a secondary command buffer");
+			}
+		}
+	}
+
+	private void recordDraws(VkCommandBuffer commandBuffer, int firstDraw, int drawCount) {
 		try (MemoryStack stack = MemoryStack.stackPush()) {
-			VkSemaphoreCreateInfo semaphoreCreateInfo = VkSemaphoreCreateInfo.callocStack(stack);
-			semaphoreCreateInfo.sType(VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO);
+			VkViewport.Buffer viewportBuffer = VkViewport.callocStack(1, stack);
+			viewportBuffer.position(0);
+			viewportBuffer.x(0);
+			viewportBuffer.y(0);
+			viewportBuffer.width(swapChainExtent.width());
+			viewportBuffer.height(swapChainExtent.height());
+			viewportBuffer.minDepth(0);
+			viewportBuffer.maxDepth(1);
 
-			VkFenceCreateInfo fenceCreateInfo = VkFenceCreateInfo.callocStack(stack);
-			fenceCreateInfo.sType(VK_STRUCTURE_TYPE_FENCE_CREATE_INFO);
-			fenceCreateInfo.flags(VK_FENCE_CREATE_SIGNALED_BIT);
+			VkRect2D.Buffer scissorBuffer = VkRect2D.callocStack(1, stack);
+			scissorBuffer.position(0);
+			scissorBuffer.offset(VkOffset2D.callocStack(stack).set(0, 0));
+			scissorBuffer.extent(swapChainExtent);
+
+			vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, graphicsPipeline);
+			vkCmdBindDescriptorSets(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipelineLayout, 0,
+					stack.longs(frameDescriptorSet), stack.ints(cameraOffset));
+
+			vkCmdSetViewport(commandBuffer, 0, viewportBuffer);
+			vkCmdSetScissor(commandBuffer, 0, scissorBuffer);
+
+			LongBuffer vertexBufferBuffer = stack.mallocLong(1);
+			LongBuffer offsetBuffer = stack.longs(0);
+			LongBuffer instanceOffsetBuffer = stack.mallocLong(1);
+			long boundVertexBuffer = VK_NULL_HANDLE;
+			long boundIndexBuffer = VK_NULL_HANDLE;
+			long boundInstanceBuffer = VK_NULL_HANDLE;
+			long boundInstanceOffset = -1;
+			PushConstantWriter drawConstants = new PushConstantWriter(DRAW_CONSTANTS, stack);
+			int pushedDraw = -1;
+			for (int i = firstDraw; i < firstDraw + drawCount; i++) {
+				if (pushedDraw < 0 || !drawList.hasSameTransform(i, pushedDraw)) {
+					pushedDraw = i;
+					drawConstants.putVec4(DRAW_TRANSFORM, drawList.getTransform(i, 0), drawList.getTransform(i, 1),
+							drawList.getTransform(i, 2), drawList.getTransform(i, 3));
+					drawConstants.putVec2(DRAW_OFFSET, drawList.getTransform(i, 4), drawList.getTransform(i, 5));
+					drawConstants.push(commandBuffer, pipelineLayout);
+				}
+
+				if (drawList.getVertexBuffer(i) != boundVertexBuffer) {
+					boundVertexBuffer = drawList.getVertexBuffer(i);
+					vkCmdBindVertexBuffers(commandBuffer, 0, vertexBufferBuffer.put(0, boundVertexBuffer), offsetBuffer);
+				}
 
-			LongBuffer syncObjectBuffer = stack.mallocLong(3);
+				if (drawList.getInstanceBuffer(i) != VK_NULL_HANDLE && (drawList.getInstanceBuffer(i) != boundInstanceBuffer
+						|| drawList.getInstanceOffset(i) != boundInstanceOffset)) {
+					boundInstanceBuffer = drawList.getInstanceBuffer(i);
+					boundInstanceOffset = drawList.getInstanceOffset(i);
+					vkCmdBindVertexBuffers(commandBuffer, Instance.BINDING, vertexBufferBuffer.put(0, boundInstanceBuffer),
+							instanceOffsetBuffer.put(0, boundInstanceOffset));
+				}
 
-			for (int i = 0; i < MAX_FRAMES_IN_FLIGHT; i++) {
-				if (vkCreateSemaphore(device, semaphoreCreateInfo, null, syncObjectBuffer.position(0)) != VK_SUCCESS
-						|| vkCreateSemaphore(device, semaphoreCreateInfo, null, syncObjectBuffer.position(1)) != VK_SUCCESS
-						|| vkCreateFence(device, fenceCreateInfo, null, syncObjectBuffer.position(2)) != VK_SUCCESS) {
-					throw new RuntimeException("Failed to create sync objects for a frame");
+				if (drawList.isIndexed(i)) {
+					if (drawList.getIndexBuffer(i) != boundIndexBuffer) {
+						boundIndexBuffer = drawList.getIndexBuffer(i);
+						vkCmdBindIndexBuffer(commandBuffer, boundIndexBuffer, 0, VK_INDEX_TYPE_UINT32);
+					}
+
+					if (INDIRECT_DRAWS && indirectOffset >= 0) {
+						int runEnd = findIndirectRunEnd(i, firstDraw + drawCount);
+						recordIndirectRun(commandBuffer, i, runEnd - i);
+						i = runEnd - 1;
+					} else {
+						vkCmdDrawIndexed(commandBuffer, drawList.getIndexCount(i), drawList.getInstanceCount(i),
+								drawList.getFirstIndex(i), drawList.getFirstVertex(i), 0);
+					}
+				} else {
+					vkCmdDraw(commandBuffer, drawList.getVertexCount(i), drawList.getInstanceCount(i),
+							drawList.getFirstVertex(i), 0);
 				}
+			}
+		}
+	}
+
+	/**
+	 * @return the end of the run of indexed draws starting at a draw that share all of its bindings and push constants,
+	 * so their packed commands can be submitted with one indirect draw.
+	 */
+	private int findIndirectRunEnd(int draw, int end) {
+		int runEnd = draw + 1;
+		while (runEnd < end && drawList.isIndexed(runEnd)
+				&& drawList.getVertexBuffer(runEnd) == drawList.getVertexBuffer(draw)
+				&& drawList.getIndexBuffer(runEnd) == drawList.getIndexBuffer(draw)
+				&& drawList.getInstanceBuffer(runEnd) == drawList.getInstanceBuffer(draw)
+				&& drawList.getInstanceOffset(runEnd) == drawList.getInstanceOffset(draw)
+				&& drawList.hasSameTransform(runEnd, draw)) {
+			runEnd++;
+		}
+		return runEnd;
+	}
 
-				imageAvailableSemaphores[i] = syncObjectBuffer.get(0);
-				renderFinishedSemaphores[i] = syncObjectBuffer.get(1);
-				inFlightFences[i] = syncObjectBuffer.get(2);
+	private void recordIndirectRun(VkCommandBuffer commandBuffer, int firstDraw, int drawCount) {
+		long offset = indirectOffset + (long) firstDraw * IndirectCommandPacker.COMMAND_SIZE;
+		if (multiDrawIndirect) {
+			vkCmdDrawIndexedIndirect(commandBuffer, indirectRing.getBuffer(), offset, drawCount,
+					IndirectCommandPacker.COMMAND_SIZE);
+		} else {
+			for (int i = 0; i < drawCount; i++) {
+				vkCmdDrawIndexedIndirect(commandBuffer, indirectRing.getBuffer(),
+						offset + (long) i * IndirectCommandPacker.COMMAND_SIZE, 1, IndirectCommandPacker.COMMAND_SIZE);
 			}
 		}
 	}
 
+	private void createSyncObjects() {
+		frameScheduler = new FrameScheduler(device, FRAMES_IN_FLIGHT);
+		deletionQueue = new DeferredDeletionQueue(frameScheduler);
+	}
+
 	private void mainLoop() {
+		if (HEADLESS) {
+			renderHeadless();
+			return;
+		}
+
 		while (!glfwWindowShouldClose(window)) {
+			// pacing before polling means the frame works from the freshest input
+			long paced = framePacer.waitForNextFrame();
+			if (framePacer.isPacing()) {
+				frameProfiler.record(FramePhase.PACE, paced);
+			}
+
 			glfwPollEvents();
+			inputPolled = System.nanoTime();
 
 			drawFrame();
 		}
@@ -1286,44 +1799,155 @@ public class HelloVulkanApplication {
 		vkDeviceWaitIdle(device);
 	}
 
+	/**
+	 * Renders a fixed number of frames as fast as the device allows, with no presentation to cap the frame rate.
+	 */
+	private void renderHeadless() {
+		long start = System.nanoTime();
+		for (int i = 0; i < HEADLESS_FRAMES; i++) {
+			drawFrame();
+		}
+
+		vkDeviceWaitIdle(device);
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Rendered %d offscreen frames in %.3f s (%.1f fps)\n", HEADLESS_FRAMES, seconds,
+				HEADLESS_FRAMES / seconds);
+
+		if (frameCapture != null) {
+			frameCapture.finish();
+			System.out.printf("Captured %d frames to %s (%d dropped, %d failed) at %.1f fps\n",
+					frameCapture.getCapturedFrames(), CAPTURE_DIRECTORY, frameCapture.getDroppedFrames(),
+					frameCapture.getFailedFrames(), frameCapture.getCaptureFramesPerSecond());
+		}
+	}
+
 	private void drawFrame() {
 		try (MemoryStack stack = MemoryStack.stackPush()) {
-			vkWaitForFences(device, inFlightFences[currentFrame], true, -1L);
+			long frameStart = System.nanoTime();
+			if (lastFrameStart >= 0) {
+				frameProfiler.record(FramePhase.FRAME, frameStart - lastFrameStart);
+			}
+			lastFrameStart = frameStart;
 
-			IntBuffer imageIndexBuffer = stack.mallocInt(1);
-			int result = vkAcquireNextImageKHR(device, swapChain, -1, imageAvailableSemaphores[currentFrame], VK_NULL_HANDLE, imageIndexBuffer);
-			int imageIndex = imageIndexBuffer.get(0);
+			currentFrame = frameScheduler.beginFrame();
+			long fenceSignaled = System.nanoTime();
+			frameProfiler.record(FramePhase.FENCE_WAIT, fenceSignaled - frameStart);
 
-			if (result == VK_ERROR_OUT_OF_DATE_KHR) {
-				recreateSwapChain();
-				return;
-			} else if (result != VK_SUCCESS && result != VK_SUBOPTIMAL_KHR) {
-				throw new RuntimeException("Failed to acquire swap chain image");
+			deletionQueue.collect();
+
+			long retiredFrame = frameScheduler.getRetiredFrameNumber();
+			instanceRing.frameCompleted(retiredFrame);
+			uniformRing.frameCompleted(retiredFrame);
+			descriptorAllocator.resetFrame(currentFrame);
+			if (indirectRing != null) {
+				indirectRing.frameCompleted(retiredFrame);
+			}
+
+			if (frameCapture != null) {
+				frameCapture.frameCompleted(currentFrame);
+			}
+
+			if (gpuTimer != null) {
+				long gpuTime = gpuTimer.collect(currentFrame);
+				if (gpuTime >= 0) {
+					frameProfiler.record(FramePhase.GPU, gpuTime);
+				}
 			}
 
+			int imageIndex;
+			if (HEADLESS) {
+				// each frame in flight has its own offscreen image, free again now that the fence has signaled
+				imageIndex = currentFrame;
+			} else {
+				IntBuffer imageIndexBuffer = stack.mallocInt(1);
+				int result = vkAcquireNextImageKHR(device, swapChain, -1, frameScheduler.getImageAvailableSemaphore(),
+						VK_NULL_HANDLE, imageIndexBuffer);
+				imageIndex = imageIndexBuffer.get(0);
+
+				if (result == VK_ERROR_OUT_OF_DATE_KHR) {
+					recreateSwapChain();
+					return;
+				} else if (result != VK_SUCCESS && result != VK_SUBOPTIMAL_KHR) {
+					throw new RuntimeException("Failed to acquire swap chain image");
+				}
+			}
+			long acquired = System.nanoTime();
+			frameProfiler.record(FramePhase.ACQUIRE, acquired - fenceSignaled);
+			frameProfiler.record(FramePhase.STALL, acquired - frameStart);
+
+			updateDrawList();
+			updateFrameUniforms();
+			graphicsPipeline = pipelineStateCache.get(graphicsPipelineDescription);
+			VkCommandBuffer commandBuffer = recordFrame(imageIndex);
+			long recorded = System.nanoTime();
+			frameProfiler.record(FramePhase.RECORD, recorded - acquired);
+
+			// any uploads queued since the last frame go out in one transfer submit that this frame waits on
+			long uploadSemaphore = stagingUploader.flush();
+
+			long particleSemaphore = VK_NULL_HANDLE;
+			if (particleSimulation != null) {
+				particleSemaphore = particleSimulation.step(currentFrame, nextParticleDeltaTime(recorded));
+			}
+
+			LongBuffer waitSemaphoreBuffer = stack.mallocLong(3);
+			IntBuffer waitStageBuffer = stack.mallocInt(3);
+			if (!HEADLESS) {
+				waitSemaphoreBuffer.put(frameScheduler.getImageAvailableSemaphore());
+				waitStageBuffer.put(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
+			}
+			if (uploadSemaphore != VK_NULL_HANDLE) {
+				waitSemaphoreBuffer.put(uploadSemaphore);
+				waitStageBuffer.put(VK_PIPELINE_STAGE_VERTEX_INPUT_BIT);
+			}
+			if (particleSemaphore != VK_NULL_HANDLE) {
+				waitSemaphoreBuffer.put(particleSemaphore);
+				waitStageBuffer.put(VK_PIPELINE_STAGE_VERTEX_INPUT_BIT);
+			}
+			waitSemaphoreBuffer.flip();
+			waitStageBuffer.flip();
+
 			VkSubmitInfo submitInfo = VkSubmitInfo.callocStack(stack);
 			submitInfo.sType(VK_STRUCTURE_TYPE_SUBMIT_INFO);
-			submitInfo.waitSemaphoreCount(1);
-			submitInfo.pWaitSemaphores(stack.longs(imageAvailableSemaphores[currentFrame]));
-			submitInfo.pWaitDstStageMask(stack.ints(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT));
-			submitInfo.pCommandBuffers(stack.pointers(commandBuffers[imageIndex]));
-			submitInfo.pSignalSemaphores(stack.longs(renderFinishedSemaphores[currentFrame]));
+			submitInfo.waitSemaphoreCount(waitSemaphoreBuffer.remaining());
+			submitInfo.pWaitSemaphores(waitSemaphoreBuffer);
+			submitInfo.pWaitDstStageMask(waitStageBuffer);
+			submitInfo.pCommandBuffers(stack.pointers(commandBuffer));
+			if (!HEADLESS) {
+				submitInfo.pSignalSemaphores(stack.longs(frameScheduler.getRenderFinishedSemaphore()));
+			}
 
-			vkResetFences(device, inFlightFences[currentFrame]);
+			frameScheduler.submit(graphicsQueue, submitInfo);
+			long submitted = System.nanoTime();
+			frameProfiler.record(FramePhase.SUBMIT, submitted - recorded);
 
-			if (vkQueueSubmit(graphicsQueue, submitInfo, inFlightFences[currentFrame]) != VK_SUCCESS) {
-				throw new RuntimeException("Failed to submit draw command buffer");
+			long frameNumber = frameScheduler.getFrameNumber();
+			instanceRing.endFrame(frameNumber);
+			uniformRing.endFrame(frameNumber);
+			if (indirectRing != null) {
+				indirectRing.endFrame(frameNumber);
+			}
+
+			if (HEADLESS) {
+				frameProfiler.maybeDump(submitted);
+				frameScheduler.endFrame();
+				return;
 			}
 
 			VkPresentInfoKHR presentInfo = VkPresentInfoKHR.callocStack(stack);
 			presentInfo.sType(VK_STRUCTURE_TYPE_PRESENT_INFO_KHR);
-			presentInfo.pWaitSemaphores(stack.longs(renderFinishedSemaphores[currentFrame]));
+			presentInfo.pWaitSemaphores(stack.longs(frameScheduler.getRenderFinishedSemaphore()));
 			presentInfo.swapchainCount(1);
 			presentInfo.pSwapchains(stack.longs(swapChain));
-			presentInfo.pImageIndices(imageIndexBuffer);
+			presentInfo.pImageIndices(stack.ints(imageIndex));
 			presentInfo.pResults(null);
 
-			result = vkQueuePresentKHR(presentQueue, presentInfo);
+			int result = vkQueuePresentKHR(presentQueue, presentInfo);
+			long presented = System.nanoTime();
+			frameProfiler.record(FramePhase.PRESENT, presented - submitted);
+			frameProfiler.record(FramePhase.INPUT_TO_PRESENT, presented - inputPolled);
+			frameProfiler.maybeDump(presented);
 
 			if (result == VK_ERROR_OUT_OF_DATE_KHR || result == VK_SUBOPTIMAL_KHR || framebufferResized) {
 				recreateSwapChain();
@@ -1334,58 +1958,120 @@ public class HelloVulkanApplication {
 				throw new RuntimeException("Failed to present swap chain image");
 			}
 
-			currentFrame = (currentFrame + 1) % MAX_FRAMES_IN_FLIGHT;
+			frameScheduler.endFrame();
 		}
 	}
 
+	/**
+	 * @return the time since the last particle step in seconds, capped so a long stall does not fling every particle
+	 * into the edges.
+	 */
+	private float nextParticleDeltaTime(long now) {
+		float deltaTime = lastParticleStep < 0 ? 0.0f : Math.min((now - lastParticleStep) / 1e9f, 0.1f);
+		lastParticleStep = now;
+		return deltaTime;
+	}
+
 	private void cleanup() {
-		for (int i = 0; i < MAX_FRAMES_IN_FLIGHT; i++) {
-			vkDestroySemaphore(device, imageAvailableSemaphores[i], null);
-			vkDestroySemaphore(device, renderFinishedSemaphores[i], null);
-			vkDestroyFence(device, inFlightFences[i], null);
-		}
+		// runs whatever was still waiting for a frame to retire while everything it may release is still alive
+		deletionQueue.flush();
+		frameScheduler.destroy();
 
 		cleanupSwapChain();
+		cleanupPipelines();
+
+		savePipelineCache();
+		vkDestroyPipelineCache(device, pipelineCache, null);
+		shaderModuleCache.destroy();
+
+		if (gpuTimer != null) {
+			gpuTimer.destroy();
+		}
+
+		if (frameCapture != null) {
+			frameCapture.destroy();
+		}
 
-		vkDestroyBuffer(device, vertexBuffer, null);
-		vkFreeMemory(device, vertexBufferMemory, null);
+		if (indirectRing != null) {
+			indirectRing.destroy();
+		}
+		if (particleSimulation != null) {
+			particleSimulation.destroy();
+		}
+		instanceRing.destroy();
+		uniformRing.destroy();
+		descriptorAllocator.destroy();
+		indexBuffer.destroy();
+		vertexBuffer.destroy();
+		vertices.free();
+		stagingUploader.destroy();
 
-		vkDestroyCommandPool(device, transferCommandPool, null);
-		vkDestroyCommandPool(device, commandPool, null);
+		if (DEBUG) {
+			System.out.println("Device memory at shutdown: " + memoryAllocator.getStatistics());
+		}
+		memoryAllocator.destroy();
+
+		for (long frameCommandPool : frameCommandPools) {
+			vkDestroyCommandPool(device, frameCommandPool, null);
+		}
+		for (long[] framePools : secondaryCommandPools) {
+			for (long secondaryCommandPool : framePools) {
+				vkDestroyCommandPool(device, secondaryCommandPool, null);
+			}
+		}
+		recordingScheduler.shutdown();
 
 		vkDestroyDevice(device, null);
-		vkDestroySurfaceKHR(instance, surface, null);
+		if (!HEADLESS) {
+			vkDestroySurfaceKHR(instance, surface, null);
+		}
 
 		if (DEBUG) {
 			vkDestroyDebugUtilsMessengerEXT(instance, debugUtilsMessenger, null);
 		}
 
 		vkDestroyInstance(instance, null);
+		physicalDeviceProperties.free();
 
-		glfwDestroyWindow(window);
-		glfwTerminate();
+		if (!HEADLESS) {
+			glfwDestroyWindow(window);
+			glfwTerminate();
+		}
 	}
 
 	private void cleanupSwapChain() {
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			vkFreeCommandBuffers(device, commandPool, stack.pointers(commandBuffers));
-
-			for (long framebuffer : swapChainFramebuffers) {
-				vkDestroyFramebuffer(device, framebuffer, null);
-			}
+		for (long framebuffer : swapChainFramebuffers) {
+			vkDestroyFramebuffer(device, framebuffer, null);
+		}
 
-			vkDestroyPipeline(device, graphicsPipeline, null);
-			vkDestroyPipelineLayout(device, pipelineLayout, null);
-			vkDestroyRenderPass(device, renderPass, null);
+		for (long imageView : swapChainImageViews) {
+			vkDestroyImageView(device, imageView, null);
+		}
 
-			for (long imageView : swapChainImageViews) {
-				vkDestroyImageView(device, imageView, null);
+		if (HEADLESS) {
+			for (DeviceImage offscreenImage : offscreenImages) {
+				offscreenImage.destroy();
 			}
-
+		} else {
 			vkDestroySwapchainKHR(device, swapChain, null);
 		}
 	}
 
+	private void cleanupPipelines() {
+		if (DEBUG) {
+			System.out.println("Pipeline state cache at shutdown: " + pipelineStateCache.size() + " pipelines, "
+					+ pipelineStateCache.getHits() + " hits, " + pipelineStateCache.getMisses() + " misses");
+		}
+		pipelineStateCache.destroy();
+		vkDestroyPipelineLayout(device, pipelineLayout, null);
+		frameSetLayout.destroy();
+
+		for (long renderPass : renderPasses.values()) {
+			vkDestroyRenderPass(device, renderPass, null);
+		}
+		renderPasses.clear();
+	}
+
 	private static class QueueFamilyIndices {
 		private int graphicsFamily;
 		private boolean graphicsFamilyFound = false;
@@ -1393,6 +2079,8 @@ public class HelloVulkanApplication {
 		private boolean presentFamilyFound = false;
 		private int transferFamily;
 		private boolean transferFamilyFound = false;
+		private int computeFamily;
+		private boolean computeFamilyFound = false;
 
 		public void setGraphicsFamily(int graphicsFamily) {
 			this.graphicsFamily = graphicsFamily;
@@ -1409,6 +2097,11 @@ public class HelloVulkanApplication {
 			transferFamilyFound = true;
 		}
 
+		public void setComputeFamily(int computeFamily) {
+			this.computeFamily = computeFamily;
+			computeFamilyFound = true;
+		}
+
 		public int getGraphicsFamily() {
 			return graphicsFamily;
 		}
@@ -1429,6 +2122,14 @@ public class HelloVulkanApplication {
 			return transferFamilyFound;
 		}
 
+		public int getComputeFamily() {
+			return computeFamily;
+		}
+
+		public boolean isComputeFamilyFound() {
+			return computeFamilyFound;
+		}
+
 		public boolean isComplete() {
 			return graphicsFamilyFound && presentFamilyFound && transferFamilyFound;
 		}
@@ -0,0 +1,61 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.vulkan.VkDrawIndexedIndirectCommand;
+
+import static org.lwjgl.system.MemoryUtil.memPutInt;
+
+/**
+ * Packs VkDrawIndexedIndirectCommand structs back to back into memory, usually a mapped indirect buffer, without
+ * creating a struct object per command.
+ */
+public class IndirectCommandPacker {
+	public static final int COMMAND_SIZE = VkDrawIndexedIndirectCommand.SIZEOF;
+
+	private long address;
+	private int commandCount;
+
+	/**
+	 * Sets the address the first command is written to and starts counting commands again.
+	 */
+	public IndirectCommandPacker at(long address) {
+		this.address = address;
+		commandCount = 0;
+		return this;
+	}
+
+	/**
+	 * @return the index of the written command.
+	 */
+	public int put(int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance) {
+		long commandAddress = address + (long) commandCount * COMMAND_SIZE;
+		memPutInt(commandAddress + VkDrawIndexedIndirectCommand.INDEXCOUNT, indexCount);
+		memPutInt(commandAddress + VkDrawIndexedIndirectCommand.INSTANCECOUNT, instanceCount);
+		memPutInt(commandAddress + VkDrawIndexedIndirectCommand.FIRSTINDEX, firstIndex);
+		memPutInt(commandAddress + VkDrawIndexedIndirectCommand.VERTEXOFFSET, vertexOffset);
+		memPutInt(commandAddress + VkDrawIndexedIndirectCommand.FIRSTINSTANCE, firstInstance);
+		return commandCount++;
+	}
+
+	/**
+	 * Writes one command per draw in the list, so command {@code i} always belongs to draw {@code i}. Non-indexed
+	 * draws get an empty command.
+	 */
+	public void putAll(DrawList drawList) {
+		for (int draw = 0; draw < drawList.size(); draw++) {
+			if (drawList.isIndexed(draw)) {
+				put(drawList.getIndexCount(draw), drawList.getInstanceCount(draw), drawList.getFirstIndex(draw),
+						drawList.getFirstVertex(draw), 0);
+			} else {
+				put(0, 0, 0, 0, 0);
+			}
+		}
+	}
+
+	public int getCommandCount() {
+		return commandCount;
+	}
+
+	public long getByteSize() {
+		return (long) commandCount * COMMAND_SIZE;
+	}
+}
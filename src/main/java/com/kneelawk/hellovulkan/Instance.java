@@ -0,0 +1,40 @@
+package com.kneelawk.hellovulkan;
+
+import static org.lwjgl.vulkan.VK10.VK_VERTEX_INPUT_RATE_INSTANCE;
+
+/**
+ * The per-instance attributes every mesh is drawn with: a 2x2 transform, an offset and a tint color.
+ */
+public final class Instance {
+	public static final int BINDING = 1;
+
+	public static final int TRANSFORM_LOCATION = 2;
+	public static final int OFFSET_LOCATION = 3;
+	public static final int COLOR_LOCATION = 4;
+
+	private Instance() {
+	}
+
+	/**
+	 * Adds the instance binding to a vertex format.
+	 */
+	public static VertexFormat withInstanceBinding(VertexFormat vertexFormat) {
+		return vertexFormat.toBuilder()
+				.binding(BINDING, VK_VERTEX_INPUT_RATE_INSTANCE)
+				.attribute(TRANSFORM_LOCATION, VertexAttributeType.R32G32B32A32_SFLOAT)
+				.attribute(OFFSET_LOCATION, VertexAttributeType.R32G32_SFLOAT)
+				.attribute(COLOR_LOCATION, VertexAttributeType.R8G8B8A8_UNORM)
+				.build();
+	}
+
+	/**
+	 * Writes one instance. The transform is given as the columns of a 2x2 matrix.
+	 */
+	public static void put(VertexWriter writer, int instance, float m00, float m10, float m01, float m11, float offsetX,
+						   float offsetY, float r, float g, float b) {
+		writer.vertex(instance);
+		writer.put(TRANSFORM_LOCATION, m00, m10, m01, m11);
+		writer.put(OFFSET_LOCATION, offsetX, offsetY);
+		writer.put(COLOR_LOCATION, r, g, b, 1.0f);
+	}
+}
@@ -0,0 +1,64 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableSet;
+import org.lwjgl.vulkan.VkDevice;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * A persistently mapped host-visible buffer the CPU writes per-frame data into, with space handed out as a ring and
+ * reclaimed a whole frame at a time once the GPU is done with that frame.
+ */
+public class MappedRingBuffer {
+	private final DeviceBuffer buffer;
+	private final RingBufferAllocator ring;
+	private final long address;
+
+	public MappedRingBuffer(VkDevice device, DeviceMemoryAllocator allocator, long capacity, int usage, int queueFamily) {
+		buffer = DeviceBuffer.create(device, allocator, capacity, usage,
+				VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT, ImmutableSet.of(queueFamily));
+		ring = new RingBufferAllocator(capacity);
+		address = buffer.getMappedAddress();
+	}
+
+	/**
+	 * @param alignment must be a power of two.
+	 * @return the offset of the new allocation in the buffer, or -1 if the frames still in flight use too much of it.
+	 */
+	public long allocate(long size, long alignment) {
+		return ring.allocate(size, alignment);
+	}
+
+	/**
+	 * @return the host address of an offset returned by {@link #allocate(long, long)}.
+	 */
+	public long getAddress(long offset) {
+		return address + offset;
+	}
+
+	/**
+	 * Marks everything allocated since the last call as belonging to the given frame.
+	 */
+	public void endFrame(long frameNumber) {
+		ring.endSegment(frameNumber);
+	}
+
+	/**
+	 * Makes the space of every frame up to and including the given one available again. Frames must complete in order.
+	 */
+	public void frameCompleted(long frameNumber) {
+		ring.release(frameNumber);
+	}
+
+	public long getBuffer() {
+		return buffer.getBuffer();
+	}
+
+	public long getCapacity() {
+		return ring.getCapacity();
+	}
+
+	public void destroy() {
+		buffer.destroy();
+	}
+}
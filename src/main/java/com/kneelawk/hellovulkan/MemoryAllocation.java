@@ -0,0 +1,60 @@
+package com.kneelawk.hellovulkan;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+
+/**
+ * A range of a device memory block handed out by a {@link DeviceMemoryAllocator}.
+ */
+public class MemoryAllocation {
+	private final DeviceMemoryAllocator.Block block;
+	private final long offset;
+	private final long size;
+
+	MemoryAllocation(DeviceMemoryAllocator.Block block, long offset, long size) {
+		this.block = block;
+		this.offset = offset;
+		this.size = size;
+	}
+
+	DeviceMemoryAllocator.Block getBlock() {
+		return block;
+	}
+
+	public long getMemory() {
+		return block.getMemory();
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public int getMemoryTypeIndex() {
+		return block.getMemoryTypeIndex();
+	}
+
+	public boolean isMapped() {
+		return block.getMappedAddress() != NULL;
+	}
+
+	/**
+	 * @return the host address of this allocation, or {@code NULL} if its memory type is not host visible.
+	 */
+	public long getMappedAddress() {
+		long blockAddress = block.getMappedAddress();
+		return blockAddress == NULL ? NULL : blockAddress + offset;
+	}
+
+	public ByteBuffer getMappedBuffer() {
+		if (!isMapped()) {
+			throw new IllegalStateException("Allocation is not host visible");
+		}
+		return memByteBuffer(getMappedAddress(), (int) size);
+	}
+}
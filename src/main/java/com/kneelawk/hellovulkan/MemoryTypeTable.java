@@ -0,0 +1,87 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkMemoryType;
+import org.lwjgl.vulkan.VkPhysicalDevice;
+import org.lwjgl.vulkan.VkPhysicalDeviceMemoryProperties;
+
+import static org.lwjgl.vulkan.VK10.vkGetPhysicalDeviceMemoryProperties;
+
+/**
+ * Plain-Java copy of a device's memory types and heaps, so memory type selection can run without a device.
+ */
+public class MemoryTypeTable {
+	private final int[] propertyFlags;
+	private final int[] heapIndices;
+	private final long[] heapSizes;
+
+	public MemoryTypeTable(int[] propertyFlags, int[] heapIndices, long[] heapSizes) {
+		if (propertyFlags.length != heapIndices.length) {
+			throw new IllegalArgumentException("Each memory type must have both property flags and a heap index");
+		}
+
+		this.propertyFlags = propertyFlags.clone();
+		this.heapIndices = heapIndices.clone();
+		this.heapSizes = heapSizes.clone();
+	}
+
+	public static MemoryTypeTable fromPhysicalDevice(VkPhysicalDevice physicalDevice) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkPhysicalDeviceMemoryProperties memoryProperties = VkPhysicalDeviceMemoryProperties.callocStack(stack);
+			vkGetPhysicalDeviceMemoryProperties(physicalDevice, memoryProperties);
+
+			int memoryTypeCount = memoryProperties.memoryTypeCount();
+			int[] propertyFlags = new int[memoryTypeCount];
+			int[] heapIndices = new int[memoryTypeCount];
+			for (int i = 0; i < memoryTypeCount; i++) {
+				VkMemoryType memoryType = memoryProperties.memoryTypes(i);
+				propertyFlags[i] = memoryType.propertyFlags();
+				heapIndices[i] = memoryType.heapIndex();
+			}
+
+			int memoryHeapCount = memoryProperties.memoryHeapCount();
+			long[] heapSizes = new long[memoryHeapCount];
+			for (int i = 0; i < memoryHeapCount; i++) {
+				heapSizes[i] = memoryProperties.memoryHeaps(i).size();
+			}
+
+			return new MemoryTypeTable(propertyFlags, heapIndices, heapSizes);
+		}
+	}
+
+	public int getMemoryTypeCount() {
+		return propertyFlags.length;
+	}
+
+	public int getPropertyFlags(int memoryTypeIndex) {
+		return propertyFlags[memoryTypeIndex];
+	}
+
+	public int getHeapIndex(int memoryTypeIndex) {
+		return heapIndices[memoryTypeIndex];
+	}
+
+	public long getHeapSize(int memoryTypeIndex) {
+		return heapSizes[heapIndices[memoryTypeIndex]];
+	}
+
+	public boolean hasMemoryType(int properties) {
+		for (int flags : propertyFlags) {
+			if ((flags & properties) == properties) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	public int findMemoryType(int typeFilter, int properties) {
+		for (int i = 0; i < propertyFlags.length; i++) {
+			if ((typeFilter & (1 << i)) != 0 && (propertyFlags[i] & properties) == properties) {
+				return i;
+			}
+		}
+
+		throw new RuntimeException("Failed to find a memory type");
+	}
+}
@@ -0,0 +1,357 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.Arrays;
+
+import static org.lwjgl.system.MemoryUtil.memGetInt;
+
+/**
+ * Turns triangle lists into indexed meshes that are cheap for the GPU to draw. Everything here works on primitive
+ * arrays and off-heap vertex data, so large meshes do not produce garbage.
+ */
+public final class MeshOptimizer {
+	/**
+	 * The post-transform cache size triangles are ordered for. Real hardware varies, but orderings built for 32 entries
+	 * hold up well on smaller and larger caches.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 32;
+
+	private static final int INTS_PER_VERTEX = Vertex.SIZEOF / 4;
+
+	// vertex scoring constants from Tom Forsyth's "Linear-Speed Vertex Cache Optimisation"
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRIANGLE_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+	private static final int MAX_PRECOMPUTED_VALENCE = 32;
+
+	private MeshOptimizer() {
+	}
+
+	/**
+	 * Deduplicates a non-indexed triangle list, orders its triangles for the post-transform cache and its vertices for
+	 * fetch locality.
+	 */
+	public static IndexedMesh optimize(VertexStore triangleList) {
+		IndexedMesh deduplicated = deduplicate(triangleList);
+		optimizeVertexCache(deduplicated.getIndices(), deduplicated.getVertices().size(), DEFAULT_CACHE_SIZE);
+
+		VertexStore ordered = optimizeVertexFetch(deduplicated.getVertices(), deduplicated.getIndices());
+		deduplicated.getVertices().free();
+
+		return new IndexedMesh(ordered, deduplicated.getIndices());
+	}
+
+	/**
+	 * Merges vertices whose packed bytes are identical. The returned mesh keeps the first occurrence of each vertex, in
+	 * the order they first appear.
+	 */
+	public static IndexedMesh deduplicate(VertexStore source) {
+		int count = source.size();
+		int[] indices = new int[count];
+		VertexStore unique = new VertexStore(Math.max(count / 2, 1));
+
+		// open addressing over indices into the unique store, -1 marks an empty slot
+		int[] table = new int[tableSizeFor(count)];
+		Arrays.fill(table, -1);
+		int mask = table.length - 1;
+
+		long sourceAddress = source.getAddress();
+		for (int i = 0; i < count; i++) {
+			long vertexAddress = sourceAddress + (long) i * Vertex.SIZEOF;
+			int slot = hashVertex(vertexAddress) & mask;
+
+			while (true) {
+				int existing = table[slot];
+				if (existing == -1) {
+					table[slot] = unique.appendFrom(source, i);
+					indices[i] = table[slot];
+					break;
+				}
+
+				if (vertexEquals(vertexAddress, unique.getAddress() + (long) existing * Vertex.SIZEOF)) {
+					indices[i] = existing;
+					break;
+				}
+
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		return new IndexedMesh(unique, indices);
+	}
+
+	/**
+	 * Reorders triangles in place so consecutive triangles reuse recently transformed vertices, following Forsyth's
+	 * greedy scoring algorithm.
+	 */
+	public static void optimizeVertexCache(int[] indices, int vertexCount, int cacheSize) {
+		int triangleCount = indices.length / 3;
+		if (triangleCount == 0) {
+			return;
+		}
+
+		// triangles adjacent to each vertex, in compressed rows. The first remainingValence entries of a row are the
+		// triangles that have not been emitted yet.
+		int[] remainingValence = new int[vertexCount];
+		for (int index : indices) {
+			remainingValence[index]++;
+		}
+
+		int[] adjacencyOffsets = new int[vertexCount + 1];
+		for (int v = 0; v < vertexCount; v++) {
+			adjacencyOffsets[v + 1] = adjacencyOffsets[v] + remainingValence[v];
+		}
+
+		int[] adjacency = new int[indices.length];
+		int[] fill = Arrays.copyOf(adjacencyOffsets, vertexCount);
+		for (int i = 0; i < indices.length; i++) {
+			adjacency[fill[indices[i]]++] = i / 3;
+		}
+
+		float[] cacheScores = precomputeCacheScores(cacheSize);
+		float[] valenceScores = precomputeValenceScores();
+
+		int[] cachePositions = new int[vertexCount];
+		Arrays.fill(cachePositions, -1);
+
+		float[] vertexScores = new float[vertexCount];
+		for (int v = 0; v < vertexCount; v++) {
+			vertexScores[v] = vertexScore(-1, remainingValence[v], cacheScores, valenceScores);
+		}
+
+		float[] triangleScores = new float[triangleCount];
+		for (int t = 0; t < triangleCount; t++) {
+			triangleScores[t] = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]]
+					+ vertexScores[indices[t * 3 + 2]];
+		}
+
+		boolean[] emitted = new boolean[triangleCount];
+		int[] output = new int[triangleCount * 3];
+		int[] cache = new int[cacheSize + 3];
+		int[] nextCache = new int[cacheSize + 3];
+		int cacheCount = 0;
+		int nextUnemitted = 0;
+
+		int bestTriangle = -1;
+		for (int emittedCount = 0; emittedCount < triangleCount; emittedCount++) {
+			if (bestTriangle < 0) {
+				// dead end, nothing in the cache touches a remaining triangle, so continue in input order
+				while (emitted[nextUnemitted]) {
+					nextUnemitted++;
+				}
+				bestTriangle = nextUnemitted;
+			}
+
+			int triangle = bestTriangle;
+			emitted[triangle] = true;
+
+			int nextCacheCount = 0;
+			for (int corner = 0; corner < 3; corner++) {
+				int v = indices[triangle * 3 + corner];
+				output[emittedCount * 3 + corner] = v;
+
+				removeAdjacency(v, triangle, adjacency, adjacencyOffsets, remainingValence);
+
+				if (!contains(nextCache, nextCacheCount, v)) {
+					nextCache[nextCacheCount++] = v;
+				}
+			}
+
+			int triangleVertexCount = nextCacheCount;
+			for (int i = 0; i < cacheCount; i++) {
+				int v = cache[i];
+				if (!contains(nextCache, triangleVertexCount, v)) {
+					nextCache[nextCacheCount++] = v;
+				}
+			}
+
+			// vertices past the cache size fall out of the cache but still need their scores updated
+			for (int i = 0; i < nextCacheCount; i++) {
+				int v = nextCache[i];
+				cachePositions[v] = i < cacheSize ? i : -1;
+
+				float score = vertexScore(cachePositions[v], remainingValence[v], cacheScores, valenceScores);
+				float delta = score - vertexScores[v];
+				vertexScores[v] = score;
+
+				int rowStart = adjacencyOffsets[v];
+				for (int a = rowStart; a < rowStart + remainingValence[v]; a++) {
+					triangleScores[adjacency[a]] += delta;
+				}
+			}
+
+			int[] swap = cache;
+			cache = nextCache;
+			nextCache = swap;
+			cacheCount = Math.min(nextCacheCount, cacheSize);
+
+			bestTriangle = -1;
+			float bestScore = -Float.MAX_VALUE;
+			for (int i = 0; i < cacheCount; i++) {
+				int v = cache[i];
+				int rowStart = adjacencyOffsets[v];
+				for (int a = rowStart; a < rowStart + remainingValence[v]; a++) {
+					int candidate = adjacency[a];
+					if (triangleScores[candidate] > bestScore) {
+						bestScore = triangleScores[candidate];
+						bestTriangle = candidate;
+					}
+				}
+			}
+		}
+
+		System.arraycopy(output, 0, indices, 0, output.length);
+	}
+
+	/**
+	 * Builds a copy of the vertices ordered by first use in the index buffer and remaps the indices in place, so
+	 * vertex fetches walk through memory mostly forwards. Vertices no index refers to are dropped.
+	 */
+	public static VertexStore optimizeVertexFetch(VertexStore vertices, int[] indices) {
+		int[] remap = new int[vertices.size()];
+		Arrays.fill(remap, -1);
+
+		VertexStore ordered = new VertexStore(vertices.size());
+		for (int i = 0; i < indices.length; i++) {
+			int v = indices[i];
+			if (remap[v] == -1) {
+				remap[v] = ordered.appendFrom(vertices, v);
+			}
+			indices[i] = remap[v];
+		}
+
+		return ordered;
+	}
+
+	/**
+	 * @return the average number of vertices transformed per triangle with a FIFO post-transform cache of the given
+	 * size. 3 is the worst case, 0.5 is about the best a regular grid can do.
+	 */
+	public static float averageCacheMissRatio(int[] indices, int vertexCount, int cacheSize) {
+		int triangleCount = indices.length / 3;
+		if (triangleCount == 0) {
+			return 0;
+		}
+
+		// a vertex is cached while fewer than cacheSize misses have happened since it was loaded
+		int[] loadedAt = new int[vertexCount];
+		Arrays.fill(loadedAt, Integer.MIN_VALUE / 2);
+		int misses = 0;
+		for (int index : indices) {
+			if (misses - loadedAt[index] >= cacheSize) {
+				loadedAt[index] = misses;
+				misses++;
+			}
+		}
+
+		return (float) misses / triangleCount;
+	}
+
+	private static void removeAdjacency(int vertex, int triangle, int[] adjacency, int[] adjacencyOffsets,
+										int[] remainingValence) {
+		int rowStart = adjacencyOffsets[vertex];
+		int rowEnd = rowStart + remainingValence[vertex];
+		for (int a = rowStart; a < rowEnd; a++) {
+			if (adjacency[a] == triangle) {
+				adjacency[a] = adjacency[rowEnd - 1];
+				adjacency[rowEnd - 1] = triangle;
+				remainingValence[vertex]--;
+				return;
+			}
+		}
+	}
+
+	private static boolean contains(int[] array, int length, int value) {
+		for (int i = 0; i < length; i++) {
+			if (array[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static float[] precomputeCacheScores(int cacheSize) {
+		float[] scores = new float[cacheSize];
+		for (int position = 0; position < cacheSize; position++) {
+			if (position < 3) {
+				// the last triangle's vertices get a fixed score so the next triangle does not just repeat an edge
+				scores[position] = LAST_TRIANGLE_SCORE;
+			} else {
+				float scaler = 1.0f / (cacheSize - 3);
+				scores[position] = (float) Math.pow(1.0f - (position - 3) * scaler, CACHE_DECAY_POWER);
+			}
+		}
+		return scores;
+	}
+
+	private static float[] precomputeValenceScores() {
+		float[] scores = new float[MAX_PRECOMPUTED_VALENCE + 1];
+		for (int valence = 1; valence <= MAX_PRECOMPUTED_VALENCE; valence++) {
+			scores[valence] = valenceScore(valence);
+		}
+		return scores;
+	}
+
+	private static float valenceScore(int remainingValence) {
+		// vertices with few triangles left are finished off first so they can leave the cache for good
+		return VALENCE_BOOST_SCALE * (float) Math.pow(remainingValence, -VALENCE_BOOST_POWER);
+	}
+
+	private static float vertexScore(int cachePosition, int remainingValence, float[] cacheScores, float[] valenceScores) {
+		if (remainingValence == 0) {
+			return -1.0f;
+		}
+
+		float score = cachePosition >= 0 ? cacheScores[cachePosition] : 0.0f;
+		score += remainingValence <= MAX_PRECOMPUTED_VALENCE ? valenceScores[remainingValence]
+				: valenceScore(remainingValence);
+		return score;
+	}
+
+	private static int tableSizeFor(int count) {
+		int size = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+		return Math.max(size, 16);
+	}
+
+	private static int hashVertex(long address) {
+		int hash = 0;
+		for (int i = 0; i < INTS_PER_VERTEX; i++) {
+			hash = hash * 0x9E3779B1 + memGetInt(address + i * 4L);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean vertexEquals(long a, long b) {
+		for (int i = 0; i < INTS_PER_VERTEX; i++) {
+			if (memGetInt(a + i * 4L) != memGetInt(b + i * 4L)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Vertices plus a triangle list of 32-bit indices into them. The vertex store must be {@link #free() freed}.
+	 */
+	public static class IndexedMesh {
+		private final VertexStore vertices;
+		private final int[] indices;
+
+		public IndexedMesh(VertexStore vertices, int[] indices) {
+			this.vertices = vertices;
+			this.indices = indices;
+		}
+
+		public VertexStore getVertices() {
+			return vertices;
+		}
+
+		public int[] getIndices() {
+			return indices;
+		}
+
+		public void free() {
+			vertices.free();
+		}
+	}
+}
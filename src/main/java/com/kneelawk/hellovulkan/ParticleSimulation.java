@@ -0,0 +1,203 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableSet;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Moves particles around the screen with a compute shader on the compute queue and writes them out as {@link Instance}
+ * data, so the graphics queue can draw them without the CPU touching a single particle.
+ * <p>
+ * Each frame in flight gets its own instance buffer and a semaphore that is signaled once the buffer is written. The
+ * particle state itself lives in one buffer that every step reads and writes in submission order.
+ */
+public class ParticleSimulation {
+	/**
+	 * The size of an instance as written by the shader, which must match the instance binding's stride.
+	 */
+	public static final int INSTANCE_SIZE = 28;
+
+	private static final int PARTICLE_SIZE = 32;
+	// specialized into the shader's local_size_x, so it can be tuned without recompiling the shader
+	private static final int WORKGROUP_SIZE = 64;
+	private static final int WORKGROUP_SIZE_CONSTANT_ID = 0;
+	private static final int PUSH_CONSTANT_SIZE = 12;
+
+	private final VkDevice device;
+	private final VkQueue computeQueue;
+	private final int particleCount;
+	private final float particleSize;
+
+	private final ComputePipeline pipeline;
+	private final StorageBufferDescriptors descriptors;
+	private final DeviceBuffer particleBuffer;
+	private final DeviceBuffer[] instanceBuffers;
+
+	private final long[] commandPools;
+	private final VkCommandBuffer[] commandBuffers;
+	private final long[] finishedSemaphores;
+
+	private boolean initialized = false;
+
+	/**
+	 * @param graphicsFamily the queue family that draws the instance buffers. When it differs from the compute family
+	 *                       the buffers are shared concurrently, so no ownership transfers are needed.
+	 */
+	public ParticleSimulation(VkDevice device, DeviceMemoryAllocator allocator, long pipelineCache, long shaderModule,
+							  VkQueue computeQueue, int computeFamily, int graphicsFamily, int particleCount,
+							  int framesInFlight) {
+		this.device = device;
+		this.computeQueue = computeQueue;
+		this.particleCount = particleCount;
+		particleSize = 1.0f / (float) Math.sqrt(particleCount);
+
+		pipeline = new ComputePipeline(device, pipelineCache, shaderModule,
+				SpecializationConstants.builder().constant(WORKGROUP_SIZE_CONSTANT_ID, WORKGROUP_SIZE).build(), 2,
+				PUSH_CONSTANT_SIZE);
+		descriptors = new StorageBufferDescriptors(device, pipeline, framesInFlight);
+
+		particleBuffer = DeviceBuffer.create(device, allocator, (long) particleCount * PARTICLE_SIZE,
+				VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT,
+				ImmutableSet.of(computeFamily));
+
+		long instanceBufferSize = (long) particleCount * INSTANCE_SIZE;
+		instanceBuffers = new DeviceBuffer[framesInFlight];
+		for (int i = 0; i < framesInFlight; i++) {
+			instanceBuffers[i] = DeviceBuffer.create(device, allocator, instanceBufferSize,
+					VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_VERTEX_BUFFER_BIT,
+					VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, ImmutableSet.of(computeFamily, graphicsFamily));
+
+			descriptors.bindBuffer(i, 0, particleBuffer.getBuffer(), 0, particleBuffer.getSize());
+			descriptors.bindBuffer(i, 1, instanceBuffers[i].getBuffer(), 0, instanceBufferSize);
+		}
+
+		commandPools = new long[framesInFlight];
+		commandBuffers = new VkCommandBuffer[framesInFlight];
+		finishedSemaphores = new long[framesInFlight];
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkCommandPoolCreateInfo commandPoolCreateInfo = VkCommandPoolCreateInfo.callocStack(stack);
+			commandPoolCreateInfo.sType(VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO);
+			commandPoolCreateInfo.queueFamilyIndex(computeFamily);
+			commandPoolCreateInfo.flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT);
+
+			VkCommandBufferAllocateInfo commandBufferAllocateInfo = VkCommandBufferAllocateInfo.callocStack(stack);
+			commandBufferAllocateInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
+			commandBufferAllocateInfo.level(VK_COMMAND_BUFFER_LEVEL_PRIMARY);
+			commandBufferAllocateInfo.commandBufferCount(1);
+
+			VkSemaphoreCreateInfo semaphoreCreateInfo = VkSemaphoreCreateInfo.callocStack(stack);
+			semaphoreCreateInfo.sType(VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO);
+
+			LongBuffer handleBuffer = stack.mallocLong(1);
+			PointerBuffer commandBufferBuffer = stack.mallocPointer(1);
+			for (int i = 0; i < framesInFlight; i++) {
+				if (vkCreateCommandPool(device, commandPoolCreateInfo, null, handleBuffer) != VK_SUCCESS) {
+					throw new RuntimeException("Failed to create compute command pool");
+				}
+				commandPools[i] = handleBuffer.get(0);
+
+				commandBufferAllocateInfo.commandPool(commandPools[i]);
+				if (vkAllocateCommandBuffers(device, commandBufferAllocateInfo, commandBufferBuffer) != VK_SUCCESS) {
+					throw new RuntimeException("Failed to allocate compute command buffers");
+				}
+				commandBuffers[i] = new VkCommandBuffer(commandBufferBuffer.get(0), device);
+
+				if (vkCreateSemaphore(device, semaphoreCreateInfo, null, handleBuffer) != VK_SUCCESS) {
+					throw new RuntimeException("Failed to create compute semaphore");
+				}
+				finishedSemaphores[i] = handleBuffer.get(0);
+			}
+		}
+	}
+
+	/**
+	 * Submits one simulation step that writes a frame's instance buffer. Must only be called once the previous
+	 * graphics submit for that frame has finished, since it overwrites the buffer that submit was drawing from.
+	 *
+	 * @return the semaphore the frame's graphics submit must wait on before reading vertex input.
+	 */
+	public long step(int frame, float deltaTime) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			vkResetCommandPool(device, commandPools[frame], 0);
+
+			VkCommandBuffer commandBuffer = commandBuffers[frame];
+
+			VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.callocStack(stack);
+			beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+			beginInfo.flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+
+			if (vkBeginCommandBuffer(commandBuffer, beginInfo) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to begin recording to a compute command buffer");
+			}
+
+			// zeroed particles are spawned by the shader on their first step
+			if (!initialized) {
+				vkCmdFillBuffer(commandBuffer, particleBuffer.getBuffer(), 0, VK_WHOLE_SIZE, 0);
+				initialized = true;
+			}
+
+			// the previous step, or the fill, wrote the particle state this step reads
+			VkMemoryBarrier.Buffer barrier = VkMemoryBarrier.callocStack(1, stack);
+			barrier.sType(VK_STRUCTURE_TYPE_MEMORY_BARRIER);
+			barrier.srcAccessMask(VK_ACCESS_SHADER_WRITE_BIT | VK_ACCESS_TRANSFER_WRITE_BIT);
+			barrier.dstAccessMask(VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_SHADER_WRITE_BIT);
+			vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT | VK_PIPELINE_STAGE_TRANSFER_BIT,
+					VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, 0, barrier, null, null);
+
+			pipeline.bind(commandBuffer, descriptors.get(frame));
+
+			ByteBuffer pushConstants = stack.malloc(PUSH_CONSTANT_SIZE);
+			pushConstants.putFloat(0, deltaTime);
+			pushConstants.putFloat(4, particleSize);
+			pushConstants.putInt(8, particleCount);
+			vkCmdPushConstants(commandBuffer, pipeline.getPipelineLayout(), VK_SHADER_STAGE_COMPUTE_BIT, 0, pushConstants);
+
+			vkCmdDispatch(commandBuffer, (particleCount + WORKGROUP_SIZE - 1) / WORKGROUP_SIZE, 1, 1);
+
+			if (vkEndCommandBuffer(commandBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to record a compute command buffer");
+			}
+
+			VkSubmitInfo submitInfo = VkSubmitInfo.callocStack(stack);
+			submitInfo.sType(VK_STRUCTURE_TYPE_SUBMIT_INFO);
+			submitInfo.pCommandBuffers(stack.pointers(commandBuffer));
+			submitInfo.pSignalSemaphores(stack.longs(finishedSemaphores[frame]));
+
+			if (vkQueueSubmit(computeQueue, submitInfo, VK_NULL_HANDLE) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to submit compute command buffer");
+			}
+
+			return finishedSemaphores[frame];
+		}
+	}
+
+	public long getInstanceBuffer(int frame) {
+		return instanceBuffers[frame].getBuffer();
+	}
+
+	public int getParticleCount() {
+		return particleCount;
+	}
+
+	public void destroy() {
+		for (int i = 0; i < commandPools.length; i++) {
+			vkDestroyCommandPool(device, commandPools[i], null);
+			vkDestroySemaphore(device, finishedSemaphores[i], null);
+		}
+
+		for (DeviceBuffer instanceBuffer : instanceBuffers) {
+			instanceBuffer.destroy();
+		}
+		particleBuffer.destroy();
+
+		descriptors.destroy();
+		pipeline.destroy();
+	}
+}
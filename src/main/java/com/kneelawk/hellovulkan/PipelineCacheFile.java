@@ -0,0 +1,113 @@
+package com.kneelawk.hellovulkan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.vulkan.VK10.VK_PIPELINE_CACHE_HEADER_VERSION_ONE;
+import static org.lwjgl.vulkan.VK10.VK_UUID_SIZE;
+
+/**
+ * Reading, validating and atomically writing VkPipelineCache blobs. Nothing in here needs a device.
+ */
+public class PipelineCacheFile {
+	/**
+	 * Size of the version one header: length, version, vendorID, deviceID and pipelineCacheUUID.
+	 */
+	public static final int HEADER_SIZE = 4 * 4 + VK_UUID_SIZE;
+
+	/**
+	 * Checks that a cache blob was written by the same driver and device it is about to be handed to. Drivers are
+	 * supposed to reject mismatched blobs themselves, but some have crashed on them instead.
+	 *
+	 * @param pipelineCacheUuid the VK_UUID_SIZE bytes of the device's pipelineCacheUUID.
+	 */
+	public static boolean isHeaderValid(ByteBuffer data, int vendorId, int deviceId, ByteBuffer pipelineCacheUuid) {
+		if (data.remaining() < HEADER_SIZE) {
+			return false;
+		}
+
+		// the header's fields are little endian whatever the host's byte order
+		ByteBuffer header = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+		int headerLength = header.getInt(0);
+		int headerVersion = header.getInt(4);
+		if (headerLength < HEADER_SIZE || headerLength > data.remaining() || headerVersion != VK_PIPELINE_CACHE_HEADER_VERSION_ONE) {
+			return false;
+		}
+
+		if (header.getInt(8) != vendorId || header.getInt(12) != deviceId) {
+			return false;
+		}
+
+		for (int i = 0; i < VK_UUID_SIZE; i++) {
+			if (header.get(16 + i) != pipelineCacheUuid.get(pipelineCacheUuid.position() + i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reads the cache blob into native memory. It is read rather than mapped, as a mapping would keep the file open and
+	 * on Windows stop {@link #writeAtomically(Path, ByteBuffer)} from replacing it later.
+	 *
+	 * @return the cache blob, which must be freed with {@code memFree}, or null if there is no cache file or it belongs
+	 * to another device or driver.
+	 */
+	public static ByteBuffer load(Path path, int vendorId, int deviceId, ByteBuffer pipelineCacheUuid) throws IOException {
+		if (!Files.isRegularFile(path)) {
+			return null;
+		}
+
+		ByteBuffer data;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE - 8) {
+				throw new IOException("Pipeline cache file is too large: " + path);
+			}
+
+			data = BufferUtils.toByteBuffer(channel, (int) size);
+		}
+
+		if (!isHeaderValid(data, vendorId, deviceId, pipelineCacheUuid)) {
+			memFree(data);
+			return null;
+		}
+
+		return data;
+	}
+
+	/**
+	 * Writes the data to a temporary file next to the destination and moves it into place, so a crash while saving
+	 * never leaves a truncated cache behind.
+	 */
+	public static void writeAtomically(Path path, ByteBuffer data) throws IOException {
+		Path absolutePath = path.toAbsolutePath();
+		Path directory = absolutePath.getParent();
+		Files.createDirectories(directory);
+
+		Path tempPath = Files.createTempFile(directory, absolutePath.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer toWrite = data.duplicate();
+				while (toWrite.hasRemaining()) {
+					channel.write(toWrite);
+				}
+				channel.force(true);
+			}
+
+			try {
+				Files.move(tempPath, absolutePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempPath, absolutePath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package com.kneelawk.hellovulkan;
+
+/**
+ * Builds the pipelines a {@link PipelineStateCache} hands out. Pipelines are created on the cache's compiler threads,
+ * so implementations must be safe to call from several threads at once.
+ */
+public interface PipelineCreator {
+	long createPipeline(PipelineDescription description);
+
+	void destroyPipeline(long pipeline);
+}
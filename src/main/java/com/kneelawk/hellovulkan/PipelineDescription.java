@@ -0,0 +1,284 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Everything a graphics pipeline is built from, as an immutable value that can be used to look pipelines up in a
+ * {@link PipelineStateCache}. Two equal descriptions always produce interchangeable pipelines.
+ * <p>
+ * The viewport and scissor are always dynamic and the pipeline layout is shared, so neither is part of the
+ * description. The render pass is only described by what makes render passes compatible, its color format and sample
+ * count, so pipelines survive render passes being rebuilt.
+ */
+public final class PipelineDescription {
+	private final ImmutableList<ShaderStage> stages;
+	private final VertexFormat vertexFormat;
+	private final int topology;
+	private final int polygonMode;
+	private final int cullMode;
+	private final int frontFace;
+	private final BlendMode blendMode;
+	private final int colorWriteMask;
+	private final int colorFormat;
+	private final int samples;
+	// descriptions are hashed on every cache lookup, which happens every frame
+	private final int hash;
+
+	private PipelineDescription(Builder builder) {
+		stages = ImmutableList.copyOf(builder.stages);
+		vertexFormat = builder.vertexFormat;
+		topology = builder.topology;
+		polygonMode = builder.polygonMode;
+		cullMode = builder.cullMode;
+		frontFace = builder.frontFace;
+		blendMode = builder.blendMode;
+		colorWriteMask = builder.colorWriteMask;
+		colorFormat = builder.colorFormat;
+		samples = builder.samples;
+		hash = Objects.hash(stages, vertexFormat, topology, polygonMode, cullMode, frontFace, blendMode, colorWriteMask,
+				colorFormat, samples);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return a builder starting from this description, for deriving pipelines that differ in only a few states.
+	 */
+	public Builder toBuilder() {
+		Builder builder = new Builder();
+		builder.stages.addAll(stages);
+		builder.vertexFormat = vertexFormat;
+		builder.topology = topology;
+		builder.polygonMode = polygonMode;
+		builder.cullMode = cullMode;
+		builder.frontFace = frontFace;
+		builder.blendMode = blendMode;
+		builder.colorWriteMask = colorWriteMask;
+		builder.colorFormat = colorFormat;
+		builder.samples = samples;
+		return builder;
+	}
+
+	public ImmutableList<ShaderStage> getStages() {
+		return stages;
+	}
+
+	public VertexFormat getVertexFormat() {
+		return vertexFormat;
+	}
+
+	public int getTopology() {
+		return topology;
+	}
+
+	public int getPolygonMode() {
+		return polygonMode;
+	}
+
+	public int getCullMode() {
+		return cullMode;
+	}
+
+	public int getFrontFace() {
+		return frontFace;
+	}
+
+	public BlendMode getBlendMode() {
+		return blendMode;
+	}
+
+	public int getColorWriteMask() {
+		return colorWriteMask;
+	}
+
+	public int getColorFormat() {
+		return colorFormat;
+	}
+
+	public int getSamples() {
+		return samples;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		PipelineDescription that = (PipelineDescription) o;
+		return hash == that.hash && topology == that.topology && polygonMode == that.polygonMode
+				&& cullMode == that.cullMode && frontFace == that.frontFace && colorWriteMask == that.colorWriteMask
+				&& colorFormat == that.colorFormat && samples == that.samples && blendMode == that.blendMode
+				&& stages.equals(that.stages) && vertexFormat.equals(that.vertexFormat);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("PipelineDescription{");
+		for (ShaderStage stage : stages) {
+			sb.append(stage.module).append(", ");
+		}
+		return sb.append(blendMode).append(", format ").append(colorFormat).append('}').toString();
+	}
+
+	public enum BlendMode {
+		OPAQUE,
+		/**
+		 * Source color blended over the destination by its alpha.
+		 */
+		ALPHA,
+		/**
+		 * Source color scaled by its alpha and added to the destination.
+		 */
+		ADDITIVE
+	}
+
+	public static final class ShaderStage {
+		private final int stage;
+		private final String module;
+		private final SpecializationConstants specialization;
+
+		private ShaderStage(int stage, String module, SpecializationConstants specialization) {
+			this.stage = stage;
+			this.module = module;
+			this.specialization = specialization;
+		}
+
+		/**
+		 * @return the stage's VK_SHADER_STAGE_*_BIT.
+		 */
+		public int getStage() {
+			return stage;
+		}
+
+		/**
+		 * @return the resource path of the stage's SPIR-V module.
+		 */
+		public String getModule() {
+			return module;
+		}
+
+		public SpecializationConstants getSpecialization() {
+			return specialization;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			ShaderStage that = (ShaderStage) o;
+			return stage == that.stage && module.equals(that.module) && specialization.equals(that.specialization);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(stage, module, specialization);
+		}
+	}
+
+	/**
+	 * Starts out as an opaque, back face culled triangle list with clockwise front faces and a single sample, which is
+	 * what most pipelines use.
+	 */
+	public static class Builder {
+		private final List<ShaderStage> stages = new ArrayList<>();
+		private VertexFormat vertexFormat;
+		private int topology = VK_PRIMITIVE_TOPOLOGY_TRIANGLE_LIST;
+		private int polygonMode = VK_POLYGON_MODE_FILL;
+		private int cullMode = VK_CULL_MODE_BACK_BIT;
+		private int frontFace = VK_FRONT_FACE_CLOCKWISE;
+		private BlendMode blendMode = BlendMode.OPAQUE;
+		private int colorWriteMask = VK_COLOR_COMPONENT_R_BIT | VK_COLOR_COMPONENT_G_BIT | VK_COLOR_COMPONENT_B_BIT
+				| VK_COLOR_COMPONENT_A_BIT;
+		private int colorFormat = VK_FORMAT_UNDEFINED;
+		private int samples = VK_SAMPLE_COUNT_1_BIT;
+
+		private Builder() {
+		}
+
+		public Builder stage(int stage, String module) {
+			return stage(stage, module, SpecializationConstants.NONE);
+		}
+
+		public Builder stage(int stage, String module, SpecializationConstants specialization) {
+			for (ShaderStage existing : stages) {
+				if (existing.stage == stage) {
+					throw new IllegalArgumentException("Shader stage " + stage + " is already declared");
+				}
+			}
+
+			stages.add(new ShaderStage(stage, module, specialization));
+			return this;
+		}
+
+		public Builder vertexFormat(VertexFormat vertexFormat) {
+			this.vertexFormat = vertexFormat;
+			return this;
+		}
+
+		public Builder topology(int topology) {
+			this.topology = topology;
+			return this;
+		}
+
+		public Builder polygonMode(int polygonMode) {
+			this.polygonMode = polygonMode;
+			return this;
+		}
+
+		public Builder cullMode(int cullMode) {
+			this.cullMode = cullMode;
+			return this;
+		}
+
+		public Builder frontFace(int frontFace) {
+			this.frontFace = frontFace;
+			return this;
+		}
+
+		public Builder blendMode(BlendMode blendMode) {
+			this.blendMode = blendMode;
+			return this;
+		}
+
+		public Builder colorWriteMask(int colorWriteMask) {
+			this.colorWriteMask = colorWriteMask;
+			return this;
+		}
+
+		public Builder colorFormat(int colorFormat) {
+			this.colorFormat = colorFormat;
+			return this;
+		}
+
+		public Builder samples(int samples) {
+			this.samples = samples;
+			return this;
+		}
+
+		public PipelineDescription build() {
+			if (stages.isEmpty()) {
+				throw new IllegalStateException("A pipeline needs at least one shader stage");
+			}
+			if (vertexFormat == null) {
+				throw new IllegalStateException("A pipeline needs a vertex format");
+			}
+			if (colorFormat == VK_FORMAT_UNDEFINED) {
+				throw new IllegalStateException("A pipeline needs a color format");
+			}
+
+			return new PipelineDescription(this);
+		}
+	}
+}
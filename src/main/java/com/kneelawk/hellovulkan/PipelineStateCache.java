@@ -0,0 +1,132 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipelines keyed by their {@link PipelineDescription}, so every request for an identical description shares one
+ * pipeline.
+ * <p>
+ * Pipelines that are not in the cache yet are compiled on background threads. {@link #get(PipelineDescription)}
+ * never waits for them, so the render loop can skip draws until a pipeline is ready instead of stalling on the
+ * compile. Pipelines are kept until the cache is destroyed.
+ */
+public class PipelineStateCache {
+	/**
+	 * Returned by {@link #get(PipelineDescription)} for pipelines that are still compiling.
+	 */
+	public static final long NOT_READY = 0;
+
+	private final PipelineCreator creator;
+	private final ExecutorService compilers;
+	private final ConcurrentMap<PipelineDescription, CompletableFuture<Long>> pipelines = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public PipelineStateCache(PipelineCreator creator, int compilerThreads) {
+		this.creator = creator;
+
+		AtomicInteger threadIndex = new AtomicInteger();
+		compilers = Executors.newFixedThreadPool(compilerThreads, runnable -> {
+			Thread thread = new Thread(runnable, "Pipeline Compiler " + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts compiling a pipeline if the cache does not have it yet.
+	 *
+	 * @return a future completed with the pipeline once it is compiled.
+	 */
+	public CompletableFuture<Long> request(PipelineDescription description) {
+		CompletableFuture<Long> existing = pipelines.get(description);
+		if (existing != null) {
+			hits.incrementAndGet();
+			return existing;
+		}
+
+		CompletableFuture<Long> compiled = new CompletableFuture<>();
+		existing = pipelines.putIfAbsent(description, compiled);
+		if (existing != null) {
+			// another thread requested the same description first
+			hits.incrementAndGet();
+			return existing;
+		}
+
+		misses.incrementAndGet();
+		compilers.execute(() -> {
+			try {
+				compiled.complete(creator.createPipeline(description));
+			} catch (Throwable t) {
+				compiled.completeExceptionally(t);
+			}
+		});
+		return compiled;
+	}
+
+	/**
+	 * Looks up a pipeline without waiting, starting to compile it if the cache does not have it yet.
+	 *
+	 * @return the pipeline, or {@link #NOT_READY} if it is still compiling.
+	 */
+	public long get(PipelineDescription description) {
+		CompletableFuture<Long> pipeline = request(description);
+		return pipeline.isDone() ? join(pipeline) : NOT_READY;
+	}
+
+	/**
+	 * Looks up a pipeline, waiting for it to compile if necessary.
+	 */
+	public long getBlocking(PipelineDescription description) {
+		return join(request(description));
+	}
+
+	/**
+	 * @return the number of lookups that found their description already in the cache, compiled or not.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of lookups that started a compile.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int size() {
+		return pipelines.size();
+	}
+
+	/**
+	 * Waits for outstanding compiles and destroys every pipeline. The pipelines must no longer be in use.
+	 */
+	public void destroy() {
+		compilers.shutdown();
+		try {
+			compilers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for pipeline compiles", e);
+		}
+
+		for (CompletableFuture<Long> pipeline : pipelines.values()) {
+			if (!pipeline.isCompletedExceptionally()) {
+				creator.destroyPipeline(pipeline.join());
+			}
+		}
+		pipelines.clear();
+	}
+
+	private static long join(CompletableFuture<Long> pipeline) {
+		try {
+			return pipeline.join();
+		} catch (CompletionException e) {
+			throw new RuntimeException("Failed to compile pipeline", e.getCause());
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import static org.lwjgl.vulkan.KHRSurface.*;
+
+/**
+ * Presets for how frames are presented, trading latency against throughput and power use. A policy picks the present
+ * mode, how many swap chain images to ask for and the defaults for frames in flight and CPU frame pacing.
+ */
+public enum PresentPolicy {
+	/**
+	 * Shows each frame as soon as it is done without tearing where possible, with a single frame in flight so input is
+	 * sampled as late as possible.
+	 */
+	LOW_LATENCY(new int[]{VK_PRESENT_MODE_MAILBOX_KHR, VK_PRESENT_MODE_IMMEDIATE_KHR}, 1, 1, 0),
+	/**
+	 * Presents like {@link #LOW_LATENCY} but keeps two frames in flight, so the CPU and GPU overlap.
+	 */
+	BALANCED(new int[]{VK_PRESENT_MODE_MAILBOX_KHR, VK_PRESENT_MODE_IMMEDIATE_KHR}, 1, 2, 0),
+	/**
+	 * Renders as fast as the device allows, accepting tearing, with a deep queue so the GPU never waits on the CPU.
+	 */
+	MAX_THROUGHPUT(new int[]{VK_PRESENT_MODE_IMMEDIATE_KHR, VK_PRESENT_MODE_MAILBOX_KHR}, 2, 3, 0),
+	/**
+	 * Waits for vertical blank and paces the CPU to 30 frames per second, so neither processor does more work than
+	 * gets shown.
+	 */
+	POWER_SAVER(new int[0], 0, 2, 30);
+
+	// in order of preference, FIFO is always supported and used when none of these are
+	private final int[] presentModes;
+	private final int extraImages;
+	private final int defaultFramesInFlight;
+	private final int defaultTargetFrameRate;
+
+	PresentPolicy(int[] presentModes, int extraImages, int defaultFramesInFlight, int defaultTargetFrameRate) {
+		this.presentModes = presentModes;
+		this.extraImages = extraImages;
+		this.defaultFramesInFlight = defaultFramesInFlight;
+		this.defaultTargetFrameRate = defaultTargetFrameRate;
+	}
+
+	/**
+	 * Looks up a policy by name, written either like {@code low-latency} or like {@code LOW_LATENCY}.
+	 */
+	public static PresentPolicy fromName(String name) {
+		String normalized = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+		for (PresentPolicy policy : values()) {
+			if (policy.name().equals(normalized)) {
+				return policy;
+			}
+		}
+
+		throw new IllegalArgumentException("Unknown present policy " + name + ", expected one of " + Arrays.stream(values())
+				.map(PresentPolicy::getName).collect(Collectors.joining(", ")));
+	}
+
+	/**
+	 * @return the policy's name as it is written in configuration, like {@code low-latency}.
+	 */
+	public String getName() {
+		return name().toLowerCase(Locale.ROOT).replace('_', '-');
+	}
+
+	public int choosePresentMode(List<Integer> availablePresentModes) {
+		for (int presentMode : presentModes) {
+			if (availablePresentModes.contains(presentMode)) {
+				return presentMode;
+			}
+		}
+
+		return VK_PRESENT_MODE_FIFO_KHR;
+	}
+
+	/**
+	 * @param maxImageCount the surface's maximum image count, or 0 if it has none.
+	 */
+	public int chooseImageCount(int minImageCount, int maxImageCount, int framesInFlight) {
+		// every frame in flight needs an image to render to while another one is being presented
+		int imageCount = Math.max(minImageCount + extraImages, framesInFlight + 1);
+		if (maxImageCount > 0 && imageCount > maxImageCount) {
+			imageCount = maxImageCount;
+		}
+		return imageCount;
+	}
+
+	public int getDefaultFramesInFlight() {
+		return defaultFramesInFlight;
+	}
+
+	/**
+	 * @return the frame rate the CPU paces itself to unless configured otherwise, or 0 to not pace.
+	 */
+	public int getDefaultTargetFrameRate() {
+		return defaultTargetFrameRate;
+	}
+}
@@ -0,0 +1,143 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableMap;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkPushConstantRange;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The members of a shader's push constant block, laid out with the std430 rules push constant blocks use. Offsets are
+ * computed from the member types in declaration order, so the builder calls must match the block's declaration.
+ */
+public class PushConstantLayout {
+	/**
+	 * Every device supports at least this many bytes of push constants.
+	 */
+	public static final int GUARANTEED_SIZE = 128;
+
+	private final ImmutableMap<String, Member> members;
+	private final int size;
+	private final int stageFlags;
+
+	private PushConstantLayout(ImmutableMap<String, Member> members, int size, int stageFlags) {
+		this.members = members;
+		this.size = size;
+		this.stageFlags = stageFlags;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Looks up a member, which should be done once up front rather than for every draw.
+	 */
+	public Member getMember(String name) {
+		Member member = members.get(name);
+		if (member == null) {
+			throw new IllegalArgumentException("No push constant member " + name);
+		}
+		return member;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getStageFlags() {
+		return stageFlags;
+	}
+
+	public VkPushConstantRange.Buffer toPushConstantRange(MemoryStack stack) {
+		VkPushConstantRange.Buffer range = VkPushConstantRange.callocStack(1, stack);
+		range.stageFlags(stageFlags);
+		range.offset(0);
+		range.size(size);
+		return range;
+	}
+
+	public enum Type {
+		FLOAT(4, 4),
+		INT(4, 4),
+		VEC2(8, 8),
+		VEC3(12, 16),
+		VEC4(16, 16),
+		MAT4(64, 16);
+
+		private final int size;
+		private final int alignment;
+
+		Type(int size, int alignment) {
+			this.size = size;
+			this.alignment = alignment;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public int getAlignment() {
+			return alignment;
+		}
+	}
+
+	public static class Member {
+		private final String name;
+		private final Type type;
+		private final int offset;
+
+		private Member(String name, Type type, int offset) {
+			this.name = name;
+			this.type = type;
+			this.offset = offset;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		public int getOffset() {
+			return offset;
+		}
+	}
+
+	public static class Builder {
+		private final Map<String, Member> members = new LinkedHashMap<>();
+		private int size = 0;
+
+		private Builder() {
+		}
+
+		public Builder member(String name, Type type) {
+			if (members.containsKey(name)) {
+				throw new IllegalArgumentException("Push constant member " + name + " is already declared");
+			}
+
+			int offset = (int) BlockSubAllocator.alignUp(size, type.alignment);
+			members.put(name, new Member(name, type, offset));
+			size = offset + type.size;
+			return this;
+		}
+
+		/**
+		 * @param stageFlags the VK_SHADER_STAGE_*_BITs that read the block.
+		 */
+		public PushConstantLayout build(int stageFlags) {
+			if (members.isEmpty()) {
+				throw new IllegalStateException("A push constant block needs at least one member");
+			}
+			if (size > GUARANTEED_SIZE) {
+				throw new IllegalStateException("Push constant block of " + size + " bytes is larger than the "
+						+ GUARANTEED_SIZE + " bytes every device supports");
+			}
+
+			return new PushConstantLayout(ImmutableMap.copyOf(members), size, stageFlags);
+		}
+	}
+}
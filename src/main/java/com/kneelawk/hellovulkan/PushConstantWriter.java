@@ -0,0 +1,90 @@
+package com.kneelawk.hellovulkan;
+
+import org.joml.Matrix4fc;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkCommandBuffer;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.vulkan.VK10.vkCmdPushConstants;
+
+/**
+ * Writes the members of a {@link PushConstantLayout} into off-heap scratch memory and pushes them into a command
+ * buffer. Members keep their values between pushes, so only what changed between draws has to be written again.
+ * <p>
+ * The scratch memory comes from a thread's {@link MemoryStack}, so every recording thread has its own writer and
+ * writing it never allocates.
+ */
+public class PushConstantWriter {
+	private final PushConstantLayout layout;
+	private final ByteBuffer scratch;
+
+	/**
+	 * The writer is only valid until the stack frame it was created in is popped.
+	 */
+	public PushConstantWriter(PushConstantLayout layout, MemoryStack stack) {
+		this.layout = layout;
+		scratch = stack.calloc(layout.getSize());
+	}
+
+	public PushConstantWriter putFloat(PushConstantLayout.Member member, float value) {
+		scratch.putFloat(checkType(member, PushConstantLayout.Type.FLOAT), value);
+		return this;
+	}
+
+	public PushConstantWriter putInt(PushConstantLayout.Member member, int value) {
+		scratch.putInt(checkType(member, PushConstantLayout.Type.INT), value);
+		return this;
+	}
+
+	public PushConstantWriter putVec2(PushConstantLayout.Member member, float x, float y) {
+		int offset = checkType(member, PushConstantLayout.Type.VEC2);
+		scratch.putFloat(offset, x);
+		scratch.putFloat(offset + 4, y);
+		return this;
+	}
+
+	public PushConstantWriter putVec3(PushConstantLayout.Member member, float x, float y, float z) {
+		int offset = checkType(member, PushConstantLayout.Type.VEC3);
+		scratch.putFloat(offset, x);
+		scratch.putFloat(offset + 4, y);
+		scratch.putFloat(offset + 8, z);
+		return this;
+	}
+
+	public PushConstantWriter putVec4(PushConstantLayout.Member member, float x, float y, float z, float w) {
+		int offset = checkType(member, PushConstantLayout.Type.VEC4);
+		scratch.putFloat(offset, x);
+		scratch.putFloat(offset + 4, y);
+		scratch.putFloat(offset + 8, z);
+		scratch.putFloat(offset + 12, w);
+		return this;
+	}
+
+	public PushConstantWriter putMat4(PushConstantLayout.Member member, Matrix4fc matrix) {
+		matrix.get(checkType(member, PushConstantLayout.Type.MAT4), scratch);
+		return this;
+	}
+
+	/**
+	 * Records the whole block into a command buffer. The pipeline layout must declare the layout's range.
+	 */
+	public void push(VkCommandBuffer commandBuffer, long pipelineLayout) {
+		vkCmdPushConstants(commandBuffer, pipelineLayout, layout.getStageFlags(), 0, scratch);
+	}
+
+	/**
+	 * @return the scratch block, for copying it somewhere other than a command buffer.
+	 */
+	ByteBuffer getScratch() {
+		return scratch;
+	}
+
+	private static int checkType(PushConstantLayout.Member member, PushConstantLayout.Type type) {
+		if (member.getType() != type) {
+			throw new IllegalArgumentException("Push constant member " + member.getName() + " is a "
+					+ member.getType() + ", not a " + type);
+		}
+		return member.getOffset();
+	}
+}
@@ -0,0 +1,117 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Splits a range of draws into contiguous slices and records them in parallel. This class knows nothing about
+ * Vulkan: the {@link SliceRecorder} decides what recording a slice means.
+ * <p>
+ * Slice {@code i} is always handed slot {@code i}, so per-slot resources such as command pools are only ever touched by
+ * one thread at a time even though the thread that runs a slot changes from frame to frame.
+ */
+public class RecordingScheduler {
+	public interface SliceRecorder {
+		void recordSlice(int slot, int first, int count);
+	}
+
+	private final int slotCount;
+	private final int minSliceSize;
+	private final ExecutorService executor;
+
+	/**
+	 * @param slotCount    the most slices a range is ever split into. The calling thread records one of them.
+	 * @param minSliceSize ranges are not split into slices smaller than this.
+	 */
+	public RecordingScheduler(int slotCount, int minSliceSize) {
+		if (slotCount < 1) {
+			throw new IllegalArgumentException("A recording scheduler needs at least one slot");
+		}
+
+		this.slotCount = slotCount;
+		this.minSliceSize = Math.max(minSliceSize, 1);
+
+		AtomicInteger threadIndex = new AtomicInteger();
+		executor = slotCount > 1 ? Executors.newFixedThreadPool(slotCount - 1, runnable -> {
+			Thread thread = new Thread(runnable, "Command Recorder " + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}) : null;
+	}
+
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	public int getSliceCount(int itemCount) {
+		if (itemCount <= 0) {
+			return 0;
+		}
+
+		int slices = (itemCount + minSliceSize - 1) / minSliceSize;
+		return Math.min(slices, slotCount);
+	}
+
+	/**
+	 * @return the first item of a slice. Slices differ in size by at most one item.
+	 */
+	public static int getSliceStart(int slice, int sliceCount, int itemCount) {
+		return (int) ((long) slice * itemCount / sliceCount);
+	}
+
+	/**
+	 * Records every slice of the range and returns once all of them are done.
+	 *
+	 * @return the number of slices the range was split into.
+	 */
+	public int record(int itemCount, SliceRecorder recorder) {
+		int sliceCount = getSliceCount(itemCount);
+		if (sliceCount == 0) {
+			return 0;
+		}
+
+		CountDownLatch done = new CountDownLatch(sliceCount - 1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		for (int slice = 1; slice < sliceCount; slice++) {
+			int first = getSliceStart(slice, sliceCount, itemCount);
+			int count = getSliceStart(slice + 1, sliceCount, itemCount) - first;
+			int slot = slice;
+			executor.execute(() -> {
+				try {
+					recorder.recordSlice(slot, first, count);
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+
+		try {
+			recorder.recordSlice(0, 0, getSliceStart(1, sliceCount, itemCount));
+		} catch (Throwable t) {
+			failure.compareAndSet(null, t);
+		}
+
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for command recording", e);
+		}
+
+		if (failure.get() != null) {
+			throw new RuntimeException("Failed to record a slice of the draw list", failure.get());
+		}
+
+		return sliceCount;
+	}
+
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.kneelawk.hellovulkan;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * A loaded resource that is either a read-only file mapping or a native allocation, depending on where it came from.
+ * Closing it frees the allocation. Mappings are released when the buffer is garbage collected, which is the only way
+ * the JDK allows.
+ */
+public class ResourceBuffer implements AutoCloseable {
+	private final ByteBuffer buffer;
+	private final boolean allocated;
+	private boolean closed = false;
+
+	private ResourceBuffer(ByteBuffer buffer, boolean allocated) {
+		this.buffer = buffer;
+		this.allocated = allocated;
+	}
+
+	public static ResourceBuffer mapped(ByteBuffer buffer) {
+		return new ResourceBuffer(buffer, false);
+	}
+
+	/**
+	 * @param buffer a buffer allocated with {@code memAlloc}.
+	 */
+	public static ResourceBuffer allocated(ByteBuffer buffer) {
+		return new ResourceBuffer(buffer, true);
+	}
+
+	public ByteBuffer getBuffer() {
+		if (closed) {
+			throw new IllegalStateException("Resource buffer has been closed");
+		}
+		return buffer;
+	}
+
+	public boolean isMapped() {
+		return !allocated;
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		if (allocated) {
+			memFree(buffer);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.kneelawk.hellovulkan;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Offset bookkeeping for a ring buffer whose space is released in segments, each one tagged with a monotonically
+ * increasing value such as a submit serial or frame number.
+ * <p>
+ * Positions are tracked as running totals so a full ring and an empty ring can be told apart without a flag.
+ */
+public class RingBufferAllocator {
+	private final long capacity;
+	private final Deque<Segment> segments = new ArrayDeque<>();
+
+	// running total of bytes allocated, including padding
+	private long head = 0;
+	// running total of bytes released
+	private long tail = 0;
+	// head at the time of the last endSegment call
+	private long segmentStart = 0;
+
+	public RingBufferAllocator(long capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Ring capacity must be positive");
+		}
+
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param alignment must be a power of two.
+	 * @return the offset into the ring of the new allocation or -1 if the ring does not have enough free space.
+	 */
+	public long allocate(long size, long alignment) {
+		if (size > capacity) {
+			throw new IllegalArgumentException("Allocation of " + size + " bytes does not fit in a ring of " + capacity + " bytes");
+		}
+
+		if (head == tail) {
+			// nothing is in use, so start over at the beginning instead of wrapping around an empty ring
+			head = 0;
+			tail = 0;
+			segmentStart = 0;
+		}
+
+		long offset = head % capacity;
+		long alignedOffset = BlockSubAllocator.alignUp(offset, alignment);
+		long newHead;
+		if (alignedOffset + size > capacity) {
+			// the allocation does not fit before the end of the ring, so skip to the start
+			alignedOffset = 0;
+			newHead = head + (capacity - offset) + size;
+		} else {
+			newHead = head + (alignedOffset - offset) + size;
+		}
+
+		if (newHead - tail > capacity) {
+			return -1;
+		}
+
+		head = newHead;
+		return alignedOffset;
+	}
+
+	/**
+	 * Closes the current segment. Everything allocated since the previous segment is released once {@link
+	 * #release(long)} is called with a tag at least as large as this one.
+	 */
+	public void endSegment(long tag) {
+		if (head == segmentStart) {
+			return;
+		}
+
+		segments.addLast(new Segment(tag, head));
+		segmentStart = head;
+	}
+
+	/**
+	 * Releases every segment whose tag is less than or equal to the given one.
+	 */
+	public void release(long completedTag) {
+		while (!segments.isEmpty() && segments.peekFirst().tag <= completedTag) {
+			tail = segments.removeFirst().end;
+		}
+	}
+
+	public boolean hasPendingSegments() {
+		return !segments.isEmpty();
+	}
+
+	/**
+	 * @return the tag of the oldest segment that has not been released yet, or -1 if there is none.
+	 */
+	public long getOldestPendingTag() {
+		return segments.isEmpty() ? -1 : segments.peekFirst().tag;
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	public long getUsedBytes() {
+		return head - tail;
+	}
+
+	public long getFreeBytes() {
+		return capacity - (head - tail);
+	}
+
+	private static class Segment {
+		private final long tag;
+		private final long end;
+
+		private Segment(long tag, long end) {
+			this.tag = tag;
+			this.end = end;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkShaderModuleCreateInfo;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Shader modules shared by every pipeline that uses the same SPIR-V, keyed by a hash of the code.
+ * <p>
+ * Modules are reference counted, but a module nothing references is kept until {@link #trim()} is called, so
+ * pipelines that are destroyed and rebuilt, like on a swap chain format change, reuse the module instead of loading
+ * and parsing the code again. Resources are only read the first time their path is acquired.
+ * <p>
+ * Pipelines are compiled on background threads, so every method is synchronized.
+ */
+public class ShaderModuleCache {
+	private final VkDevice device;
+	private final Map<HashCode, Entry> entries = new HashMap<>();
+	private final Map<Long, Entry> entriesByModule = new HashMap<>();
+	// resources are part of the application, so their contents never change while it runs
+	private final Map<String, HashCode> resourceHashes = new HashMap<>();
+
+	public ShaderModuleCache(VkDevice device) {
+		this.device = device;
+	}
+
+	/**
+	 * Acquires the module for a SPIR-V resource of this application, loading it if no module with its code exists.
+	 */
+	public synchronized long acquire(String resourcePath) throws IOException {
+		HashCode hash = resourceHashes.get(resourcePath);
+		if (hash != null) {
+			Entry entry = entries.get(hash);
+			if (entry != null) {
+				entry.references++;
+				return entry.module;
+			}
+		}
+
+		URL url = ShaderModuleCache.class.getResource(resourcePath);
+		if (url == null) {
+			throw new IOException("Missing resource: " + resourcePath);
+		}
+
+		try (ResourceBuffer code = BufferUtils.load(url)) {
+			long module = acquire(code.getBuffer());
+			resourceHashes.put(resourcePath, entriesByModule.get(module).hash);
+			return module;
+		}
+	}
+
+	/**
+	 * Acquires the module for some SPIR-V code, creating it if no module with the same code exists. The code is not
+	 * retained.
+	 */
+	public synchronized long acquire(ByteBuffer code) {
+		HashCode hash = Hashing.sha256().hashBytes(code.duplicate());
+
+		Entry entry = entries.get(hash);
+		if (entry == null) {
+			entry = new Entry(hash, createShaderModule(code));
+			entries.put(hash, entry);
+			entriesByModule.put(entry.module, entry);
+		}
+
+		entry.references++;
+		return entry.module;
+	}
+
+	/**
+	 * Drops one reference to a module. The module stays alive until the cache is {@link #trim() trimmed}.
+	 */
+	public synchronized void release(long module) {
+		Entry entry = entriesByModule.get(module);
+		if (entry == null || entry.references == 0) {
+			throw new IllegalArgumentException("Shader module is not referenced by the cache");
+		}
+
+		entry.references--;
+	}
+
+	/**
+	 * Destroys every module nothing references anymore.
+	 *
+	 * @return the number of modules destroyed.
+	 */
+	public synchronized int trim() {
+		int destroyed = 0;
+		for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+			Entry entry = iterator.next();
+			if (entry.references == 0) {
+				iterator.remove();
+				entriesByModule.remove(entry.module);
+				vkDestroyShaderModule(device, entry.module, null);
+				destroyed++;
+			}
+		}
+
+		resourceHashes.values().removeIf(hash -> !entries.containsKey(hash));
+		return destroyed;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Destroys every module, whether it is still referenced or not.
+	 */
+	public synchronized void destroy() {
+		for (Entry entry : entries.values()) {
+			vkDestroyShaderModule(device, entry.module, null);
+		}
+		entries.clear();
+		entriesByModule.clear();
+		resourceHashes.clear();
+	}
+
+	private long createShaderModule(ByteBuffer code) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkShaderModuleCreateInfo createInfo = VkShaderModuleCreateInfo.callocStack(stack);
+			createInfo.sType(VK_STRUCTURE_TYPE_SHADER_MODULE_CREATE_INFO);
+			createInfo.pCode(code);
+
+			LongBuffer shaderModuleBuffer = stack.mallocLong(1);
+			if (vkCreateShaderModule(device, createInfo, null, shaderModuleBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create shader module");
+			}
+
+			return shaderModuleBuffer.get(0);
+		}
+	}
+
+	private static class Entry {
+		private final HashCode hash;
+		private final long module;
+		private int references = 0;
+
+		private Entry(HashCode hash, long module) {
+			this.hash = hash;
+			this.module = module;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The shader variants compiled at build time, keyed by shader and the set of defines each was compiled with.
+ * <p>
+ * The manifest is written by the build's SpirvCompile task. Each line holds a shader path such as
+ * <code>com/kneelawk/hellovulkan/simple.vert</code>, the comma separated defines of one variant and the resource path
+ * of that variant's module, separated by tabs.
+ */
+public class ShaderVariantManifest {
+	public static final String RESOURCE_NAME = "/shader-variants.txt";
+
+	private static final Joiner DEFINE_JOINER = Joiner.on(',');
+	private static final Splitter DEFINE_SPLITTER = Splitter.on(',').omitEmptyStrings();
+
+	// variant key (shader path plus sorted defines) -> module resource path
+	private final Map<String, String> modules = new HashMap<>();
+	private final Map<String, SortedSet<String>> togglesByShader = new HashMap<>();
+
+	private ShaderVariantManifest() {
+	}
+
+	public static ShaderVariantManifest load(URL url) throws IOException {
+		try (Reader reader = new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)) {
+			return parse(reader);
+		}
+	}
+
+	/**
+	 * Loads the manifest the build puts at the root of the application's resources.
+	 */
+	public static ShaderVariantManifest loadDefault() throws IOException {
+		URL url = ShaderVariantManifest.class.getResource(RESOURCE_NAME);
+		if (url == null) {
+			throw new IOException("Missing resource: " + RESOURCE_NAME);
+		}
+
+		return load(url);
+	}
+
+	public static ShaderVariantManifest parse(Reader manifestReader) throws IOException {
+		ShaderVariantManifest manifest = new ShaderVariantManifest();
+
+		BufferedReader reader = new BufferedReader(manifestReader);
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+
+			String[] fields = line.split("\t", -1);
+			if (fields.length != 3) {
+				throw new IOException("Malformed shader variant manifest line " + lineNumber + ": " + line);
+			}
+
+			SortedSet<String> defines = ImmutableSortedSet.copyOf(DEFINE_SPLITTER.split(fields[1]));
+			manifest.modules.put(key(fields[0], defines), fields[2]);
+			manifest.togglesByShader.computeIfAbsent(fields[0], shader -> new TreeSet<>()).addAll(defines);
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * Finds the module for a shader compiled with a set of features. Features the shader does not declare are
+	 * ignored, so one feature set can be used to look up every shader.
+	 *
+	 * @return the absolute resource path of the variant's module.
+	 */
+	public String resolve(String shader, Set<String> features) {
+		SortedSet<String> toggles = togglesByShader.get(shader);
+		if (toggles == null) {
+			throw new IllegalArgumentException("No variants of " + shader + " in the manifest");
+		}
+
+		SortedSet<String> defines = new TreeSet<>(features);
+		defines.retainAll(toggles);
+
+		String module = modules.get(key(shader, defines));
+		if (module == null) {
+			throw new IllegalArgumentException("No variant of " + shader + " with " + defines + " in the manifest");
+		}
+
+		return "/" + module;
+	}
+
+	/**
+	 * @return the feature toggles a shader declares, or an empty set if it is not in the manifest.
+	 */
+	public SortedSet<String> getToggles(String shader) {
+		return Collections.unmodifiableSortedSet(togglesByShader.getOrDefault(shader, new TreeSet<>()));
+	}
+
+	public Set<String> getShaders() {
+		return Collections.unmodifiableSet(togglesByShader.keySet());
+	}
+
+	public int getVariantCount() {
+		return modules.size();
+	}
+
+	private static String key(String shader, SortedSet<String> defines) {
+		return shader + "\t" + DEFINE_JOINER.join(defines);
+	}
+}
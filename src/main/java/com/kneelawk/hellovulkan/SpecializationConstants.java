@@ -0,0 +1,136 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableList;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkSpecializationInfo;
+import org.lwjgl.vulkan.VkSpecializationMapEntry;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Values for a shader's <code>constant_id</code> constants, which are baked into a pipeline when it is created so one
+ * shader module can be specialized into many pipelines.
+ * <p>
+ * Every constant is 4 bytes, which covers the int, uint, float and bool constants GLSL allows.
+ */
+public class SpecializationConstants {
+	public static final SpecializationConstants NONE = builder().build();
+
+	private static final int CONSTANT_SIZE = 4;
+
+	private final ImmutableList<Constant> constants;
+
+	private SpecializationConstants(ImmutableList<Constant> constants) {
+		this.constants = constants;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public boolean isEmpty() {
+		return constants.isEmpty();
+	}
+
+	public int size() {
+		return constants.size();
+	}
+
+	/**
+	 * @return the specialization info for a shader stage, or null if there are no constants.
+	 */
+	public VkSpecializationInfo toSpecializationInfo(MemoryStack stack) {
+		if (constants.isEmpty()) {
+			return null;
+		}
+
+		VkSpecializationMapEntry.Buffer mapEntries = VkSpecializationMapEntry.callocStack(constants.size(), stack);
+		ByteBuffer data = stack.malloc(constants.size() * CONSTANT_SIZE);
+		for (int i = 0; i < constants.size(); i++) {
+			Constant constant = constants.get(i);
+			mapEntries.get(i)
+					.constantID(constant.id)
+					.offset(i * CONSTANT_SIZE)
+					.size(CONSTANT_SIZE);
+			data.putInt(i * CONSTANT_SIZE, constant.bits);
+		}
+
+		VkSpecializationInfo specializationInfo = VkSpecializationInfo.callocStack(stack);
+		specializationInfo.pMapEntries(mapEntries);
+		specializationInfo.pData(data);
+		return specializationInfo;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		SpecializationConstants that = (SpecializationConstants) o;
+		return constants.equals(that.constants);
+	}
+
+	@Override
+	public int hashCode() {
+		return constants.hashCode();
+	}
+
+	public static class Builder {
+		private final List<Constant> constants = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		public Builder constant(int id, int value) {
+			for (Constant constant : constants) {
+				if (constant.id == id) {
+					throw new IllegalArgumentException("Specialization constant " + id + " is already set");
+				}
+			}
+
+			constants.add(new Constant(id, value));
+			return this;
+		}
+
+		public Builder constant(int id, float value) {
+			return constant(id, Float.floatToRawIntBits(value));
+		}
+
+		/**
+		 * Booleans are specialized as 32-bit values, like SPIR-V's OpSpecConstantTrue and OpSpecConstantFalse
+		 * expect.
+		 */
+		public Builder constant(int id, boolean value) {
+			return constant(id, value ? 1 : 0);
+		}
+
+		public SpecializationConstants build() {
+			return new SpecializationConstants(ImmutableList.copyOf(constants));
+		}
+	}
+
+	private static class Constant {
+		private final int id;
+		private final int bits;
+
+		private Constant(int id, int bits) {
+			this.id = id;
+			this.bits = bits;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Constant that = (Constant) o;
+			return id == that.id && bits == that.bits;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(id, bits);
+		}
+	}
+}
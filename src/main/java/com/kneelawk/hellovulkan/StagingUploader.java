@@ -0,0 +1,297 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableSet;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Uploads data to device local buffers through one persistently mapped staging ring.
+ * <p>
+ * Uploads are only recorded as copy regions until {@link #flush()} is called, which submits all of them to the
+ * transfer queue in one command buffer. Each submit has a fence that tells us when its part of the ring can be reused,
+ * so nothing ever waits for the whole queue to go idle.
+ */
+public class StagingUploader {
+	private static final int SUBMIT_SLOT_COUNT = 8;
+	private static final long UPLOAD_ALIGNMENT = 16;
+
+	private final VkDevice device;
+	private final VkQueue transferQueue;
+	private final DeviceBuffer ringBuffer;
+	private final RingBufferAllocator ring;
+	private final long ringAddress;
+
+	private final long commandPool;
+	private final VkCommandBuffer[] commandBuffers = new VkCommandBuffer[SUBMIT_SLOT_COUNT];
+	private final long[] fences = new long[SUBMIT_SLOT_COUNT];
+	private final long[] semaphores = new long[SUBMIT_SLOT_COUNT];
+	// serial of the submit currently using each slot, 0 if the slot is free
+	private final long[] slotSerials = new long[SUBMIT_SLOT_COUNT];
+	private int nextSlot = 0;
+	private long nextSerial = 1;
+
+	// pending copy regions, stored as (dstBuffer, srcOffset, dstOffset, size) quadruples
+	private long[] pendingCopies = new long[64 * 4];
+	private int pendingCopyCount = 0;
+
+	public StagingUploader(VkDevice device, DeviceMemoryAllocator allocator, VkQueue transferQueue, int transferFamily,
+						   long capacity) {
+		this.device = device;
+		this.transferQueue = transferQueue;
+
+		ringBuffer = DeviceBuffer.create(device, allocator, capacity, VK_BUFFER_USAGE_TRANSFER_SRC_BIT,
+				VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT, ImmutableSet.of(transferFamily));
+		ring = new RingBufferAllocator(capacity);
+		ringAddress = ringBuffer.getMappedAddress();
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkCommandPoolCreateInfo commandPoolCreateInfo = VkCommandPoolCreateInfo.callocStack(stack);
+			commandPoolCreateInfo.sType(VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO);
+			commandPoolCreateInfo.queueFamilyIndex(transferFamily);
+			commandPoolCreateInfo.flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT | VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT);
+
+			LongBuffer handleBuffer = stack.mallocLong(1);
+			if (vkCreateCommandPool(device, commandPoolCreateInfo, null, handleBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create staging command pool");
+			}
+			commandPool = handleBuffer.get(0);
+
+			VkCommandBufferAllocateInfo allocateInfo = VkCommandBufferAllocateInfo.callocStack(stack);
+			allocateInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
+			allocateInfo.level(VK_COMMAND_BUFFER_LEVEL_PRIMARY);
+			allocateInfo.commandPool(commandPool);
+			allocateInfo.commandBufferCount(SUBMIT_SLOT_COUNT);
+
+			PointerBuffer commandBufferBuffer = stack.mallocPointer(SUBMIT_SLOT_COUNT);
+			if (vkAllocateCommandBuffers(device, allocateInfo, commandBufferBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to allocate staging command buffers");
+			}
+
+			VkFenceCreateInfo fenceCreateInfo = VkFenceCreateInfo.callocStack(stack);
+			fenceCreateInfo.sType(VK_STRUCTURE_TYPE_FENCE_CREATE_INFO);
+
+			VkSemaphoreCreateInfo semaphoreCreateInfo = VkSemaphoreCreateInfo.callocStack(stack);
+			semaphoreCreateInfo.sType(VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO);
+
+			for (int i = 0; i < SUBMIT_SLOT_COUNT; i++) {
+				commandBuffers[i] = new VkCommandBuffer(commandBufferBuffer.get(i), device);
+
+				if (vkCreateFence(device, fenceCreateInfo, null, handleBuffer) != VK_SUCCESS) {
+					throw new RuntimeException("Failed to create staging fence");
+				}
+				fences[i] = handleBuffer.get(0);
+
+				if (vkCreateSemaphore(device, semaphoreCreateInfo, null, handleBuffer) != VK_SUCCESS) {
+					throw new RuntimeException("Failed to create staging semaphore");
+				}
+				semaphores[i] = handleBuffer.get(0);
+			}
+		}
+	}
+
+	/**
+	 * Copies data into the staging ring and queues a copy of it into the destination buffer.
+	 */
+	public void upload(ByteBuffer data, long dstBuffer, long dstOffset) {
+		upload(memAddress(data), data.remaining(), dstBuffer, dstOffset);
+	}
+
+	public void upload(long srcAddress, long size, long dstBuffer, long dstOffset) {
+		// uploads bigger than half the ring are split so they never have to wait for the whole ring to drain
+		long maxChunk = Math.max(ring.getCapacity() / 2, 1);
+		for (long done = 0; done < size; ) {
+			long chunk = Math.min(size - done, maxChunk);
+			memCopy(srcAddress + done, stage(chunk, dstBuffer, dstOffset + done), chunk);
+			done += chunk;
+		}
+	}
+
+	/**
+	 * Reserves space in the staging ring for a copy into the destination buffer, so callers can write their data in
+	 * place instead of copying it in.
+	 *
+	 * @return the host address the data must be written to before the next {@link #flush()}.
+	 */
+	public long stage(long size, long dstBuffer, long dstOffset) {
+		if (size > ring.getCapacity()) {
+			throw new IllegalArgumentException("Staged upload of " + size + " bytes does not fit in a staging ring of "
+					+ ring.getCapacity() + " bytes, use upload to split it");
+		}
+
+		long offset = ring.allocate(size, UPLOAD_ALIGNMENT);
+		while (offset < 0) {
+			reclaim();
+			offset = ring.allocate(size, UPLOAD_ALIGNMENT);
+
+			if (offset < 0) {
+				// the ring is full of data that is either unsubmitted or still in flight. Submitting without a
+				// semaphore is fine here because the semaphore of the next flush also covers every earlier submit.
+				if (!ring.hasPendingSegments()) {
+					if (ring.getUsedBytes() == 0) {
+						// an empty ring always fits an allocation no bigger than it, so this can never succeed
+						throw new IllegalStateException("Failed to allocate " + size + " bytes from an empty staging ring");
+					}
+					submit(false);
+				}
+				waitForOldestSubmit();
+			}
+		}
+
+		addPendingCopy(dstBuffer, offset, dstOffset, size);
+
+		return ringAddress + offset;
+	}
+
+	/**
+	 * Submits every queued copy in one batch.
+	 *
+	 * @return a semaphore that is signaled when the copies complete and that must be waited on by the next submit that
+	 * reads the uploaded data, or {@code VK_NULL_HANDLE} if there was nothing to upload.
+	 */
+	public long flush() {
+		reclaim();
+		return submit(true);
+	}
+
+	private long submit(boolean signalSemaphore) {
+		if (pendingCopyCount == 0) {
+			return VK_NULL_HANDLE;
+		}
+
+		int slot = nextSlot;
+		if (slotSerials[slot] != 0) {
+			vkWaitForFences(device, fences[slot], true, -1L);
+			reclaim();
+		}
+		nextSlot = (nextSlot + 1) % SUBMIT_SLOT_COUNT;
+
+		long serial = nextSerial++;
+		VkCommandBuffer commandBuffer = commandBuffers[slot];
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.callocStack(stack);
+			beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+			beginInfo.flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+
+			if (vkBeginCommandBuffer(commandBuffer, beginInfo) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to begin recording a staging command buffer");
+			}
+
+			recordPendingCopies(commandBuffer);
+
+			if (vkEndCommandBuffer(commandBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to record a staging command buffer");
+			}
+
+			VkSubmitInfo submitInfo = VkSubmitInfo.callocStack(stack);
+			submitInfo.sType(VK_STRUCTURE_TYPE_SUBMIT_INFO);
+			submitInfo.pCommandBuffers(stack.pointers(commandBuffer));
+			if (signalSemaphore) {
+				submitInfo.pSignalSemaphores(stack.longs(semaphores[slot]));
+			}
+
+			vkResetFences(device, fences[slot]);
+			if (vkQueueSubmit(transferQueue, submitInfo, fences[slot]) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to submit staging copies");
+			}
+		}
+
+		slotSerials[slot] = serial;
+		ring.endSegment(serial);
+		pendingCopyCount = 0;
+
+		return signalSemaphore ? semaphores[slot] : VK_NULL_HANDLE;
+	}
+
+	private void recordPendingCopies(VkCommandBuffer commandBuffer) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkBufferCopy.Buffer regions = VkBufferCopy.mallocStack(pendingCopyCount, stack);
+
+			// consecutive uploads to the same buffer share one vkCmdCopyBuffer call
+			int runStart = 0;
+			while (runStart < pendingCopyCount) {
+				long dstBuffer = pendingCopies[runStart * 4];
+				int runEnd = runStart;
+				regions.clear();
+				while (runEnd < pendingCopyCount && pendingCopies[runEnd * 4] == dstBuffer) {
+					VkBufferCopy region = regions.get();
+					region.srcOffset(pendingCopies[runEnd * 4 + 1]);
+					region.dstOffset(pendingCopies[runEnd * 4 + 2]);
+					region.size(pendingCopies[runEnd * 4 + 3]);
+					runEnd++;
+				}
+				regions.flip();
+
+				vkCmdCopyBuffer(commandBuffer, ringBuffer.getBuffer(), dstBuffer, regions);
+				runStart = runEnd;
+			}
+		}
+	}
+
+	private void addPendingCopy(long dstBuffer, long srcOffset, long dstOffset, long size) {
+		if ((pendingCopyCount + 1) * 4 > pendingCopies.length) {
+			pendingCopies = Arrays.copyOf(pendingCopies, pendingCopies.length * 2);
+		}
+
+		int base = pendingCopyCount * 4;
+		pendingCopies[base] = dstBuffer;
+		pendingCopies[base + 1] = srcOffset;
+		pendingCopies[base + 2] = dstOffset;
+		pendingCopies[base + 3] = size;
+		pendingCopyCount++;
+	}
+
+	/**
+	 * Releases the ring segments of every submit whose fence has signaled.
+	 */
+	private void reclaim() {
+		long oldestBusySerial = nextSerial;
+		for (int i = 0; i < SUBMIT_SLOT_COUNT; i++) {
+			if (slotSerials[i] != 0) {
+				if (vkGetFenceStatus(device, fences[i]) == VK_SUCCESS) {
+					slotSerials[i] = 0;
+				} else {
+					oldestBusySerial = Math.min(oldestBusySerial, slotSerials[i]);
+				}
+			}
+		}
+
+		// submits are not guaranteed to complete in order, so only release up to the oldest one still in flight
+		ring.release(oldestBusySerial - 1);
+	}
+
+	private void waitForOldestSubmit() {
+		long oldestSerial = ring.getOldestPendingTag();
+		for (int i = 0; i < SUBMIT_SLOT_COUNT; i++) {
+			if (slotSerials[i] == oldestSerial) {
+				vkWaitForFences(device, fences[i], true, -1L);
+				reclaim();
+				return;
+			}
+		}
+	}
+
+	public void destroy() {
+		for (int i = 0; i < SUBMIT_SLOT_COUNT; i++) {
+			if (slotSerials[i] != 0) {
+				vkWaitForFences(device, fences[i], true, -1L);
+			}
+		}
+
+		for (int i = 0; i < SUBMIT_SLOT_COUNT; i++) {
+			vkDestroyFence(device, fences[i], null);
+			vkDestroySemaphore(device, semaphores[i], null);
+		}
+
+		vkDestroyCommandPool(device, commandPool, null);
+		ringBuffer.destroy();
+	}
+}
@@ -0,0 +1,94 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * A fixed number of descriptor sets for a {@link ComputePipeline}, allocated from a pool sized for exactly that many
+ * storage buffer bindings.
+ */
+public class StorageBufferDescriptors {
+	private final VkDevice device;
+	private final long descriptorPool;
+	private final long[] descriptorSets;
+
+	public StorageBufferDescriptors(VkDevice device, ComputePipeline pipeline, int setCount) {
+		this.device = device;
+
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkDescriptorPoolSize.Buffer poolSizes = VkDescriptorPoolSize.callocStack(1, stack);
+			poolSizes.type(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER);
+			poolSizes.descriptorCount(setCount * pipeline.getStorageBufferCount());
+
+			VkDescriptorPoolCreateInfo poolCreateInfo = VkDescriptorPoolCreateInfo.callocStack(stack);
+			poolCreateInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_POOL_CREATE_INFO);
+			poolCreateInfo.maxSets(setCount);
+			poolCreateInfo.pPoolSizes(poolSizes);
+
+			LongBuffer poolBuffer = stack.mallocLong(1);
+			if (vkCreateDescriptorPool(device, poolCreateInfo, null, poolBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to create storage buffer descriptor pool");
+			}
+			descriptorPool = poolBuffer.get(0);
+
+			LongBuffer setLayouts = stack.mallocLong(setCount);
+			for (int i = 0; i < setCount; i++) {
+				setLayouts.put(i, pipeline.getDescriptorSetLayout());
+			}
+
+			VkDescriptorSetAllocateInfo allocateInfo = VkDescriptorSetAllocateInfo.callocStack(stack);
+			allocateInfo.sType(VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO);
+			allocateInfo.descriptorPool(descriptorPool);
+			allocateInfo.pSetLayouts(setLayouts);
+
+			LongBuffer setBuffer = stack.mallocLong(setCount);
+			if (vkAllocateDescriptorSets(device, allocateInfo, setBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to allocate storage buffer descriptor sets");
+			}
+
+			descriptorSets = new long[setCount];
+			setBuffer.get(descriptorSets);
+		}
+	}
+
+	/**
+	 * Points one binding of a set at a range of a storage buffer. The set must not be in use by the GPU.
+	 */
+	public void bindBuffer(int set, int binding, long buffer, long offset, long range) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkDescriptorBufferInfo.Buffer bufferInfo = VkDescriptorBufferInfo.callocStack(1, stack);
+			bufferInfo.buffer(buffer);
+			bufferInfo.offset(offset);
+			bufferInfo.range(range);
+
+			VkWriteDescriptorSet.Buffer write = VkWriteDescriptorSet.callocStack(1, stack);
+			write.sType(VK_STRUCTURE_TYPE_WRITE_DESCRIPTOR_SET);
+			write.dstSet(descriptorSets[set]);
+			write.dstBinding(binding);
+			write.dstArrayElement(0);
+			write.descriptorType(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER);
+			write.pBufferInfo(bufferInfo);
+
+			vkUpdateDescriptorSets(device, write, null);
+		}
+	}
+
+	public long get(int set) {
+		return descriptorSets[set];
+	}
+
+	public int size() {
+		return descriptorSets.length;
+	}
+
+	/**
+	 * Frees every set along with the pool.
+	 */
+	public void destroy() {
+		vkDestroyDescriptorPool(device, descriptorPool, null);
+	}
+}
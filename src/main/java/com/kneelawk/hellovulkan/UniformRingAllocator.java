@@ -0,0 +1,85 @@
+package com.kneelawk.hellovulkan;
+
+/**
+ * Offset bookkeeping for a uniform buffer that is bound once with a fixed range and addressed with
+ * <code>UNIFORM_BUFFER_DYNAMIC</code> offsets, so new per-frame or per-draw data never needs a new descriptor set.
+ * <p>
+ * Every offset is a multiple of the device's <code>minUniformBufferOffsetAlignment</code> and leaves a whole range of
+ * the buffer after it, as Vulkan requires the dynamic offset plus the bound range to stay inside the buffer.
+ */
+public class UniformRingAllocator {
+	private final long bufferSize;
+	private final long range;
+	private final long alignment;
+	private final RingBufferAllocator ring;
+
+	/**
+	 * @param range              the range the buffer's descriptors are written with, which is the most any single
+	 *                           allocation can use.
+	 * @param minOffsetAlignment the device's minUniformBufferOffsetAlignment, which is always a power of two.
+	 */
+	public UniformRingAllocator(long bufferSize, long range, long minOffsetAlignment) {
+		if (minOffsetAlignment <= 0 || Long.bitCount(minOffsetAlignment) != 1) {
+			throw new IllegalArgumentException("Uniform offset alignment " + minOffsetAlignment + " is not a power of two");
+		}
+		if (range <= 0) {
+			throw new IllegalArgumentException("Uniform range must be positive");
+		}
+		// dynamic offsets are 32 bit
+		if (bufferSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Uniform ring of " + bufferSize + " bytes cannot be addressed with dynamic offsets");
+		}
+		if (bufferSize < 2 * range) {
+			throw new IllegalArgumentException("Uniform ring of " + bufferSize + " bytes is too small for a range of "
+					+ range + " bytes");
+		}
+
+		this.bufferSize = bufferSize;
+		this.range = range;
+		this.alignment = minOffsetAlignment;
+		// the last range of the buffer is never handed out, so every offset has a whole range after it
+		ring = new RingBufferAllocator(bufferSize - range);
+	}
+
+	/**
+	 * @param size at most the ring's range.
+	 * @return the dynamic offset of the new allocation, or -1 if the frames still in flight use too much of the ring.
+	 */
+	public int allocate(long size) {
+		if (size > range) {
+			throw new IllegalArgumentException("Uniform block of " + size + " bytes does not fit in a range of " + range + " bytes");
+		}
+
+		return (int) ring.allocate(size, alignment);
+	}
+
+	/**
+	 * Marks everything allocated since the last call as belonging to the given frame.
+	 */
+	public void endFrame(long frameNumber) {
+		ring.endSegment(frameNumber);
+	}
+
+	/**
+	 * Makes the space of every frame up to and including the given one available again. Frames must complete in order.
+	 */
+	public void frameCompleted(long frameNumber) {
+		ring.release(frameNumber);
+	}
+
+	public long getBufferSize() {
+		return bufferSize;
+	}
+
+	public long getRange() {
+		return range;
+	}
+
+	public long getAlignment() {
+		return alignment;
+	}
+
+	public long getUsedBytes() {
+		return ring.getUsedBytes();
+	}
+}
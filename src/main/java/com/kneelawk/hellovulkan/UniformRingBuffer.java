@@ -0,0 +1,66 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableSet;
+import org.lwjgl.vulkan.VkDevice;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * A persistently mapped uniform buffer the CPU writes per-frame data into. It is bound through
+ * <code>UNIFORM_BUFFER_DYNAMIC</code> descriptors with a fixed range, and each block is selected by the dynamic offset
+ * returned by {@link #allocate(long)}.
+ */
+public class UniformRingBuffer {
+	private final DeviceBuffer buffer;
+	private final UniformRingAllocator ring;
+	private final long address;
+
+	/**
+	 * @param range              the largest uniform block the shaders read through this buffer.
+	 * @param minOffsetAlignment the device's minUniformBufferOffsetAlignment.
+	 */
+	public UniformRingBuffer(VkDevice device, DeviceMemoryAllocator allocator, long capacity, long range,
+							 long minOffsetAlignment, int queueFamily) {
+		ring = new UniformRingAllocator(capacity, range, minOffsetAlignment);
+		buffer = DeviceBuffer.create(device, allocator, capacity, VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT,
+				VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT, ImmutableSet.of(queueFamily));
+		address = buffer.getMappedAddress();
+	}
+
+	/**
+	 * @return the dynamic offset of the new block, or -1 if the frames still in flight use too much of the buffer.
+	 */
+	public int allocate(long size) {
+		return ring.allocate(size);
+	}
+
+	/**
+	 * @return the host address of a dynamic offset returned by {@link #allocate(long)}.
+	 */
+	public long getAddress(int offset) {
+		return address + offset;
+	}
+
+	public void endFrame(long frameNumber) {
+		ring.endFrame(frameNumber);
+	}
+
+	public void frameCompleted(long frameNumber) {
+		ring.frameCompleted(frameNumber);
+	}
+
+	public long getBuffer() {
+		return buffer.getBuffer();
+	}
+
+	/**
+	 * @return the range descriptors for this buffer must be written with.
+	 */
+	public long getRange() {
+		return ring.getRange();
+	}
+
+	public void destroy() {
+		buffer.destroy();
+	}
+}
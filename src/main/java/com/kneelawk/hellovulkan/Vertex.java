@@ -15,6 +15,27 @@ public class Vertex {
 	public static final int POS_OFFSET = 0;
 	public static final int COLOR_OFFSET = 2 * 4;
 
+	public static final int POS_LOCATION = 0;
+	public static final int COLOR_LOCATION = 1;
+
+	/**
+	 * The layout described by SIZEOF, POS_OFFSET and COLOR_OFFSET.
+	 */
+	public static final VertexFormat FORMAT = VertexFormat.builder()
+			.binding(0, VK_VERTEX_INPUT_RATE_VERTEX)
+			.attribute(POS_LOCATION, VertexAttributeType.R32G32_SFLOAT)
+			.attribute(COLOR_LOCATION, VertexAttributeType.R32G32B32_SFLOAT)
+			.build();
+
+	/**
+	 * Half float positions and 8-bit colors, 8 bytes per vertex instead of 20.
+	 */
+	public static final VertexFormat PACKED_FORMAT = VertexFormat.builder()
+			.binding(0, VK_VERTEX_INPUT_RATE_VERTEX)
+			.attribute(POS_LOCATION, VertexAttributeType.R16G16_SFLOAT)
+			.attribute(COLOR_LOCATION, VertexAttributeType.R8G8B8A8_UNORM)
+			.build();
+
 	private Vector2f pos;
 	private Vector3f color;
 
@@ -32,36 +53,11 @@ public class Vertex {
 	}
 
 	public static VkVertexInputBindingDescription getBindingDescription() {
-		MemoryStack stack = MemoryStack.stackGet();
-
-		VkVertexInputBindingDescription bindingDescription = VkVertexInputBindingDescription.callocStack(stack);
-		bindingDescription.binding(0);
-		bindingDescription.stride(SIZEOF);
-		bindingDescription.inputRate(VK_VERTEX_INPUT_RATE_VERTEX);
-
-		return bindingDescription;
+		return FORMAT.getBindingDescriptions(MemoryStack.stackGet()).get(0);
 	}
 
 	public static VkVertexInputAttributeDescription.Buffer getAttributeDescriptions() {
-		MemoryStack stack = MemoryStack.stackGet();
-
-		VkVertexInputAttributeDescription.Buffer attributeDescriptions = VkVertexInputAttributeDescription.callocStack(2, stack);
-
-		attributeDescriptions.position(0);
-		attributeDescriptions.binding(0);
-		attributeDescriptions.location(0);
-		attributeDescriptions.format(VK_FORMAT_R32G32_SFLOAT);
-		attributeDescriptions.offset(POS_OFFSET);
-
-		attributeDescriptions.position(1);
-		attributeDescriptions.binding(0);
-		attributeDescriptions.location(1);
-		attributeDescriptions.format(VK_FORMAT_R32G32B32_SFLOAT);
-		attributeDescriptions.offset(COLOR_OFFSET);
-
-		attributeDescriptions.rewind();
-
-		return attributeDescriptions;
+		return FORMAT.getAttributeDescriptions(MemoryStack.stackGet());
 	}
 
 	public void writeTo(int offset, ByteBuffer buffer) {
@@ -0,0 +1,137 @@
+package com.kneelawk.hellovulkan;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * The Vulkan formats a {@link VertexFormat} attribute can have, along with how to pack floats into them.
+ */
+public enum VertexAttributeType {
+	R32_SFLOAT(VK_FORMAT_R32_SFLOAT, 1, Encoding.FLOAT32),
+	R32G32_SFLOAT(VK_FORMAT_R32G32_SFLOAT, 2, Encoding.FLOAT32),
+	R32G32B32_SFLOAT(VK_FORMAT_R32G32B32_SFLOAT, 3, Encoding.FLOAT32),
+	R32G32B32A32_SFLOAT(VK_FORMAT_R32G32B32A32_SFLOAT, 4, Encoding.FLOAT32),
+	R16G16_SFLOAT(VK_FORMAT_R16G16_SFLOAT, 2, Encoding.FLOAT16),
+	R16G16B16A16_SFLOAT(VK_FORMAT_R16G16B16A16_SFLOAT, 4, Encoding.FLOAT16),
+	R16G16_SNORM(VK_FORMAT_R16G16_SNORM, 2, Encoding.SNORM16),
+	R16G16_UNORM(VK_FORMAT_R16G16_UNORM, 2, Encoding.UNORM16),
+	R8G8B8A8_UNORM(VK_FORMAT_R8G8B8A8_UNORM, 4, Encoding.UNORM8),
+	R8G8B8A8_SNORM(VK_FORMAT_R8G8B8A8_SNORM, 4, Encoding.SNORM8);
+
+	private final int vkFormat;
+	private final int componentCount;
+	private final Encoding encoding;
+
+	VertexAttributeType(int vkFormat, int componentCount, Encoding encoding) {
+		this.vkFormat = vkFormat;
+		this.componentCount = componentCount;
+		this.encoding = encoding;
+	}
+
+	public int getVkFormat() {
+		return vkFormat;
+	}
+
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	public int getComponentSize() {
+		return encoding.size;
+	}
+
+	public int getSize() {
+		return componentCount * encoding.size;
+	}
+
+	/**
+	 * Writes one component of an attribute of this type.
+	 */
+	public void packComponent(long attributeAddress, int component, float value) {
+		long address = attributeAddress + component * encoding.size;
+		switch (encoding) {
+			case FLOAT32:
+				memPutFloat(address, value);
+				break;
+			case FLOAT16:
+				memPutShort(address, floatToHalf(value));
+				break;
+			case UNORM16:
+				memPutShort(address, (short) Math.round(clamp(value, 0.0f, 1.0f) * 65535.0f));
+				break;
+			case SNORM16:
+				memPutShort(address, (short) Math.round(clamp(value, -1.0f, 1.0f) * 32767.0f));
+				break;
+			case UNORM8:
+				memPutByte(address, (byte) Math.round(clamp(value, 0.0f, 1.0f) * 255.0f));
+				break;
+			case SNORM8:
+				memPutByte(address, (byte) Math.round(clamp(value, -1.0f, 1.0f) * 127.0f));
+				break;
+		}
+	}
+
+	private static float clamp(float value, float min, float max) {
+		return value < min ? min : (value > max ? max : value);
+	}
+
+	/**
+	 * Converts a float to an IEEE 754 half, rounding to nearest even.
+	 */
+	public static short floatToHalf(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = (bits >>> 23) & 0xFF;
+		int mantissa = bits & 0x7FFFFF;
+
+		if (exponent == 0xFF) {
+			// infinity or NaN, keeping NaNs quiet
+			return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 | (mantissa >>> 13) : 0));
+		}
+
+		int halfExponent = exponent - 127 + 15;
+		if (halfExponent >= 0x1F) {
+			return (short) (sign | 0x7C00);
+		}
+
+		if (halfExponent <= 0) {
+			if (halfExponent < -10) {
+				return (short) sign;
+			}
+
+			// subnormal half
+			mantissa |= 0x800000;
+			int shift = 14 - halfExponent;
+			int halfMantissa = mantissa >>> shift;
+			int remainder = mantissa & ((1 << shift) - 1);
+			int halfway = 1 << (shift - 1);
+			if (remainder > halfway || (remainder == halfway && (halfMantissa & 1) != 0)) {
+				halfMantissa++;
+			}
+			return (short) (sign | halfMantissa);
+		}
+
+		int half = sign | (halfExponent << 10) | (mantissa >>> 13);
+		int remainder = mantissa & 0x1FFF;
+		if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+			// may carry into the exponent, which correctly rounds up to the next power of two or infinity
+			half++;
+		}
+		return (short) half;
+	}
+
+	private enum Encoding {
+		FLOAT32(4),
+		FLOAT16(2),
+		UNORM16(2),
+		SNORM16(2),
+		UNORM8(1),
+		SNORM8(1);
+
+		private final int size;
+
+		Encoding(int size) {
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableList;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkVertexInputAttributeDescription;
+import org.lwjgl.vulkan.VkVertexInputBindingDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.lwjgl.vulkan.VK10.VK_VERTEX_INPUT_RATE_INSTANCE;
+import static org.lwjgl.vulkan.VK10.VK_VERTEX_INPUT_RATE_VERTEX;
+
+/**
+ * Describes how vertex attributes are laid out across one or more vertex buffer bindings. Offsets and strides are
+ * computed from the attribute types in declaration order.
+ */
+public class VertexFormat {
+	private final ImmutableList<Binding> bindings;
+	private final ImmutableList<Attribute> attributes;
+
+	private VertexFormat(ImmutableList<Binding> bindings, ImmutableList<Attribute> attributes) {
+		this.bindings = bindings;
+		this.attributes = attributes;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public ImmutableList<Binding> getBindings() {
+		return bindings;
+	}
+
+	public ImmutableList<Attribute> getAttributes() {
+		return attributes;
+	}
+
+	public Binding getBinding(int binding) {
+		for (Binding b : bindings) {
+			if (b.binding == binding) {
+				return b;
+			}
+		}
+
+		throw new IllegalArgumentException("No binding " + binding + " in vertex format");
+	}
+
+	public int getStride(int binding) {
+		return getBinding(binding).stride;
+	}
+
+	public VkVertexInputBindingDescription.Buffer getBindingDescriptions(MemoryStack stack) {
+		VkVertexInputBindingDescription.Buffer bindingDescriptions = VkVertexInputBindingDescription.callocStack(bindings.size(), stack);
+
+		for (int i = 0; i < bindings.size(); i++) {
+			Binding binding = bindings.get(i);
+			bindingDescriptions.position(i);
+			bindingDescriptions.binding(binding.binding);
+			bindingDescriptions.stride(binding.stride);
+			bindingDescriptions.inputRate(binding.inputRate);
+		}
+
+		bindingDescriptions.rewind();
+
+		return bindingDescriptions;
+	}
+
+	public VkVertexInputAttributeDescription.Buffer getAttributeDescriptions(MemoryStack stack) {
+		VkVertexInputAttributeDescription.Buffer attributeDescriptions = VkVertexInputAttributeDescription.callocStack(attributes.size(), stack);
+
+		for (int i = 0; i < attributes.size(); i++) {
+			Attribute attribute = attributes.get(i);
+			attributeDescriptions.position(i);
+			attributeDescriptions.binding(attribute.binding);
+			attributeDescriptions.location(attribute.location);
+			attributeDescriptions.format(attribute.type.getVkFormat());
+			attributeDescriptions.offset(attribute.offset);
+		}
+
+		attributeDescriptions.rewind();
+
+		return attributeDescriptions;
+	}
+
+	/**
+	 * Creates a builder that already declares every binding and attribute of this format, so more can be added.
+	 */
+	public Builder toBuilder() {
+		Builder builder = new Builder();
+		for (Binding binding : bindings) {
+			builder.binding(binding.binding, binding.inputRate);
+			for (Attribute attribute : binding.attributes) {
+				builder.attribute(attribute.location, attribute.type);
+			}
+		}
+		return builder;
+	}
+
+	/**
+	 * Creates a writer that packs vertices for one binding of this format.
+	 */
+	public VertexWriter writer(int binding) {
+		return new VertexWriter(getBinding(binding));
+	}
+
+	/**
+	 * Formats are equal when they declare the same bindings and attributes in the same order, so they can be part of
+	 * a pipeline cache key.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		VertexFormat that = (VertexFormat) o;
+		return bindings.equals(that.bindings);
+	}
+
+	@Override
+	public int hashCode() {
+		return bindings.hashCode();
+	}
+
+	public static class Binding {
+		private final int binding;
+		private final int inputRate;
+		private final int stride;
+		private final ImmutableList<Attribute> attributes;
+		// indexed by location, null for locations in other bindings
+		private final Attribute[] attributesByLocation;
+
+		private Binding(int binding, int inputRate, int stride, ImmutableList<Attribute> attributes) {
+			this.binding = binding;
+			this.inputRate = inputRate;
+			this.stride = stride;
+			this.attributes = attributes;
+
+			int maxLocation = -1;
+			for (Attribute attribute : attributes) {
+				maxLocation = Math.max(maxLocation, attribute.location);
+			}
+			attributesByLocation = new Attribute[maxLocation + 1];
+			for (Attribute attribute : attributes) {
+				attributesByLocation[attribute.location] = attribute;
+			}
+		}
+
+		public int getBinding() {
+			return binding;
+		}
+
+		public int getInputRate() {
+			return inputRate;
+		}
+
+		public int getStride() {
+			return stride;
+		}
+
+		public ImmutableList<Attribute> getAttributes() {
+			return attributes;
+		}
+
+		Attribute getAttributeAtLocation(int location) {
+			Attribute attribute = location < attributesByLocation.length ? attributesByLocation[location] : null;
+			if (attribute == null) {
+				throw new IllegalArgumentException("No attribute at location " + location + " in binding " + binding);
+			}
+			return attribute;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Binding that = (Binding) o;
+			return binding == that.binding && inputRate == that.inputRate && stride == that.stride
+					&& attributes.equals(that.attributes);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(binding, inputRate, stride, attributes);
+		}
+	}
+
+	public static class Attribute {
+		private final int location;
+		private final int binding;
+		private final VertexAttributeType type;
+		private final int offset;
+
+		private Attribute(int location, int binding, VertexAttributeType type, int offset) {
+			this.location = location;
+			this.binding = binding;
+			this.type = type;
+			this.offset = offset;
+		}
+
+		public int getLocation() {
+			return location;
+		}
+
+		public int getBinding() {
+			return binding;
+		}
+
+		public VertexAttributeType getType() {
+			return type;
+		}
+
+		public int getOffset() {
+			return offset;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Attribute that = (Attribute) o;
+			return location == that.location && binding == that.binding && offset == that.offset && type == that.type;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(location, binding, type, offset);
+		}
+	}
+
+	public static class Builder {
+		private final List<PendingBinding> bindings = new ArrayList<>();
+		private final List<Integer> usedLocations = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		public Builder binding(int binding, int inputRate) {
+			if (inputRate != VK_VERTEX_INPUT_RATE_VERTEX && inputRate != VK_VERTEX_INPUT_RATE_INSTANCE) {
+				throw new IllegalArgumentException("Unknown vertex input rate " + inputRate);
+			}
+			for (PendingBinding pending : bindings) {
+				if (pending.binding == binding) {
+					throw new IllegalArgumentException("Binding " + binding + " is already declared");
+				}
+			}
+
+			bindings.add(new PendingBinding(binding, inputRate));
+			return this;
+		}
+
+		/**
+		 * Adds an attribute to the most recently declared binding.
+		 */
+		public Builder attribute(int location, VertexAttributeType type) {
+			if (bindings.isEmpty()) {
+				throw new IllegalStateException("Attributes must be declared after their binding");
+			}
+			if (usedLocations.contains(location)) {
+				throw new IllegalArgumentException("Location " + location + " is already used");
+			}
+
+			usedLocations.add(location);
+			bindings.get(bindings.size() - 1).attributes.add(new PendingAttribute(location, type));
+			return this;
+		}
+
+		public VertexFormat build() {
+			ImmutableList.Builder<Binding> builtBindings = ImmutableList.builder();
+			ImmutableList.Builder<Attribute> allAttributes = ImmutableList.builder();
+
+			for (PendingBinding pending : bindings) {
+				ImmutableList.Builder<Attribute> bindingAttributes = ImmutableList.builder();
+				int offset = 0;
+				int maxAlignment = 1;
+
+				for (PendingAttribute pendingAttribute : pending.attributes) {
+					int alignment = pendingAttribute.type.getComponentSize();
+					maxAlignment = Math.max(maxAlignment, alignment);
+					offset = (int) BlockSubAllocator.alignUp(offset, alignment);
+
+					Attribute attribute = new Attribute(pendingAttribute.location, pending.binding, pendingAttribute.type, offset);
+					bindingAttributes.add(attribute);
+					allAttributes.add(attribute);
+
+					offset += pendingAttribute.type.getSize();
+				}
+
+				int stride = (int) BlockSubAllocator.alignUp(offset, maxAlignment);
+				builtBindings.add(new Binding(pending.binding, pending.inputRate, stride, bindingAttributes.build()));
+			}
+
+			return new VertexFormat(builtBindings.build(), allAttributes.build());
+		}
+
+		private static class PendingBinding {
+			private final int binding;
+			private final int inputRate;
+			private final List<PendingAttribute> attributes = new ArrayList<>();
+
+			private PendingBinding(int binding, int inputRate) {
+				this.binding = binding;
+				this.inputRate = inputRate;
+			}
+		}
+
+		private static class PendingAttribute {
+			private final int location;
+			private final VertexAttributeType type;
+
+			private PendingAttribute(int location, VertexAttributeType type) {
+				this.location = location;
+				this.type = type;
+			}
+		}
+	}
+}
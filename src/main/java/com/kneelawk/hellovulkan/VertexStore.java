@@ -0,0 +1,206 @@
+package com.kneelawk.hellovulkan;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Growable off-heap array of vertices, packed in the {@link Vertex} layout so it can be copied straight into a mapped
+ * buffer.
+ * <p>
+ * The memory is not managed by the garbage collector, so every store must be {@link #free() freed}.
+ */
+public class VertexStore {
+	private static final int FLOATS_PER_VERTEX = Vertex.SIZEOF / 4;
+
+	private long address;
+	private int capacity;
+	private int count = 0;
+
+	public VertexStore(int initialCapacity) {
+		capacity = Math.max(initialCapacity, 1);
+		address = nmemAllocChecked((long) capacity * Vertex.SIZEOF);
+	}
+
+	public int append(float x, float y, float r, float g, float b) {
+		ensureCapacity(count + 1);
+
+		long vertexAddress = address + (long) count * Vertex.SIZEOF;
+		memPutFloat(vertexAddress + Vertex.POS_OFFSET, x);
+		memPutFloat(vertexAddress + Vertex.POS_OFFSET + 4, y);
+		memPutFloat(vertexAddress + Vertex.COLOR_OFFSET, r);
+		memPutFloat(vertexAddress + Vertex.COLOR_OFFSET + 4, g);
+		memPutFloat(vertexAddress + Vertex.COLOR_OFFSET + 8, b);
+
+		return count++;
+	}
+
+	public int append(Vertex vertex) {
+		return append(vertex.getPos().x, vertex.getPos().y, vertex.getColor().x, vertex.getColor().y,
+				vertex.getColor().z);
+	}
+
+	/**
+	 * Appends vertices that are already interleaved as x, y, r, g, b.
+	 */
+	public void appendAll(float[] data, int offset, int vertexCount) {
+		if (offset + vertexCount * FLOATS_PER_VERTEX > data.length) {
+			throw new IndexOutOfBoundsException("Not enough floats for " + vertexCount + " vertices");
+		}
+
+		ensureCapacity(count + vertexCount);
+
+		long dst = address + (long) count * Vertex.SIZEOF;
+		for (int i = 0; i < vertexCount * FLOATS_PER_VERTEX; i++) {
+			memPutFloat(dst + i * 4L, data[offset + i]);
+		}
+
+		count += vertexCount;
+	}
+
+	public void appendAll(Slice slice) {
+		ensureCapacity(count + slice.getVertexCount());
+
+		// slices look up their store's address every time, so this is safe even when the slice points into this store
+		memCopy(slice.getAddress(), address + (long) count * Vertex.SIZEOF, slice.getByteSize());
+		count += slice.getVertexCount();
+	}
+
+	/**
+	 * Appends a copy of one vertex from another store.
+	 */
+	public int appendFrom(VertexStore source, int index) {
+		ensureCapacity(count + 1);
+
+		// growing can move this store, so the source address is only looked up afterwards in case source is this
+		memCopy(source.vertexAddress(index), address + (long) count * Vertex.SIZEOF, Vertex.SIZEOF);
+		return count++;
+	}
+
+	/**
+	 * Returns a view of part of this store. The view stays valid when the store grows, but not when it is cleared or
+	 * freed.
+	 */
+	public Slice slice(int first, int vertexCount) {
+		if (first < 0 || vertexCount < 0 || first + vertexCount > count) {
+			throw new IndexOutOfBoundsException("Slice [" + first + ", " + (first + vertexCount) + ") is out of bounds for "
+					+ count + " vertices");
+		}
+
+		return new Slice(this, first, vertexCount);
+	}
+
+	public Slice all() {
+		return new Slice(this, 0, count);
+	}
+
+	public float getX(int index) {
+		return memGetFloat(vertexAddress(index) + Vertex.POS_OFFSET);
+	}
+
+	public float getY(int index) {
+		return memGetFloat(vertexAddress(index) + Vertex.POS_OFFSET + 4);
+	}
+
+	public float getR(int index) {
+		return memGetFloat(vertexAddress(index) + Vertex.COLOR_OFFSET);
+	}
+
+	public float getG(int index) {
+		return memGetFloat(vertexAddress(index) + Vertex.COLOR_OFFSET + 4);
+	}
+
+	public float getB(int index) {
+		return memGetFloat(vertexAddress(index) + Vertex.COLOR_OFFSET + 8);
+	}
+
+	public void clear() {
+		count = 0;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public long getAddress() {
+		return address;
+	}
+
+	public long getByteSize() {
+		return (long) count * Vertex.SIZEOF;
+	}
+
+	public void copyTo(long dstAddress) {
+		memCopy(address, dstAddress, getByteSize());
+	}
+
+	/**
+	 * Writes every vertex in this store through a writer for another vertex format, converting positions and colors
+	 * into that format's attribute types.
+	 */
+	public void packTo(VertexWriter writer, long dstAddress) {
+		writer.at(dstAddress);
+		for (int i = 0; i < count; i++) {
+			long vertexAddress = address + (long) i * Vertex.SIZEOF;
+			writer.vertex(i);
+			writer.put(Vertex.POS_LOCATION, memGetFloat(vertexAddress + Vertex.POS_OFFSET),
+					memGetFloat(vertexAddress + Vertex.POS_OFFSET + 4));
+			writer.put(Vertex.COLOR_LOCATION, memGetFloat(vertexAddress + Vertex.COLOR_OFFSET),
+					memGetFloat(vertexAddress + Vertex.COLOR_OFFSET + 4), memGetFloat(vertexAddress + Vertex.COLOR_OFFSET + 8));
+		}
+	}
+
+	public void free() {
+		nmemFree(address);
+		address = NULL;
+		capacity = 0;
+		count = 0;
+	}
+
+	public void ensureCapacity(int vertexCount) {
+		if (vertexCount <= capacity) {
+			return;
+		}
+
+		int newCapacity = Math.max(vertexCount, capacity + (capacity >> 1));
+		address = nmemReallocChecked(address, (long) newCapacity * Vertex.SIZEOF);
+		capacity = newCapacity;
+	}
+
+	private long vertexAddress(int index) {
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Vertex " + index + " is out of bounds for " + count + " vertices");
+		}
+		return address + (long) index * Vertex.SIZEOF;
+	}
+
+	public static class Slice {
+		private final VertexStore store;
+		private final int first;
+		private final int vertexCount;
+
+		private Slice(VertexStore store, int first, int vertexCount) {
+			this.store = store;
+			this.first = first;
+			this.vertexCount = vertexCount;
+		}
+
+		public long getAddress() {
+			return store.address + (long) first * Vertex.SIZEOF;
+		}
+
+		public int getFirst() {
+			return first;
+		}
+
+		public int getVertexCount() {
+			return vertexCount;
+		}
+
+		public long getByteSize() {
+			return (long) vertexCount * Vertex.SIZEOF;
+		}
+
+		public void copyTo(long dstAddress) {
+			memCopy(getAddress(), dstAddress, getByteSize());
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.kneelawk.hellovulkan;
+
+/**
+ * Packs vertices for one {@link VertexFormat} binding into memory, converting floats into each attribute's format.
+ * <p>
+ * Components an attribute has but that are not written are filled in the way the shader would see a missing
+ * component: 0 for x, y and z and 1 for w.
+ */
+public class VertexWriter {
+	private final VertexFormat.Binding binding;
+	private long baseAddress;
+	private long vertexAddress;
+
+	VertexWriter(VertexFormat.Binding binding) {
+		this.binding = binding;
+	}
+
+	public int getStride() {
+		return binding.getStride();
+	}
+
+	/**
+	 * Sets the address of the first vertex this writer writes to.
+	 */
+	public VertexWriter at(long address) {
+		baseAddress = address;
+		vertexAddress = address;
+		return this;
+	}
+
+	/**
+	 * Selects the vertex subsequent puts write to.
+	 */
+	public VertexWriter vertex(int index) {
+		vertexAddress = baseAddress + (long) index * binding.getStride();
+		return this;
+	}
+
+	public VertexWriter put(int location, float x) {
+		return put(location, x, 0.0f, 0.0f, 1.0f, 1);
+	}
+
+	public VertexWriter put(int location, float x, float y) {
+		return put(location, x, y, 0.0f, 1.0f, 2);
+	}
+
+	public VertexWriter put(int location, float x, float y, float z) {
+		return put(location, x, y, z, 1.0f, 3);
+	}
+
+	public VertexWriter put(int location, float x, float y, float z, float w) {
+		return put(location, x, y, z, w, 4);
+	}
+
+	private VertexWriter put(int location, float x, float y, float z, float w, int given) {
+		VertexFormat.Attribute attribute = binding.getAttributeAtLocation(location);
+		VertexAttributeType type = attribute.getType();
+		int componentCount = type.getComponentCount();
+		if (given > componentCount) {
+			throw new IllegalArgumentException("Attribute at location " + location + " only has " + componentCount + " components");
+		}
+
+		long address = vertexAddress + attribute.getOffset();
+		type.packComponent(address, 0, x);
+		if (componentCount > 1) {
+			type.packComponent(address, 1, y);
+		}
+		if (componentCount > 2) {
+			type.packComponent(address, 2, z);
+		}
+		if (componentCount > 3) {
+			type.packComponent(address, 3, w);
+		}
+
+		return this;
+	}
+}
@@ -0,0 +1,56 @@
+package com.kneelawk.hellovulkan;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkMemoryAllocateInfo;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * {@link DeviceMemoryAllocator.BlockSource} that allocates real device memory.
+ */
+public class VulkanBlockSource implements DeviceMemoryAllocator.BlockSource {
+	private final VkDevice device;
+
+	public VulkanBlockSource(VkDevice device) {
+		this.device = device;
+	}
+
+	@Override
+	public long allocateBlock(int memoryTypeIndex, long size) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			VkMemoryAllocateInfo allocateInfo = VkMemoryAllocateInfo.callocStack(stack);
+			allocateInfo.sType(VK_STRUCTURE_TYPE_MEMORY_ALLOCATE_INFO);
+			allocateInfo.allocationSize(size);
+			allocateInfo.memoryTypeIndex(memoryTypeIndex);
+
+			LongBuffer memoryBuffer = stack.mallocLong(1);
+			if (vkAllocateMemory(device, allocateInfo, null, memoryBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to allocate device memory block");
+			}
+
+			return memoryBuffer.get(0);
+		}
+	}
+
+	@Override
+	public long mapBlock(long memory, long size) {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			PointerBuffer dataBuffer = stack.mallocPointer(1);
+			if (vkMapMemory(device, memory, 0, VK_WHOLE_SIZE, 0, dataBuffer) != VK_SUCCESS) {
+				throw new RuntimeException("Failed to map device memory block");
+			}
+
+			return dataBuffer.get(0);
+		}
+	}
+
+	@Override
+	public void freeBlock(long memory) {
+		// freeing a mapped block implicitly unmaps it
+		vkFreeMemory(device, memory, null);
+	}
+}
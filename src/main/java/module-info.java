@@ -5,5 +5,6 @@ module com.kneelawk.hellovulkan {
     requires org.joml;
     requires org.lwjgl;
     requires org.lwjgl.glfw;
+    requires org.lwjgl.stb;
     requires org.lwjgl.vulkan;
 }
@@ -0,0 +1,78 @@
+#version 450
+#extension GL_GOOGLE_include_directive : require
+
+#include "random.glsl"
+
+// specialized by the application
+layout(local_size_x_id = 0) in;
+
+struct Particle {
+    vec2 position;
+    vec2 velocity;
+    float angle;
+    float spin;
+    // 0 until the particle has been spawned
+    float alive;
+    float padding;
+};
+
+layout(std430, set = 0, binding = 0) buffer Particles {
+    Particle particles[];
+};
+
+// laid out like the instance vertex binding: a 2x2 transform, an offset and an RGBA8 tint
+layout(std430, set = 0, binding = 1) writeonly buffer Instances {
+    uint instanceWords[];
+};
+
+layout(push_constant) uniform Step {
+    float deltaTime;
+    float size;
+    uint particleCount;
+};
+
+const uint INSTANCE_WORDS = 7;
+
+void main() {
+    uint index = gl_GlobalInvocationID.x;
+    if (index >= particleCount) {
+        return;
+    }
+
+    Particle particle = particles[index];
+    if (particle.alive == 0.0) {
+        float direction = hash(index * 4u) * 6.2831853;
+        float speed = 0.2 + hash(index * 4u + 1u) * 0.3;
+        particle.position = vec2(hash(index * 4u + 2u), hash(index * 4u + 3u)) * 2.0 - 1.0;
+        particle.velocity = vec2(cos(direction), sin(direction)) * speed;
+        particle.angle = direction;
+        particle.spin = (hash(index ^ 0x9e3779b9u) - 0.5) * 4.0;
+        particle.alive = 1.0;
+    }
+
+    particle.position += particle.velocity * deltaTime;
+    particle.angle += particle.spin * deltaTime;
+
+    // bounce off the edges of the screen
+    if (abs(particle.position.x) > 1.0) {
+        particle.velocity.x = -particle.velocity.x;
+        particle.position.x = clamp(particle.position.x, -1.0, 1.0);
+    }
+    if (abs(particle.position.y) > 1.0) {
+        particle.velocity.y = -particle.velocity.y;
+        particle.position.y = clamp(particle.position.y, -1.0, 1.0);
+    }
+
+    particles[index] = particle;
+
+    float c = cos(particle.angle) * size;
+    float s = sin(particle.angle) * size;
+    uint base = index * INSTANCE_WORDS;
+    instanceWords[base] = floatBitsToUint(c);
+    instanceWords[base + 1] = floatBitsToUint(s);
+    instanceWords[base + 2] = floatBitsToUint(-s);
+    instanceWords[base + 3] = floatBitsToUint(c);
+    instanceWords[base + 4] = floatBitsToUint(particle.position.x);
+    instanceWords[base + 5] = floatBitsToUint(particle.position.y);
+    instanceWords[base + 6] = packUnorm4x8(vec4(particle.position * 0.5 + 0.5, 1.0, 1.0));
+}
@@ -0,0 +1,11 @@
+// included by shaders, not compiled on its own
+
+// maps an integer to a pseudo-random float in [0, 1]
+float hash(uint x) {
+    x ^= x >> 16;
+    x *= 0x7feb352du;
+    x ^= x >> 15;
+    x *= 0x846ca68bu;
+    x ^= x >> 16;
+    return float(x) / 4294967295.0;
+}
@@ -0,0 +1,37 @@
+#version 450
+
+// tints by the instance color, which single untinted instances can skip
+// @variant TINT
+
+layout(location = 0) in vec2 inPosition;
+layout(location = 1) in vec3 inColor;
+
+// per instance
+layout(location = 2) in vec4 inTransform;
+layout(location = 3) in vec2 inOffset;
+layout(location = 4) in vec4 inTint;
+
+layout(location = 0) out vec3 fragColor;
+
+// per frame, bound with a dynamic offset into the uniform ring
+layout(set = 0, binding = 0) uniform Camera {
+    mat4 viewProjection;
+} camera;
+
+// per draw, pushed before each draw whose transform differs from the last
+layout(push_constant) uniform DrawConstants {
+    vec4 transform;
+    vec2 offset;
+} draw;
+
+void main() {
+    mat2 transform = mat2(inTransform.xy, inTransform.zw);
+    vec2 instancePosition = transform * inPosition + inOffset;
+    vec2 drawPosition = mat2(draw.transform.xy, draw.transform.zw) * instancePosition + draw.offset;
+    gl_Position = camera.viewProjection * vec4(drawPosition, 0.0, 1.0);
+#ifdef TINT
+    fragColor = inColor * inTint.rgb;
+#else
+    fragColor = inColor;
+#endif
+}
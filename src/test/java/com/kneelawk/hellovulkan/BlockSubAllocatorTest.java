@@ -0,0 +1,72 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BlockSubAllocatorTest {
+	@Test
+	public void allocationsAreAligned() {
+		BlockSubAllocator allocator = new BlockSubAllocator(1024, 1);
+
+		assertEquals(0, allocator.allocate(10, 1, true));
+		assertEquals(256, allocator.allocate(16, 256, true));
+		assertEquals(10, allocator.allocate(4, 2, true));
+		assertEquals(30, allocator.getUsedBytes());
+	}
+
+	@Test
+	public void failsWhenNoRegionFits() {
+		BlockSubAllocator allocator = new BlockSubAllocator(256, 1);
+
+		assertEquals(0, allocator.allocate(200, 1, true));
+		assertEquals(-1, allocator.allocate(100, 1, true));
+	}
+
+	@Test
+	public void freeingMergesNeighbouringRegions() {
+		BlockSubAllocator allocator = new BlockSubAllocator(300, 1);
+		long a = allocator.allocate(100, 1, true);
+		long b = allocator.allocate(100, 1, true);
+		long c = allocator.allocate(100, 1, true);
+		assertEquals(0, allocator.getFreeRegionCount());
+
+		allocator.free(a);
+		allocator.free(c);
+		assertEquals(2, allocator.getFreeRegionCount());
+		assertEquals(100, allocator.getLargestFreeRegion());
+
+		allocator.free(b);
+		assertEquals(1, allocator.getFreeRegionCount());
+		assertEquals(300, allocator.getLargestFreeRegion());
+		assertTrue(allocator.isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void freeingAnUnknownOffsetThrows() {
+		new BlockSubAllocator(256, 1).free(16);
+	}
+
+	@Test
+	public void linearAndOptimalResourcesDoNotSharePages() {
+		BlockSubAllocator allocator = new BlockSubAllocator(4096, 1024);
+
+		assertEquals(0, allocator.allocate(100, 4, true));
+		// an image right after a buffer has to move to the next page
+		assertEquals(1024, allocator.allocate(100, 4, false));
+		// another image can share the image's page
+		assertEquals(1124, allocator.allocate(100, 4, false));
+		// a buffer fits in the gap the first image left behind
+		assertEquals(100, allocator.allocate(100, 4, true));
+		// but not in the rest of the images' page
+		assertEquals(2048, allocator.allocate(1000, 4, true));
+	}
+
+	@Test
+	public void resourcesOfTheSameKindSharePages() {
+		BlockSubAllocator allocator = new BlockSubAllocator(4096, 1024);
+
+		assertEquals(0, allocator.allocate(100, 4, true));
+		assertEquals(100, allocator.allocate(100, 4, true));
+	}
+}
@@ -0,0 +1,69 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeferredDeletionQueueTest {
+	private long retiredFrame = -1;
+	private final DeferredDeletionQueue queue = new DeferredDeletionQueue(() -> retiredFrame);
+	private final List<String> destroyed = new ArrayList<>();
+
+	@Test
+	public void nothingIsDestroyedBeforeItsFrameRetires() {
+		queue.defer(3, () -> destroyed.add("swapchain"));
+
+		assertEquals(0, queue.collect());
+		retiredFrame = 2;
+		assertEquals(0, queue.collect());
+		assertTrue(destroyed.isEmpty());
+		assertEquals(1, queue.size());
+
+		retiredFrame = 3;
+		assertEquals(1, queue.collect());
+		assertEquals(Collections.singletonList("swapchain"), destroyed);
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void retiredResourcesAreDestroyedInOrder() {
+		queue.defer(1, () -> destroyed.add("a"));
+		queue.defer(2, () -> destroyed.add("b"));
+		queue.defer(5, () -> destroyed.add("c"));
+
+		retiredFrame = 2;
+		assertEquals(2, queue.collect());
+		assertEquals(Arrays.asList("a", "b"), destroyed);
+		assertEquals(1, queue.size());
+	}
+
+	@Test
+	public void olderFrameWaitsForTheEntryBeforeIt() {
+		queue.defer(4, () -> destroyed.add("late"));
+		queue.defer(1, () -> destroyed.add("early"));
+
+		retiredFrame = 2;
+		assertEquals(0, queue.collect());
+
+		retiredFrame = 4;
+		assertEquals(2, queue.collect());
+		assertEquals(Arrays.asList("late", "early"), destroyed);
+	}
+
+	@Test
+	public void flushDestroysEverything() {
+		queue.defer(10, () -> destroyed.add("a"));
+		queue.defer(20, () -> destroyed.add("b"));
+
+		queue.flush();
+
+		assertEquals(Arrays.asList("a", "b"), destroyed);
+		assertEquals(0, queue.size());
+		assertEquals(0, queue.collect());
+	}
+}
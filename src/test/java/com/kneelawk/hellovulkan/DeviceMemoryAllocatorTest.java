@@ -0,0 +1,167 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class DeviceMemoryAllocatorTest {
+	private static final long BLOCK_SIZE = 1024 * 1024;
+	private static final long LARGE_HEAP = 8L * 1024 * 1024 * 1024;
+
+	// a discrete GPU: device local memory, and host visible memory on a second heap
+	private static final MemoryTypeTable MEMORY_TYPES = new MemoryTypeTable(
+			new int[]{
+					VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT,
+					VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT
+			},
+			new int[]{0, 1},
+			new long[]{LARGE_HEAP, LARGE_HEAP});
+
+	private FakeBlockSource blockSource;
+	private DeviceMemoryAllocator allocator;
+
+	@Before
+	public void setUp() {
+		blockSource = new FakeBlockSource();
+		allocator = new DeviceMemoryAllocator(MEMORY_TYPES, blockSource, BLOCK_SIZE, 1);
+	}
+
+	@Test
+	public void smallAllocationsShareABlock() {
+		MemoryAllocation a = allocator.allocate(1000, 256, 0b11, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, true);
+		MemoryAllocation b = allocator.allocate(1000, 256, 0b11, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, true);
+
+		assertEquals(1, blockSource.blocks.size());
+		assertEquals(a.getMemory(), b.getMemory());
+		assertEquals(0, a.getOffset());
+		assertEquals(1024, b.getOffset());
+		assertEquals(0, a.getMemoryTypeIndex());
+		assertFalse(a.isMapped());
+	}
+
+	@Test
+	public void memoryTypesAreChosenByProperties() {
+		MemoryAllocation allocation = allocator.allocate(1000, 16, 0b11, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, true);
+
+		assertEquals(1, allocation.getMemoryTypeIndex());
+		assertTrue(allocation.isMapped());
+		assertEquals(blockSource.mappedAddress(allocation.getMemory()), allocation.getMappedAddress());
+	}
+
+	@Test
+	public void memoryTypeBitsAreRespected() {
+		// a resource that can only live in the host visible type, even though device local was not asked for
+		MemoryAllocation allocation = allocator.allocate(1000, 16, 0b10, 0, true);
+
+		assertEquals(1, allocation.getMemoryTypeIndex());
+	}
+
+	@Test
+	public void largeAllocationsGetDedicatedBlocks() {
+		MemoryAllocation large = allocator.allocate(BLOCK_SIZE, 16, 0b01, 0, true);
+		assertEquals(BLOCK_SIZE, blockSource.blocks.get(large.getMemory()).longValue());
+
+		allocator.free(large);
+		assertTrue(blockSource.blocks.isEmpty());
+	}
+
+	@Test
+	public void oneEmptySharedBlockIsKept() {
+		MemoryAllocation first = allocator.allocate(BLOCK_SIZE / 2, 16, 0b01, 0, true);
+		MemoryAllocation second = allocator.allocate(BLOCK_SIZE / 2, 16, 0b01, 0, true);
+		MemoryAllocation third = allocator.allocate(BLOCK_SIZE / 2, 16, 0b01, 0, true);
+		assertEquals(2, blockSource.blocks.size());
+
+		allocator.free(third);
+		assertEquals(2, blockSource.blocks.size());
+
+		allocator.free(first);
+		allocator.free(second);
+		assertEquals(1, blockSource.blocks.size());
+	}
+
+	@Test
+	public void statisticsReportFragmentation() {
+		MemoryAllocation a = allocator.allocate(1024, 1, 0b01, 0, true);
+		allocator.allocate(1024, 1, 0b01, 0, true);
+		allocator.free(a);
+
+		AllocatorStatistics statistics = allocator.getStatistics();
+		assertEquals(1, statistics.getBlockCount());
+		assertEquals(1, statistics.getAllocationCount());
+		assertEquals(BLOCK_SIZE, statistics.getBlockBytes());
+		assertEquals(1024, statistics.getUsedBytes());
+		assertEquals(2, statistics.getFreeRegionCount());
+		assertEquals(BLOCK_SIZE - 2048, statistics.getLargestFreeRegion());
+		assertTrue(statistics.getFragmentation() > 0);
+	}
+
+	@Test
+	public void statisticsReportReclaimableBlocks() {
+		MemoryAllocation[] allocations = new MemoryAllocation[4];
+		for (int i = 0; i < allocations.length; i++) {
+			allocations[i] = allocator.allocate(BLOCK_SIZE / 2, 1, 0b01, 0, true);
+		}
+		// one allocation left in each of two blocks would fit in one
+		allocator.free(allocations[1]);
+		allocator.free(allocations[3]);
+
+		assertEquals(BLOCK_SIZE, allocator.getStatistics().getReclaimableBytes());
+	}
+
+	@Test
+	public void smallHeapsGetSmallerBlocks() {
+		long heapSize = 64 * 1024 * 1024;
+		MemoryTypeTable memoryTypes = new MemoryTypeTable(new int[]{VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT}, new int[]{0},
+				new long[]{heapSize});
+		DeviceMemoryAllocator smallHeapAllocator = new DeviceMemoryAllocator(memoryTypes, blockSource,
+				DeviceMemoryAllocator.DEFAULT_BLOCK_SIZE, 1);
+
+		MemoryAllocation allocation = smallHeapAllocator.allocate(1024, 1, 0b1, 0, true);
+		assertEquals(heapSize / 8, blockSource.blocks.get(allocation.getMemory()).longValue());
+	}
+
+	@Test
+	public void destroyFreesEveryBlock() {
+		allocator.allocate(1024, 1, 0b01, 0, true);
+		allocator.allocate(1024, 1, 0b10, 0, true);
+		allocator.allocate(BLOCK_SIZE, 1, 0b01, 0, true);
+
+		allocator.destroy();
+		assertTrue(blockSource.blocks.isEmpty());
+	}
+
+	private static class FakeBlockSource implements DeviceMemoryAllocator.BlockSource {
+		// memory handle -> size
+		private final Map<Long, Long> blocks = new HashMap<>();
+		private long nextMemory = 1;
+
+		@Override
+		public long allocateBlock(int memoryTypeIndex, long size) {
+			long memory = nextMemory++;
+			blocks.put(memory, size);
+			return memory;
+		}
+
+		@Override
+		public long mapBlock(long memory, long size) {
+			return mappedAddress(memory);
+		}
+
+		@Override
+		public void freeBlock(long memory) {
+			if (blocks.remove(memory) == null) {
+				throw new IllegalStateException("Block " + memory + " was freed twice");
+			}
+		}
+
+		private long mappedAddress(long memory) {
+			return memory << 32;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FrameProfilerTest {
+	@Test
+	public void phasesAreRecordedSeparately() {
+		FrameProfiler profiler = new FrameProfiler(0);
+		profiler.record(FramePhase.RECORD, 1000);
+		profiler.record(FramePhase.RECORD, 3000);
+		profiler.record(FramePhase.SUBMIT, 20);
+
+		FrameProfiler.PhaseStatistics record = profiler.getStatistics(FramePhase.RECORD);
+		assertEquals(2, record.getCount());
+		assertEquals(2000, record.getMean(), 1e-9);
+		assertEquals(3000, record.getMax());
+
+		FrameProfiler.PhaseStatistics submit = profiler.getStatistics(FramePhase.SUBMIT);
+		assertEquals(1, submit.getCount());
+		assertEquals(20, submit.getP50());
+		assertEquals(20, submit.getP99());
+
+		assertEquals(0, profiler.getStatistics(FramePhase.PRESENT).getCount());
+	}
+
+	@Test
+	public void allStatisticsCoverEveryPhase() {
+		FrameProfiler profiler = new FrameProfiler(0);
+		profiler.record(FramePhase.GPU, 500);
+
+		Map<FramePhase, FrameProfiler.PhaseStatistics> statistics = profiler.getAllStatistics();
+		assertEquals(FramePhase.values().length, statistics.size());
+		assertEquals(1, statistics.get(FramePhase.GPU).getCount());
+	}
+
+	@Test
+	public void dumpWaitsForTheIntervalAndResets() {
+		List<String> dumps = new ArrayList<>();
+		FrameProfiler profiler = new FrameProfiler(1_000_000_000L, dumps::add);
+		long start = System.nanoTime();
+		profiler.record(FramePhase.FRAME, 16_000_000);
+
+		profiler.maybeDump(start);
+		assertTrue(dumps.isEmpty());
+		assertEquals(1, profiler.getStatistics(FramePhase.FRAME).getCount());
+
+		profiler.maybeDump(start + 2_000_000_000L);
+		assertEquals(1, dumps.size());
+		assertEquals(0, profiler.getStatistics(FramePhase.FRAME).getCount());
+	}
+
+	@Test
+	public void dumpListsOnlyRecordedPhases() {
+		List<String> dumps = new ArrayList<>();
+		FrameProfiler profiler = new FrameProfiler(1, dumps::add);
+		profiler.record(FramePhase.FRAME, 16_000_000);
+		profiler.record(FramePhase.SUBMIT, 250_000);
+
+		profiler.maybeDump(System.nanoTime() + 1_000_000);
+
+		assertEquals(1, dumps.size());
+		String dump = dumps.get(0);
+		assertTrue(dump, dump.startsWith("Frame timings (ms):"));
+		assertTrue(dump, dump.contains("FRAME: n=1 mean=16.000 p50=16.000 p99=16.000 max=16.000"));
+		assertTrue(dump, dump.contains("SUBMIT: n=1"));
+		assertFalse(dump, dump.contains("PRESENT"));
+	}
+
+	@Test
+	public void zeroIntervalNeverDumps() {
+		List<String> dumps = new ArrayList<>();
+		FrameProfiler profiler = new FrameProfiler(0, dumps::add);
+		profiler.record(FramePhase.FRAME, 16_000_000);
+
+		profiler.maybeDump(Long.MAX_VALUE);
+		assertTrue(dumps.isEmpty());
+		assertEquals(1, profiler.getStatistics(FramePhase.FRAME).getCount());
+	}
+}
@@ -0,0 +1,103 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+	@Test
+	public void emptyHistogramReportsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getMean(), 0);
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 10; i++) {
+			histogram.record(i);
+		}
+
+		assertEquals(10, histogram.getCount());
+		assertEquals(10, histogram.getMax());
+		assertEquals(5.5, histogram.getMean(), 1e-9);
+		assertEquals(5, histogram.getValueAtPercentile(50));
+		assertEquals(10, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void percentilesAreWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 100_000; i++) {
+			histogram.record(i * 1000);
+		}
+
+		assertWithinPercent(50_000_000, histogram.getValueAtPercentile(50), 3.2);
+		assertWithinPercent(99_000_000, histogram.getValueAtPercentile(99), 3.2);
+		assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void bucketsCoverEveryValue() {
+		long[] values = {0, 1, 31, 32, 33, 63, 64, 65, 1000, 123_456_789, (1L << 40) - 1};
+		for (long value : values) {
+			int index = LatencyHistogram.bucketIndex(value);
+			assertTrue(value + " is above its bucket", value <= LatencyHistogram.bucketUpperBound(index));
+			if (index > 0) {
+				assertTrue(value + " is in a later bucket", value > LatencyHistogram.bucketUpperBound(index - 1));
+			}
+		}
+	}
+
+	@Test
+	public void outOfRangeValuesAreClamped() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(2, histogram.getCount());
+		assertEquals((1L << 40) - 1, histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void resetClearsEverything() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000);
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void concurrentRecordingLosesNothing() throws InterruptedException {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			long offset = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					histogram.record(i * 4 + offset);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(40_000, histogram.getCount());
+		assertEquals(39_999, histogram.getMax());
+	}
+
+	private static void assertWithinPercent(long expected, long actual, double percent) {
+		assertTrue(actual + " is not within " + percent + "% of " + expected,
+				Math.abs(actual - expected) <= expected * percent / 100);
+	}
+}
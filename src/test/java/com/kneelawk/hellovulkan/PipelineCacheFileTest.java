@@ -0,0 +1,139 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static org.lwjgl.system.MemoryUtil.memFree;
+import static org.lwjgl.vulkan.VK10.VK_PIPELINE_CACHE_HEADER_VERSION_ONE;
+import static org.lwjgl.vulkan.VK10.VK_UUID_SIZE;
+
+public class PipelineCacheFileTest {
+	private static final int VENDOR_ID = 0x10DE;
+	private static final int DEVICE_ID = 0x1B80;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void matchingHeaderIsValid() {
+		assertTrue(PipelineCacheFile.isHeaderValid(cacheBlob(100), VENDOR_ID, DEVICE_ID, uuid(1)));
+	}
+
+	@Test
+	public void headerFromAnotherDeviceIsInvalid() {
+		ByteBuffer blob = cacheBlob(100);
+
+		assertFalse(PipelineCacheFile.isHeaderValid(blob, VENDOR_ID + 1, DEVICE_ID, uuid(1)));
+		assertFalse(PipelineCacheFile.isHeaderValid(blob, VENDOR_ID, DEVICE_ID + 1, uuid(1)));
+		assertFalse(PipelineCacheFile.isHeaderValid(blob, VENDOR_ID, DEVICE_ID, uuid(2)));
+	}
+
+	@Test
+	public void malformedHeaderIsInvalid() {
+		ByteBuffer truncated = cacheBlob(100);
+		truncated.limit(PipelineCacheFile.HEADER_SIZE - 1);
+		assertFalse(PipelineCacheFile.isHeaderValid(truncated, VENDOR_ID, DEVICE_ID, uuid(1)));
+
+		ByteBuffer wrongVersion = cacheBlob(100);
+		wrongVersion.putInt(4, VK_PIPELINE_CACHE_HEADER_VERSION_ONE + 1);
+		assertFalse(PipelineCacheFile.isHeaderValid(wrongVersion, VENDOR_ID, DEVICE_ID, uuid(1)));
+
+		ByteBuffer tooLong = cacheBlob(100);
+		tooLong.putInt(0, 101);
+		assertFalse(PipelineCacheFile.isHeaderValid(tooLong, VENDOR_ID, DEVICE_ID, uuid(1)));
+	}
+
+	@Test
+	public void headerIsLittleEndian() {
+		ByteBuffer blob = cacheBlob(100);
+
+		assertEquals(PipelineCacheFile.HEADER_SIZE, blob.get(0));
+		assertEquals(0, blob.get(3));
+		assertTrue(PipelineCacheFile.isHeaderValid(blob, VENDOR_ID, DEVICE_ID, uuid(1)));
+
+		blob.order(ByteOrder.BIG_ENDIAN).putInt(8, VENDOR_ID);
+		assertFalse(PipelineCacheFile.isHeaderValid(blob, VENDOR_ID, DEVICE_ID, uuid(1)));
+	}
+
+	@Test
+	public void uuidIsReadFromItsPosition() {
+		ByteBuffer uuid = ByteBuffer.allocate(VK_UUID_SIZE + 4);
+		uuid.position(4);
+		uuid.slice().put(uuid(1));
+
+		assertTrue(PipelineCacheFile.isHeaderValid(cacheBlob(100), VENDOR_ID, DEVICE_ID, uuid));
+	}
+
+	@Test
+	public void missingFileLoadsNothing() throws IOException {
+		assertNull(PipelineCacheFile.load(folder.getRoot().toPath().resolve("missing.bin"), VENDOR_ID, DEVICE_ID, uuid(1)));
+	}
+
+	@Test
+	public void writtenCacheLoadsBack() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("cache/pipeline-cache.bin");
+		ByteBuffer blob = cacheBlob(100);
+		PipelineCacheFile.writeAtomically(path, blob);
+
+		ByteBuffer loaded = PipelineCacheFile.load(path, VENDOR_ID, DEVICE_ID, uuid(1));
+		try {
+			assertNotNull(loaded);
+			assertEquals(blob, loaded);
+		} finally {
+			memFree(loaded);
+		}
+
+		assertNull(PipelineCacheFile.load(path, VENDOR_ID, DEVICE_ID, uuid(2)));
+	}
+
+	@Test
+	public void writingReplacesALoadedCache() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("pipeline-cache.bin");
+		PipelineCacheFile.writeAtomically(path, cacheBlob(100));
+
+		// the loaded blob must not keep the file from being replaced
+		ByteBuffer loaded = PipelineCacheFile.load(path, VENDOR_ID, DEVICE_ID, uuid(1));
+		try {
+			PipelineCacheFile.writeAtomically(path, cacheBlob(200));
+		} finally {
+			memFree(loaded);
+		}
+
+		assertEquals(200, Files.size(path));
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+			assertEquals("temporary files are cleaned up", 1, files.count());
+		}
+	}
+
+	private static ByteBuffer cacheBlob(int size) {
+		ByteBuffer blob = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+		blob.putInt(0, PipelineCacheFile.HEADER_SIZE);
+		blob.putInt(4, VK_PIPELINE_CACHE_HEADER_VERSION_ONE);
+		blob.putInt(8, VENDOR_ID);
+		blob.putInt(12, DEVICE_ID);
+		ByteBuffer header = blob.duplicate();
+		header.position(16);
+		header.put(uuid(1));
+		for (int i = PipelineCacheFile.HEADER_SIZE; i < size; i++) {
+			blob.put(i, (byte) i);
+		}
+		return blob;
+	}
+
+	private static ByteBuffer uuid(int seed) {
+		ByteBuffer uuid = ByteBuffer.allocate(VK_UUID_SIZE);
+		for (int i = 0; i < VK_UUID_SIZE; i++) {
+			uuid.put(i, (byte) (seed * 31 + i));
+		}
+		return uuid;
+	}
+}
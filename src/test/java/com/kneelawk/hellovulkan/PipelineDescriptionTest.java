@@ -0,0 +1,68 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class PipelineDescriptionTest {
+	private static PipelineDescription.Builder simple() {
+		return PipelineDescription.builder()
+				.stage(VK_SHADER_STAGE_VERTEX_BIT, "simple.vert.spv")
+				.stage(VK_SHADER_STAGE_FRAGMENT_BIT, "simple.frag.spv")
+				.vertexFormat(Vertex.FORMAT)
+				.colorFormat(VK_FORMAT_B8G8R8A8_UNORM);
+	}
+
+	@Test
+	public void identicalDescriptionsAreEqual() {
+		PipelineDescription a = simple().build();
+		PipelineDescription b = simple().build();
+
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertEquals(a, a.toBuilder().build());
+	}
+
+	@Test
+	public void everyStateTakesPartInEquality() {
+		PipelineDescription base = simple().build();
+
+		assertNotEquals(base, base.toBuilder().topology(VK_PRIMITIVE_TOPOLOGY_LINE_LIST).build());
+		assertNotEquals(base, base.toBuilder().polygonMode(VK_POLYGON_MODE_LINE).build());
+		assertNotEquals(base, base.toBuilder().cullMode(VK_CULL_MODE_NONE).build());
+		assertNotEquals(base, base.toBuilder().frontFace(VK_FRONT_FACE_COUNTER_CLOCKWISE).build());
+		assertNotEquals(base, base.toBuilder().blendMode(PipelineDescription.BlendMode.ALPHA).build());
+		assertNotEquals(base, base.toBuilder().colorWriteMask(VK_COLOR_COMPONENT_R_BIT).build());
+		assertNotEquals(base, base.toBuilder().colorFormat(VK_FORMAT_R8G8B8A8_UNORM).build());
+		assertNotEquals(base, base.toBuilder().samples(VK_SAMPLE_COUNT_4_BIT).build());
+		assertNotEquals(base, base.toBuilder().vertexFormat(Vertex.PACKED_FORMAT).build());
+	}
+
+	@Test
+	public void specializationTakesPartInEquality() {
+		PipelineDescription plain = simple().build();
+		PipelineDescription specialized = PipelineDescription.builder()
+				.stage(VK_SHADER_STAGE_VERTEX_BIT, "simple.vert.spv",
+						SpecializationConstants.builder().constant(0, true).build())
+				.stage(VK_SHADER_STAGE_FRAGMENT_BIT, "simple.frag.spv")
+				.vertexFormat(Vertex.FORMAT)
+				.colorFormat(VK_FORMAT_B8G8R8A8_UNORM)
+				.build();
+
+		assertNotEquals(plain, specialized);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void duplicateStageIsRejected() {
+		simple().stage(VK_SHADER_STAGE_VERTEX_BIT, "other.vert.spv");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void missingColorFormatIsRejected() {
+		PipelineDescription.builder()
+				.stage(VK_SHADER_STAGE_VERTEX_BIT, "simple.vert.spv")
+				.vertexFormat(Vertex.FORMAT)
+				.build();
+	}
+}
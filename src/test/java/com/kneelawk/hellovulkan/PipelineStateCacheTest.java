@@ -0,0 +1,146 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class PipelineStateCacheTest {
+	private static final PipelineDescription OPAQUE = PipelineDescription.builder()
+			.stage(VK_SHADER_STAGE_VERTEX_BIT, "simple.vert.spv")
+			.stage(VK_SHADER_STAGE_FRAGMENT_BIT, "simple.frag.spv")
+			.vertexFormat(Vertex.FORMAT)
+			.colorFormat(VK_FORMAT_B8G8R8A8_UNORM)
+			.build();
+	private static final PipelineDescription WIREFRAME = OPAQUE.toBuilder().polygonMode(VK_POLYGON_MODE_LINE).build();
+
+	private final StubCreator creator = new StubCreator();
+	private final PipelineStateCache cache = new PipelineStateCache(creator, 2);
+
+	@After
+	public void tearDown() {
+		creator.release.countDown();
+		cache.destroy();
+	}
+
+	@Test
+	public void getReturnsNotReadyUntilCompiled() throws Exception {
+		assertEquals(PipelineStateCache.NOT_READY, cache.get(OPAQUE));
+
+		creator.release.countDown();
+		long pipeline = cache.request(OPAQUE).get(5, TimeUnit.SECONDS);
+
+		assertNotEquals(PipelineStateCache.NOT_READY, pipeline);
+		assertEquals(pipeline, cache.get(OPAQUE));
+	}
+
+	@Test
+	public void getBlockingWaitsForTheCompile() {
+		creator.release.countDown();
+
+		long pipeline = cache.getBlocking(OPAQUE);
+		assertEquals(pipeline, cache.get(OPAQUE));
+	}
+
+	@Test
+	public void equalDescriptionsShareOnePipeline() {
+		creator.release.countDown();
+
+		PipelineDescription rebuilt = WIREFRAME.toBuilder().polygonMode(VK_POLYGON_MODE_FILL).build();
+		long pipeline = cache.getBlocking(OPAQUE);
+
+		assertEquals(pipeline, cache.getBlocking(rebuilt));
+		assertNotEquals(pipeline, cache.getBlocking(WIREFRAME));
+		assertEquals(2, cache.size());
+		assertEquals(2, creator.created.size());
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void concurrentRequestsCompileOnce() throws Exception {
+		ExecutorService requesters = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<CompletableFuture<Long>>> requests = new ArrayList<>();
+			for (int i = 0; i < 64; i++) {
+				requests.add(requesters.submit(() -> cache.request(OPAQUE)));
+			}
+
+			Set<CompletableFuture<Long>> futures = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (Future<CompletableFuture<Long>> request : requests) {
+				futures.add(request.get(5, TimeUnit.SECONDS));
+			}
+
+			assertEquals(1, futures.size());
+			assertEquals(1, cache.getMisses());
+			assertEquals(63, cache.getHits());
+		} finally {
+			requesters.shutdown();
+		}
+	}
+
+	@Test
+	public void failedCompileIsReported() {
+		creator.failing = true;
+		creator.release.countDown();
+
+		try {
+			cache.getBlocking(OPAQUE);
+			fail("Expected the compile to fail");
+		} catch (RuntimeException e) {
+			assertEquals("Failed to compile pipeline", e.getMessage());
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void destroyDestroysEveryCompiledPipeline() {
+		creator.release.countDown();
+		long opaque = cache.getBlocking(OPAQUE);
+		long wireframe = cache.getBlocking(WIREFRAME);
+
+		cache.destroy();
+
+		assertEquals(new HashSet<>(Arrays.asList(opaque, wireframe)), creator.destroyed);
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * Hands out increasing fake handles once {@link #release} is counted down.
+	 */
+	private static class StubCreator implements PipelineCreator {
+		final CountDownLatch release = new CountDownLatch(1);
+		final Set<Long> created = ConcurrentHashMap.newKeySet();
+		final Set<Long> destroyed = ConcurrentHashMap.newKeySet();
+		final AtomicLong nextHandle = new AtomicLong(1);
+		volatile boolean failing;
+
+		@Override
+		public long createPipeline(PipelineDescription description) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+
+			if (failing) {
+				throw new IllegalStateException("Shader module missing");
+			}
+
+			long handle = nextHandle.getAndIncrement();
+			created.add(handle);
+			return handle;
+		}
+
+		@Override
+		public void destroyPipeline(long pipeline) {
+			destroyed.add(pipeline);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.lwjgl.vulkan.KHRSurface.*;
+
+public class PresentPolicyTest {
+	@Test
+	public void namesAreAcceptedInEitherSpelling() {
+		assertEquals(PresentPolicy.LOW_LATENCY, PresentPolicy.fromName("low-latency"));
+		assertEquals(PresentPolicy.LOW_LATENCY, PresentPolicy.fromName("LOW_LATENCY"));
+		assertEquals(PresentPolicy.MAX_THROUGHPUT, PresentPolicy.fromName(" Max-Throughput "));
+	}
+
+	@Test
+	public void getNameRoundTrips() {
+		for (PresentPolicy policy : PresentPolicy.values()) {
+			assertEquals(policy, PresentPolicy.fromName(policy.getName()));
+		}
+		assertEquals("power-saver", PresentPolicy.POWER_SAVER.getName());
+	}
+
+	@Test
+	public void unknownNameListsTheValidOnes() {
+		try {
+			PresentPolicy.fromName("vsync");
+			fail("Expected an unknown policy to be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("vsync"));
+			assertTrue(e.getMessage(), e.getMessage().contains("low-latency, balanced, max-throughput, power-saver"));
+		}
+	}
+
+	@Test
+	public void presentModeFallsBackToFifo() {
+		assertEquals(VK_PRESENT_MODE_MAILBOX_KHR, PresentPolicy.LOW_LATENCY.choosePresentMode(
+				Arrays.asList(VK_PRESENT_MODE_FIFO_KHR, VK_PRESENT_MODE_IMMEDIATE_KHR, VK_PRESENT_MODE_MAILBOX_KHR)));
+		assertEquals(VK_PRESENT_MODE_IMMEDIATE_KHR, PresentPolicy.MAX_THROUGHPUT.choosePresentMode(
+				Arrays.asList(VK_PRESENT_MODE_FIFO_KHR, VK_PRESENT_MODE_IMMEDIATE_KHR, VK_PRESENT_MODE_MAILBOX_KHR)));
+		assertEquals(VK_PRESENT_MODE_FIFO_KHR, PresentPolicy.BALANCED.choosePresentMode(
+				Collections.singletonList(VK_PRESENT_MODE_FIFO_KHR)));
+		assertEquals(VK_PRESENT_MODE_FIFO_KHR, PresentPolicy.POWER_SAVER.choosePresentMode(
+				Arrays.asList(VK_PRESENT_MODE_FIFO_KHR, VK_PRESENT_MODE_MAILBOX_KHR)));
+	}
+
+	@Test
+	public void imageCountCoversFramesInFlightWithinSurfaceLimits() {
+		assertEquals(3, PresentPolicy.LOW_LATENCY.chooseImageCount(2, 0, 1));
+		assertEquals(4, PresentPolicy.MAX_THROUGHPUT.chooseImageCount(2, 0, 3));
+		assertEquals(4, PresentPolicy.POWER_SAVER.chooseImageCount(2, 8, 3));
+		assertEquals(3, PresentPolicy.MAX_THROUGHPUT.chooseImageCount(2, 3, 3));
+	}
+}
@@ -0,0 +1,135 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class RecordingSchedulerTest {
+	private RecordingScheduler scheduler;
+
+	@After
+	public void tearDown() {
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void sliceCountRespectsMinimumSize() {
+		scheduler = new RecordingScheduler(4, 256);
+
+		assertEquals(0, scheduler.getSliceCount(0));
+		assertEquals(1, scheduler.getSliceCount(1));
+		assertEquals(1, scheduler.getSliceCount(256));
+		assertEquals(2, scheduler.getSliceCount(257));
+		assertEquals(4, scheduler.getSliceCount(100_000));
+	}
+
+	@Test
+	public void moreSlotsThanDrawsGivesOneDrawPerSlice() {
+		scheduler = new RecordingScheduler(8, 1);
+
+		assertEquals(3, scheduler.getSliceCount(3));
+		for (int slice = 0; slice <= 3; slice++) {
+			assertEquals(slice, RecordingScheduler.getSliceStart(slice, 3, 3));
+		}
+	}
+
+	@Test
+	public void remaindersAreSpreadOverSlices() {
+		int[] starts = new int[4];
+		for (int slice = 0; slice <= 3; slice++) {
+			starts[slice] = RecordingScheduler.getSliceStart(slice, 3, 10);
+		}
+
+		assertArrayEquals(new int[]{0, 3, 6, 10}, starts);
+	}
+
+	@Test
+	public void largeRangesDoNotOverflow() {
+		assertEquals(Integer.MAX_VALUE, RecordingScheduler.getSliceStart(7, 7, Integer.MAX_VALUE));
+		assertEquals(920_350_134, RecordingScheduler.getSliceStart(3, 7, Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void everyDrawIsRecordedOnceInItsSlot() {
+		scheduler = new RecordingScheduler(4, 10);
+		int drawCount = 1003;
+		AtomicIntegerArray recorded = new AtomicIntegerArray(drawCount);
+		AtomicIntegerArray slotUses = new AtomicIntegerArray(scheduler.getSlotCount());
+
+		int sliceCount = scheduler.record(drawCount, (slot, first, count) -> {
+			slotUses.incrementAndGet(slot);
+			for (int i = first; i < first + count; i++) {
+				recorded.incrementAndGet(i);
+			}
+		});
+
+		assertEquals(4, sliceCount);
+		for (int i = 0; i < drawCount; i++) {
+			assertEquals("draw " + i, 1, recorded.get(i));
+		}
+		for (int slot = 0; slot < scheduler.getSlotCount(); slot++) {
+			assertEquals("slot " + slot, 1, slotUses.get(slot));
+		}
+	}
+
+	@Test
+	public void singleSlotRecordsOnTheCallingThread() {
+		scheduler = new RecordingScheduler(1, 1);
+		Thread caller = Thread.currentThread();
+
+		assertEquals(1, scheduler.record(50, (slot, first, count) -> {
+			assertSame(caller, Thread.currentThread());
+			assertEquals(0, slot);
+			assertEquals(50, count);
+		}));
+	}
+
+	@Test
+	public void workerFailureIsRethrownAfterEverySliceFinishes() {
+		scheduler = new RecordingScheduler(4, 1);
+		AtomicIntegerArray finished = new AtomicIntegerArray(4);
+		IllegalStateException cause = new IllegalStateException("Command buffer lost");
+
+		try {
+			scheduler.record(4, (slot, first, count) -> {
+				if (slot == 2) {
+					throw cause;
+				}
+				finished.set(slot, 1);
+			});
+			fail("Expected the recorder's failure to be rethrown");
+		} catch (RuntimeException e) {
+			assertSame(cause, e.getCause());
+		}
+
+		assertEquals(1, finished.get(0));
+		assertEquals(1, finished.get(1));
+		assertEquals(1, finished.get(3));
+	}
+
+	@Test
+	public void callingThreadFailureIsRethrown() {
+		scheduler = new RecordingScheduler(2, 1);
+		IllegalStateException cause = new IllegalStateException("Command buffer lost");
+
+		try {
+			scheduler.record(2, (slot, first, count) -> {
+				if (slot == 0) {
+					throw cause;
+				}
+			});
+			fail("Expected the recorder's failure to be rethrown");
+		} catch (RuntimeException e) {
+			assertSame(cause, e.getCause());
+		}
+
+		// the scheduler stays usable after a failed frame
+		assertEquals(2, scheduler.record(2, (slot, first, count) -> {
+		}));
+	}
+}
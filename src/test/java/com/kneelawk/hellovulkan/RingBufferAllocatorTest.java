@@ -0,0 +1,83 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RingBufferAllocatorTest {
+	@Test
+	public void allocationsAreAligned() {
+		RingBufferAllocator ring = new RingBufferAllocator(1024);
+
+		assertEquals(0, ring.allocate(10, 16));
+		assertEquals(16, ring.allocate(10, 16));
+		assertEquals(26, ring.allocate(10, 1));
+	}
+
+	@Test
+	public void fullRingFailsUntilReleased() {
+		RingBufferAllocator ring = new RingBufferAllocator(100);
+
+		assertEquals(0, ring.allocate(60, 1));
+		ring.endSegment(1);
+		assertEquals(-1, ring.allocate(60, 1));
+
+		ring.release(1);
+		assertEquals(0, ring.getUsedBytes());
+		assertEquals(0, ring.allocate(60, 1));
+	}
+
+	@Test
+	public void allocationsWrapAroundTheEnd() {
+		RingBufferAllocator ring = new RingBufferAllocator(100);
+
+		ring.allocate(40, 1);
+		ring.endSegment(1);
+		ring.allocate(40, 1);
+		ring.endSegment(2);
+		ring.release(1);
+
+		// 20 bytes are left before the end, so this skips them and starts over at 0
+		assertEquals(0, ring.allocate(30, 1));
+		assertEquals(90, ring.getUsedBytes());
+	}
+
+	@Test
+	public void segmentsAreReleasedInOrder() {
+		RingBufferAllocator ring = new RingBufferAllocator(100);
+
+		ring.allocate(10, 1);
+		ring.endSegment(5);
+		ring.allocate(20, 1);
+		ring.endSegment(6);
+		assertEquals(5, ring.getOldestPendingTag());
+
+		ring.release(5);
+		assertEquals(20, ring.getUsedBytes());
+		assertEquals(6, ring.getOldestPendingTag());
+
+		ring.release(6);
+		assertFalse(ring.hasPendingSegments());
+		assertEquals(-1, ring.getOldestPendingTag());
+	}
+
+	@Test
+	public void emptyRingFitsAnythingUpToItsCapacity() {
+		RingBufferAllocator ring = new RingBufferAllocator(100);
+
+		ring.allocate(70, 1);
+		ring.endSegment(1);
+		ring.release(1);
+
+		// only 30 bytes are left before the end, but nothing is in use so the whole ring is free
+		assertEquals(0, ring.allocate(80, 1));
+		ring.endSegment(2);
+		ring.release(2);
+		assertEquals(0, ring.allocate(100, 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void allocationsLargerThanTheRingAreRejected() {
+		new RingBufferAllocator(100).allocate(101, 1);
+	}
+}
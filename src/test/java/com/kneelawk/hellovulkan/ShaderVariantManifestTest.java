@@ -0,0 +1,84 @@
+package com.kneelawk.hellovulkan;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ShaderVariantManifestTest {
+	// what SpirvCompile writes for a vertex shader with two toggles and a fragment shader with none
+	private static final String MANIFEST = "# shader\tdefines\tmodule, generated by SpirvCompile\n"
+			+ "com/kneelawk/hellovulkan/simple.frag\t\tcom/kneelawk/hellovulkan/simple.frag.spv\n"
+			+ "com/kneelawk/hellovulkan/simple.vert\t\tcom/kneelawk/hellovulkan/simple.vert.spv\n"
+			+ "com/kneelawk/hellovulkan/simple.vert\tINSTANCED\tcom/kneelawk/hellovulkan/simple.vert+INSTANCED.spv\n"
+			+ "com/kneelawk/hellovulkan/simple.vert\tTINT\tcom/kneelawk/hellovulkan/simple.vert+TINT.spv\n"
+			+ "com/kneelawk/hellovulkan/simple.vert\tINSTANCED,TINT\t"
+			+ "com/kneelawk/hellovulkan/simple.vert+INSTANCED+TINT.spv\n";
+
+	private static final String VERT = "com/kneelawk/hellovulkan/simple.vert";
+	private static final String FRAG = "com/kneelawk/hellovulkan/simple.frag";
+
+	@Test
+	public void parsesEveryVariant() throws IOException {
+		ShaderVariantManifest manifest = parse(MANIFEST);
+
+		assertEquals(5, manifest.getVariantCount());
+		assertEquals(ImmutableSet.of(VERT, FRAG), manifest.getShaders());
+		assertEquals(Arrays.asList("INSTANCED", "TINT"), new ArrayList<>(manifest.getToggles(VERT)));
+		assertTrue(manifest.getToggles(FRAG).isEmpty());
+		assertTrue(manifest.getToggles("missing.vert").isEmpty());
+	}
+
+	@Test
+	public void resolvesDefinesInAnyOrder() throws IOException {
+		ShaderVariantManifest manifest = parse(MANIFEST);
+
+		assertEquals("/com/kneelawk/hellovulkan/simple.vert.spv", manifest.resolve(VERT, Collections.emptySet()));
+		assertEquals("/com/kneelawk/hellovulkan/simple.vert+TINT.spv", manifest.resolve(VERT, ImmutableSet.of("TINT")));
+		assertEquals("/com/kneelawk/hellovulkan/simple.vert+INSTANCED+TINT.spv",
+				manifest.resolve(VERT, ImmutableSet.of("TINT", "INSTANCED")));
+	}
+
+	@Test
+	public void ignoresFeaturesTheShaderDoesNotDeclare() throws IOException {
+		ShaderVariantManifest manifest = parse(MANIFEST);
+
+		assertEquals("/com/kneelawk/hellovulkan/simple.frag.spv", manifest.resolve(FRAG, ImmutableSet.of("TINT")));
+		assertEquals("/com/kneelawk/hellovulkan/simple.vert+INSTANCED.spv",
+				manifest.resolve(VERT, ImmutableSet.of("INSTANCED", "WIREFRAME")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownShaderIsRejected() throws IOException {
+		parse(MANIFEST).resolve("com/kneelawk/hellovulkan/missing.vert", Collections.emptySet());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingVariantIsRejected() throws IOException {
+		// a manifest from a partial build only has the plain variant and the TINT variant
+		String partial = VERT + "\t\t" + VERT + ".spv\n" + VERT + "\tINSTANCED\t" + VERT + "+INSTANCED.spv\n"
+				+ VERT + "\tTINT\t" + VERT + "+TINT.spv\n";
+
+		parse(partial).resolve(VERT, ImmutableSet.of("INSTANCED", "TINT"));
+	}
+
+	@Test
+	public void malformedLineIsReported() {
+		try {
+			parse(MANIFEST + VERT + "\tTINT\n");
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("line 7"));
+		}
+	}
+
+	private static ShaderVariantManifest parse(String manifest) throws IOException {
+		return ShaderVariantManifest.parse(new StringReader(manifest));
+	}
+}
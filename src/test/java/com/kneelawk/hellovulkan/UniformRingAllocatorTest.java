@@ -0,0 +1,87 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UniformRingAllocatorTest {
+	@Test
+	public void offsetsAreAlignedToTheDevice() {
+		UniformRingAllocator ring = new UniformRingAllocator(4096, 256, 256);
+
+		assertEquals(0, ring.allocate(64));
+		assertEquals(256, ring.allocate(100));
+		assertEquals(512, ring.allocate(256));
+		assertEquals(768, ring.allocate(1));
+	}
+
+	@Test
+	public void everyOffsetLeavesAWholeRange() {
+		UniformRingAllocator ring = new UniformRingAllocator(1024, 256, 64);
+
+		int offset;
+		int last = -1;
+		while ((offset = ring.allocate(16)) >= 0) {
+			assertTrue(offset + ring.getRange() <= ring.getBufferSize());
+			last = offset;
+		}
+
+		// the last range of the buffer is never handed out
+		assertEquals(1024 - 256 - 64, last);
+	}
+
+	@Test
+	public void fullRingReturnsMinusOneUntilAFrameCompletes() {
+		UniformRingAllocator ring = new UniformRingAllocator(1024, 256, 256);
+
+		assertEquals(0, ring.allocate(256));
+		assertEquals(256, ring.allocate(256));
+		ring.endFrame(1);
+		assertEquals(512, ring.allocate(256));
+		ring.endFrame(2);
+		assertEquals(-1, ring.allocate(256));
+
+		// frame 1 used two blocks, frame 2 still holds the third
+		ring.frameCompleted(1);
+		assertEquals(0, ring.allocate(256));
+		assertEquals(256, ring.allocate(256));
+		assertEquals(-1, ring.allocate(256));
+	}
+
+	@Test
+	public void completingEveryFrameFreesEverything() {
+		UniformRingAllocator ring = new UniformRingAllocator(1024, 256, 256);
+		ring.allocate(256);
+		ring.endFrame(1);
+		ring.allocate(256);
+		ring.endFrame(2);
+		assertTrue(ring.getUsedBytes() >= 512);
+
+		ring.frameCompleted(2);
+		assertEquals(0, ring.getUsedBytes());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void blockLargerThanTheRangeIsRejected() {
+		new UniformRingAllocator(1024, 256, 256).allocate(257);
+	}
+
+	@Test
+	public void invalidConfigurationsAreRejected() {
+		assertRejected(1024, 256, 0);
+		assertRejected(1024, 256, 48);
+		assertRejected(1024, 0, 64);
+		assertRejected(511, 256, 64);
+		assertRejected(1L << 32, 256, 64);
+	}
+
+	private static void assertRejected(long bufferSize, long range, long alignment) {
+		try {
+			new UniformRingAllocator(bufferSize, range, alignment);
+			fail("Expected a ring of " + bufferSize + " bytes, range " + range + ", alignment " + alignment
+					+ " to be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
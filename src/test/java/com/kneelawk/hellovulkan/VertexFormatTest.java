@@ -0,0 +1,142 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class VertexFormatTest {
+	@Test
+	public void vertexFormatMatchesTheVertexConstants() {
+		assertEquals(Vertex.SIZEOF, Vertex.FORMAT.getStride(0));
+		assertEquals(Vertex.POS_OFFSET, Vertex.FORMAT.getAttributes().get(0).getOffset());
+		assertEquals(Vertex.COLOR_OFFSET, Vertex.FORMAT.getAttributes().get(1).getOffset());
+	}
+
+	@Test
+	public void packedFormatIsEightBytes() {
+		assertEquals(8, Vertex.PACKED_FORMAT.getStride(0));
+		assertEquals(4, Vertex.PACKED_FORMAT.getAttributes().get(1).getOffset());
+	}
+
+	@Test
+	public void attributesAreAlignedToTheirComponentSize() {
+		VertexFormat format = VertexFormat.builder()
+				.binding(0, VK_VERTEX_INPUT_RATE_VERTEX)
+				.attribute(0, VertexAttributeType.R8G8B8A8_UNORM)
+				.attribute(1, VertexAttributeType.R16G16_SFLOAT)
+				.attribute(2, VertexAttributeType.R8G8B8A8_SNORM)
+				.attribute(3, VertexAttributeType.R32_SFLOAT)
+				.build();
+
+		assertEquals(0, format.getAttributes().get(0).getOffset());
+		assertEquals(4, format.getAttributes().get(1).getOffset());
+		assertEquals(8, format.getAttributes().get(2).getOffset());
+		assertEquals(12, format.getAttributes().get(3).getOffset());
+		assertEquals(16, format.getStride(0));
+	}
+
+	@Test
+	public void strideIsPaddedToTheLargestComponent() {
+		VertexFormat format = VertexFormat.builder()
+				.binding(0, VK_VERTEX_INPUT_RATE_VERTEX)
+				.attribute(0, VertexAttributeType.R32_SFLOAT)
+				.attribute(1, VertexAttributeType.R16G16_SFLOAT)
+				.attribute(2, VertexAttributeType.R8G8B8A8_UNORM)
+				.build();
+
+		assertEquals(12, format.getStride(0));
+
+		VertexFormat unaligned = VertexFormat.builder()
+				.binding(0, VK_VERTEX_INPUT_RATE_VERTEX)
+				.attribute(0, VertexAttributeType.R16G16_SFLOAT)
+				.attribute(1, VertexAttributeType.R32_SFLOAT)
+				.attribute(2, VertexAttributeType.R16G16_SNORM)
+				.build();
+
+		assertEquals(12, unaligned.getStride(0));
+	}
+
+	@Test
+	public void bindingsAreLaidOutSeparately() {
+		VertexFormat format = Instance.withInstanceBinding(Vertex.FORMAT);
+
+		assertEquals(2, format.getBindings().size());
+		assertEquals(Vertex.SIZEOF, format.getStride(0));
+		assertEquals(16 + 8 + 4, format.getStride(Instance.BINDING));
+		assertEquals(VK_VERTEX_INPUT_RATE_INSTANCE, format.getBinding(Instance.BINDING).getInputRate());
+		assertEquals(0, format.getBinding(Instance.BINDING).getAttributes().get(0).getOffset());
+	}
+
+	@Test
+	public void formatsWithTheSameLayoutAreEqual() {
+		VertexFormat copy = Vertex.FORMAT.toBuilder().build();
+
+		assertEquals(Vertex.FORMAT, copy);
+		assertEquals(Vertex.FORMAT.hashCode(), copy.hashCode());
+		assertNotEquals(Vertex.FORMAT, Vertex.PACKED_FORMAT);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void locationsCannotBeReused() {
+		VertexFormat.builder()
+				.binding(0, VK_VERTEX_INPUT_RATE_VERTEX)
+				.attribute(0, VertexAttributeType.R32_SFLOAT)
+				.binding(1, VK_VERTEX_INPUT_RATE_INSTANCE)
+				.attribute(0, VertexAttributeType.R32_SFLOAT);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void attributesNeedABinding() {
+		VertexFormat.builder().attribute(0, VertexAttributeType.R32_SFLOAT);
+	}
+
+	@Test
+	public void writerPacksEachAttributeType() {
+		VertexWriter writer = Vertex.PACKED_FORMAT.writer(0);
+		ByteBuffer buffer = memCalloc(writer.getStride() * 2);
+		try {
+			writer.at(memAddress(buffer));
+			writer.vertex(1);
+			writer.put(Vertex.POS_LOCATION, 1.0f, -2.0f);
+			writer.put(Vertex.COLOR_LOCATION, 1.0f, 0.5f, 0.0f);
+
+			// the first vertex is untouched
+			assertEquals(0, buffer.getLong(0));
+
+			assertEquals((short) 0x3C00, buffer.getShort(8));
+			assertEquals((short) 0xC000, buffer.getShort(10));
+			assertEquals((byte) 255, buffer.get(12));
+			assertEquals((byte) 128, buffer.get(13));
+			assertEquals((byte) 0, buffer.get(14));
+			// a missing alpha reads as 1
+			assertEquals((byte) 255, buffer.get(15));
+		} finally {
+			memFree(buffer);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void writerRejectsTooManyComponents() {
+		Vertex.FORMAT.writer(0).put(Vertex.POS_LOCATION, 1.0f, 2.0f, 3.0f);
+	}
+
+	@Test
+	public void halfFloatsRoundToNearestEven() {
+		assertEquals((short) 0x0000, VertexAttributeType.floatToHalf(0.0f));
+		assertEquals((short) 0x8000, VertexAttributeType.floatToHalf(-0.0f));
+		assertEquals((short) 0x3C00, VertexAttributeType.floatToHalf(1.0f));
+		assertEquals((short) 0x3555, VertexAttributeType.floatToHalf(1.0f / 3.0f));
+		assertEquals((short) 0x7BFF, VertexAttributeType.floatToHalf(65504.0f));
+		assertEquals((short) 0x7C00, VertexAttributeType.floatToHalf(70000.0f));
+		assertEquals((short) 0xFC00, VertexAttributeType.floatToHalf(Float.NEGATIVE_INFINITY));
+		assertEquals((short) 0x0001, VertexAttributeType.floatToHalf(5.9604645e-8f));
+		// halfway between 1 and the next half rounds down to the even one
+		assertEquals((short) 0x3C00, VertexAttributeType.floatToHalf(1.0f + 1.0f / 2048.0f));
+		assertEquals(0x7C00, VertexAttributeType.floatToHalf(Float.NaN) & 0x7C00);
+		assertNotEquals(0, VertexAttributeType.floatToHalf(Float.NaN) & 0x03FF);
+	}
+}
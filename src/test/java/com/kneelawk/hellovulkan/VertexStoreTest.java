@@ -0,0 +1,60 @@
+package com.kneelawk.hellovulkan;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VertexStoreTest {
+	@Test
+	public void appendFromItselfSurvivesGrowth() {
+		VertexStore store = new VertexStore(1);
+		try {
+			store.append(1, 2, 0.1f, 0.2f, 0.3f);
+
+			// every append fills the store, so each copy has to grow it first
+			for (int i = 0; i < 100; i++) {
+				assertEquals(i + 1, store.appendFrom(store, i));
+			}
+
+			assertEquals(101, store.size());
+			for (int i = 0; i < store.size(); i++) {
+				assertEquals(1, store.getX(i), 0);
+				assertEquals(2, store.getY(i), 0);
+				assertEquals(0.3f, store.getB(i), 0);
+			}
+		} finally {
+			store.free();
+		}
+	}
+
+	@Test
+	public void appendAllOfOwnSliceSurvivesGrowth() {
+		VertexStore store = new VertexStore(2);
+		try {
+			store.append(1, 0, 0, 0, 0);
+			store.append(2, 0, 0, 0, 0);
+
+			store.appendAll(store.all());
+			store.appendAll(store.slice(1, 3));
+
+			float[] expected = {1, 2, 1, 2, 2, 1, 2};
+			assertEquals(expected.length, store.size());
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i], store.getX(i), 0);
+			}
+		} finally {
+			store.free();
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void appendFromOutOfBoundsThrows() {
+		VertexStore store = new VertexStore(4);
+		try {
+			store.append(0, 0, 0, 0, 0);
+			store.appendFrom(store, 1);
+		} finally {
+			store.free();
+		}
+	}
+}